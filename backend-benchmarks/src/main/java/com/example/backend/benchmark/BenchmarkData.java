@@ -0,0 +1,70 @@
+package com.example.backend.benchmark;
+
+import java.time.LocalDateTime;
+
+import com.example.backend.entity.ContentBlob;
+import com.example.backend.entity.Document;
+import com.example.backend.entity.DocumentFolder;
+import com.example.backend.entity.User;
+import com.example.backend.service.ContentBlobService;
+
+/**
+ * 基准共用的样例数据
+ */
+final class BenchmarkData {
+
+    private static final String LINE = "协作编辑 collaborative editing 0123456789 ";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 生成指定长度、每 80 个字符换行的中英文混排文本
+     */
+    static String content(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        int column = 0;
+        while (builder.length() < length) {
+            if (column == 79) {
+                builder.append('\n');
+                column = 0;
+            } else {
+                builder.append(LINE.charAt(builder.length() % LINE.length()));
+                column++;
+            }
+        }
+        return builder.toString();
+    }
+
+    static Document document(int contentLength) {
+        User owner = User.builder()
+                .id(10L)
+                .publicId("uid_benchmark")
+                .username("benchmark")
+                .email("benchmark@example.com")
+                .password("{noop}benchmark")
+                .build();
+        DocumentFolder folder = DocumentFolder.builder()
+                .id(1L)
+                .owner(owner)
+                .name("根目录")
+                .build();
+        return Document.builder()
+                .id(1L)
+                .title("基准文档")
+                .owner(owner)
+                .contentBlob(blob(content(contentLength)))
+                .tags("benchmark")
+                .folder(folder)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    static ContentBlob blob(String content) {
+        return ContentBlob.builder()
+                .hash(ContentBlobService.hash(content))
+                .content(content)
+                .build();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.backend.benchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.backend.service.CollaborationCacheService;
+
+/**
+ * CollaborationCacheService 的单消息路径：键拼接加一次（或几次）Redis 往返。
+ * 读确认态、读修订号、追加操作日志、读在线用户都在每条编辑/广播中出现。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollaborationCacheBenchmark {
+
+    private static final Long DOCUMENT_ID = 1L;
+
+    private final AtomicLong revision = new AtomicLong();
+    private CollaborationCacheService cacheService;
+
+    @Setup
+    public void setUp(RedisStandIn redis) {
+        cacheService = new CollaborationCacheService(redis.getRedisTemplate());
+        cacheService.saveConfirmed(DOCUMENT_ID, BenchmarkData.content(4096));
+        for (long userId = 1; userId <= 20; userId++) {
+            cacheService.addOnlineUser(DOCUMENT_ID, userId, null, "session-" + userId);
+        }
+    }
+
+    @Benchmark
+    public String getConfirmed() {
+        return cacheService.getConfirmed(DOCUMENT_ID);
+    }
+
+    @Benchmark
+    public long getRevision() {
+        return cacheService.getRevision(DOCUMENT_ID);
+    }
+
+    @Benchmark
+    public void appendOperation() {
+        cacheService.appendOperation(DOCUMENT_ID, revision.incrementAndGet(), "10:[2048,\"x\",2048]\n[2048,-1,2048]");
+    }
+
+    @Benchmark
+    public Set<Long> getOnlineUsers() {
+        return cacheService.getOnlineUsers(DOCUMENT_ID);
+    }
+}
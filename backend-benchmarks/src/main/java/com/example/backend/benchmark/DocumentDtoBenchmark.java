@@ -0,0 +1,45 @@
+package com.example.backend.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.backend.dto.document.DocumentDTO;
+import com.example.backend.entity.Document;
+
+/**
+ * 实体到 DocumentDTO 的转换（文档列表、打开文档时逐条执行）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentDtoBenchmark {
+
+    @Param({"1024", "65536"})
+    private int contentLength;
+
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        document = BenchmarkData.document(contentLength);
+    }
+
+    @Benchmark
+    public DocumentDTO fromEntity() {
+        return DocumentDTO.fromEntity(document, 10L, true);
+    }
+}
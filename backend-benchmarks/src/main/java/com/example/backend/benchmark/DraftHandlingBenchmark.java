@@ -0,0 +1,108 @@
+package com.example.backend.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.backend.dto.websocket.DocumentOperation;
+import com.example.backend.dto.websocket.WebSocketMessage;
+import com.example.backend.service.DraftLogService;
+import com.example.backend.util.TextOperation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 草稿消息的两种处理路径（与 WebSocketController 中的草稿处理一致）：
+ * 旧客户端每次提交全文，记录全量草稿并广播全文；增量客户端提交单字符编辑，
+ * 读取当前草稿、校验并应用操作、追加增量记录，只广播操作。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DraftHandlingBenchmark {
+
+    private static final Long DOCUMENT_ID = 1L;
+    private static final Long USER_ID = 10L;
+
+    @Param({"1024", "65536"})
+    private int contentLength;
+
+    private ObjectMapper objectMapper;
+    private DraftLogService draftLogService;
+    private String content;
+    private DocumentOperation insert;
+    private DocumentOperation delete;
+    private boolean inserted;
+
+    @Setup
+    public void setUp(RedisStandIn redis) {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        draftLogService = new DraftLogService(redis.getRedisTemplate(), objectMapper, 128, 120);
+        content = BenchmarkData.content(contentLength);
+        draftLogService.saveDraft(DOCUMENT_ID, USER_ID, content);
+        insert = DocumentOperation.builder()
+                .type("INSERT")
+                .position(contentLength / 2)
+                .text("x")
+                .clientId("c-1")
+                .build();
+        delete = DocumentOperation.builder()
+                .type("DELETE")
+                .position(contentLength / 2)
+                .length(1)
+                .clientId("c-1")
+                .build();
+    }
+
+    @Benchmark
+    public byte[] fullContent() throws JsonProcessingException {
+        String streamId = draftLogService.saveDraft(DOCUMENT_ID, USER_ID, content);
+        Map<String, Object> data = new HashMap<>();
+        data.put("content", content);
+        data.put("streamId", streamId);
+        return objectMapper.writeValueAsBytes(message("DRAFT_EDIT", data));
+    }
+
+    @Benchmark
+    public byte[] delta() throws JsonProcessingException {
+        // 插入与删除交替，草稿长度保持稳定
+        DocumentOperation edit = inserted ? delete : insert;
+        inserted = !inserted;
+        String base = draftLogService.getDraft(DOCUMENT_ID, USER_ID);
+        TextOperation operation = TextOperation.fromDocumentOperation(edit, base.length());
+        operation.apply(base);
+        String streamId = draftLogService.appendDelta(DOCUMENT_ID, USER_ID, operation);
+        Map<String, Object> data = new HashMap<>();
+        data.put("ops", operation.toWire());
+        data.put("streamId", streamId);
+        data.put("baseLength", operation.getBaseLength());
+        data.put("clientId", edit.getClientId());
+        return objectMapper.writeValueAsBytes(message("DRAFT_DELTA", data));
+    }
+
+    private static WebSocketMessage message(String type, Map<String, Object> data) {
+        return WebSocketMessage.builder()
+                .type(type)
+                .documentId(DOCUMENT_ID)
+                .userId(USER_ID)
+                .nickname("benchmark")
+                .data(data)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+}
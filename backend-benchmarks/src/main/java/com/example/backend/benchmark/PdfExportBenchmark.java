@@ -0,0 +1,69 @@
+package com.example.backend.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.backend.entity.Document;
+import com.example.backend.repository.DocumentCollaboratorRepository;
+import com.example.backend.repository.DocumentRepository;
+import com.example.backend.service.DocumentExportService;
+
+/**
+ * DocumentExportService.exportToPdf：仓库以内存桩代替，只衡量 PDF 生成本身
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfExportBenchmark {
+
+    @Param({"4096", "262144"})
+    private int contentLength;
+
+    private DocumentExportService exportService;
+    private Long documentId;
+    private Long ownerId;
+
+    @Setup
+    public void setUp() {
+        Document document = BenchmarkData.document(contentLength);
+        documentId = document.getId();
+        ownerId = document.getOwner().getId();
+        DocumentRepository documentRepository = stub(DocumentRepository.class, "findById", Optional.of(document));
+        DocumentCollaboratorRepository collaboratorRepository =
+                stub(DocumentCollaboratorRepository.class, "existsByDocumentIdAndUserId", false);
+        exportService = new DocumentExportService(documentRepository, collaboratorRepository);
+    }
+
+    @Benchmark
+    public byte[] exportToPdf() throws Exception {
+        return exportService.exportToPdf(documentId, ownerId);
+    }
+
+    /**
+     * 只实现导出用到的一个查询方法的仓库桩
+     */
+    private static <T> T stub(Class<T> type, String method, Object result) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, invoked, args) -> {
+            if (invoked.getName().equals(method)) {
+                return result;
+            }
+            throw new UnsupportedOperationException(invoked.getName());
+        }));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.backend.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.embedded.RedisServer;
+
+/**
+ * 进程内 Redis 替身：每个 fork 启动一个嵌入式 Redis，基准结束后关闭。
+ * 结果包含本机回环网络往返，适合比较同一机器上的前后两次运行，而非估算生产延迟。
+ */
+@State(Scope.Benchmark)
+public class RedisStandIn {
+
+    private static final int PORT = Integer.getInteger("benchmark.redis-port", 16400);
+
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        redisServer = new RedisServer(PORT);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", PORT);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    public StringRedisTemplate getRedisTemplate() {
+        return redisTemplate;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.backend.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.backend.dto.websocket.WebSocketMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 每条广播都要经过的 WebSocketMessage JSON 序列化：
+ * 增量草稿帧与保存确认帧只带操作，旧版全量保存的确认帧带全文，内容越长差距越明显
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebSocketMessageBenchmark {
+
+    @Param({"1024", "65536"})
+    private int contentLength;
+
+    private ObjectMapper objectMapper;
+    private WebSocketMessage draftDelta;
+    private WebSocketMessage saveConfirmed;
+    private WebSocketMessage legacySaveConfirmed;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        String content = BenchmarkData.content(contentLength);
+
+        Map<String, Object> delta = new HashMap<>();
+        delta.put("ops", List.of(contentLength / 2, "x", contentLength - contentLength / 2));
+        delta.put("baseLength", contentLength);
+        delta.put("clientId", "c-1");
+        draftDelta = message("DRAFT_DELTA", delta);
+
+        Map<String, Object> saved = new HashMap<>();
+        saved.put("revision", 42L);
+        saved.put("baseRevision", 41L);
+        saved.put("ops", List.of(contentLength / 2, "x", contentLength - contentLength / 2));
+        saved.put("clientId", "c-1");
+        saveConfirmed = message("SAVE_CONFIRMED", saved);
+
+        Map<String, Object> legacySaved = new HashMap<>(saved);
+        legacySaved.put("content", content);
+        legacySaveConfirmed = message("SAVE_CONFIRMED", legacySaved);
+    }
+
+    @Benchmark
+    public byte[] draftDelta() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(draftDelta);
+    }
+
+    @Benchmark
+    public byte[] saveConfirmed() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(saveConfirmed);
+    }
+
+    @Benchmark
+    public byte[] legacySaveConfirmed() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(legacySaveConfirmed);
+    }
+
+    private static WebSocketMessage message(String type, Map<String, Object> data) {
+        return WebSocketMessage.builder()
+                .type(type)
+                .documentId(1L)
+                .userId(10L)
+                .nickname("benchmark")
+                .data(data)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.backend.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import com.example.backend.config.VirtualThreadExecutors;
+import com.example.backend.entity.Document;
+import com.example.backend.entity.DocumentCollaborator;
+import com.example.backend.entity.User;
+import com.example.backend.repository.DocumentCollaboratorRepository;
+import com.example.backend.repository.DocumentRepository;
+import com.example.backend.repository.UserRepository;
+import com.example.backend.security.JwtUtil;
+import com.example.backend.service.ContentBlobService;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import redis.embedded.RedisServer;
+
+/**
+ * 协作通道压测：以嵌入式 Postgres 与 Redis 启动完整后端，每个文档连接 N 个 SockJS/STOMP 编辑者，
+ * 按配置频率发送加入/草稿/光标/保存/聊天，预热后统计端到端广播延迟（p50/p99/p999）、帧速率与进程 CPU/堆。
+ * 只在 loadtest profile 下编译运行：mvn -Ploadtest test，参数见 {@link LoadTestSettings}。
+ * 对比虚拟线程与平台线程池：同样参数下分别加 -Dloadtest.virtual-threads=true / false 运行，比较两次报告的延迟分位与 CPU
+ * （虚拟线程需要 JDK 21+，否则报告中 active=false，两次运行使用相同的平台线程池）。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class CollaborationLoadTest {
+
+	private static final int REDIS_PORT = 16390;
+
+	private static RedisServer redisServer;
+	private static EmbeddedPostgres postgres;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private DocumentRepository documentRepository;
+
+	@Autowired
+	private DocumentCollaboratorRepository collaboratorRepository;
+
+	@Autowired
+	private ContentBlobService contentBlobService;
+
+	@Autowired
+	private JwtUtil jwtUtil;
+
+	@Autowired
+	private VirtualThreadExecutors virtualThreadExecutors;
+
+	@DynamicPropertySource
+	static void backingServices(DynamicPropertyRegistry registry) throws IOException {
+		redisServer = new RedisServer(REDIS_PORT);
+		redisServer.start();
+		postgres = EmbeddedPostgres.start();
+
+		registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+		registry.add("spring.datasource.username", () -> "postgres");
+		registry.add("spring.datasource.password", () -> "");
+		registry.add("spring.sql.init.mode", () -> "always");
+		registry.add("spring.jpa.hibernate.ddl-auto", () -> "none");
+		registry.add("spring.data.redis.host", () -> "localhost");
+		registry.add("spring.data.redis.port", () -> REDIS_PORT);
+		registry.add("spring.mail.host", () -> "localhost");
+		registry.add("spring.mail.username", () -> "loadtest@example.com");
+		registry.add("jwt.secret", () -> "loadtest-secret-key-loadtest-secret-key-0123456789");
+		registry.add("jwt.expiration", () -> 86_400_000L);
+		registry.add("logging.level.com.example.backend", () -> "WARN");
+		registry.add("spring.threads.virtual.enabled", () -> new LoadTestSettings().virtualThreads);
+	}
+
+	@AfterAll
+	static void stopBackingServices() throws IOException {
+		if (postgres != null) {
+			postgres.close();
+		}
+		if (redisServer != null) {
+			redisServer.stop();
+		}
+	}
+
+	@Test
+	void broadcastUnderLoad() throws Exception {
+		LoadTestSettings settings = new LoadTestSettings();
+		System.out.println("loadtest " + settings);
+		System.out.printf("virtual threads requested=%s active=%s%n", settings.virtualThreads,
+				virtualThreadExecutors.isEnabled());
+
+		LatencyRecorder recorder = new LatencyRecorder();
+		ServerStats stats = new ServerStats();
+		CountDownLatch connected = new CountDownLatch(settings.totalClients());
+		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+				Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+		WebSocketStompClient stompClient = new WebSocketStompClient(
+				new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+		stompClient.setMessageConverter(new CompositeMessageConverter(
+				List.of(new ByteArrayMessageConverter(), new MappingJackson2MessageConverter())));
+		stompClient.setInboundMessageSizeLimit(4 * 1024 * 1024);
+		String url = "http://localhost:" + port + "/ws";
+
+		List<SimulatedEditor> editors = new ArrayList<>();
+		for (int d = 0; d < settings.documents; d++) {
+			List<User> users = createUsers(d, settings.clientsPerDocument);
+			Document document = createDocument(d, users);
+			for (User user : users) {
+				SimulatedEditor editor = new SimulatedEditor(document.getId(), user.getId(), settings, recorder, connected);
+				StompHeaders connectHeaders = new StompHeaders();
+				connectHeaders.add("Authorization", "Bearer " + token(user));
+				stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders, editor);
+				editors.add(editor);
+				// 分批建立连接，避免握手风暴本身成为瓶颈
+				if (editors.size() % settings.connectBatch == 0) {
+					Thread.sleep(100);
+				}
+			}
+		}
+		boolean allConnected = connected.await(2, TimeUnit.MINUTES);
+		System.out.printf("connected %d/%d editors%n", settings.totalClients() - connected.getCount(),
+				settings.totalClients());
+
+		editors.forEach(editor -> editor.start(scheduler));
+		TimeUnit.SECONDS.sleep(settings.warmupSeconds);
+		recorder.start();
+		stats.start();
+		TimeUnit.SECONDS.sleep(settings.durationSeconds);
+		recorder.stop();
+		stats.stop();
+
+		editors.forEach(SimulatedEditor::stop);
+		scheduler.shutdownNow();
+		stompClient.stop();
+
+		recorder.report();
+		stats.report();
+		assertTrue(allConnected, "部分编辑者未能在超时内连接");
+		assertTrue(recorder.framesReceived() > 0, "压测期间未收到任何广播");
+	}
+
+	private List<User> createUsers(int documentIndex, int count) {
+		List<User> users = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String name = "lt" + documentIndex + "_" + i;
+			users.add(User.builder()
+					.publicId("uid_" + name)
+					.username(name)
+					.email(name + "@loadtest.local")
+					.password("{noop}loadtest")
+					.build());
+		}
+		return userRepository.saveAll(users);
+	}
+
+	/**
+	 * 第一个用户为所有者，其余用户作为协作者拥有编辑权限
+	 */
+	private Document createDocument(int documentIndex, List<User> users) {
+		User owner = users.get(0);
+		Document document = documentRepository.save(Document.builder()
+				.title("loadtest-" + documentIndex)
+				.owner(owner)
+				.contentBlob(contentBlobService.putBlob("# load test\n"))
+				.build());
+		List<DocumentCollaborator> collaborators = new ArrayList<>();
+		for (User user : users.subList(1, users.size())) {
+			collaborators.add(DocumentCollaborator.builder()
+					.document(document)
+					.user(user)
+					.invitedBy(owner)
+					.build());
+		}
+		collaboratorRepository.saveAll(collaborators);
+		return document;
+	}
+
+	private String token(User user) {
+		UserDetails details = org.springframework.security.core.userdetails.User.withUsername(user.getEmail())
+				.password(user.getPassword())
+				.authorities("ROLE_USER")
+				.build();
+		return jwtUtil.generateToken(details, user.getId());
+	}
+}
@@ -0,0 +1,102 @@
+package com.example.backend.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * 端到端广播延迟：发送方为每条消息登记唯一标记及发送时刻，每个收到该广播的客户端各记一次
+ * “发送 → 收到”的耗时，即一条消息扇出到文档内所有编辑者的延迟分布。
+ * 预热阶段只计数不记录，start() 之后的数据才进入直方图与帧速率统计。
+ */
+final class LatencyRecorder {
+
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final Map<String, Long> pending = new ConcurrentHashMap<>();
+	private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final LongAdder framesSent = new LongAdder();
+	private final LongAdder framesReceived = new LongAdder();
+	private volatile boolean recording;
+	private long startedAt;
+	private long stoppedAt;
+
+	/**
+	 * 生成消息标记并记下发送时刻
+	 */
+	String stamp() {
+		String token = "lt-" + sequence.incrementAndGet();
+		pending.put(token, System.nanoTime());
+		return token;
+	}
+
+	void sent() {
+		if (recording) {
+			framesSent.increment();
+		}
+	}
+
+	/**
+	 * 收到一帧；token 为 null 或未登记的帧只计数
+	 */
+	void received(String type, String token) {
+		long now = System.nanoTime();
+		if (!recording) {
+			return;
+		}
+		framesReceived.increment();
+		if (token == null) {
+			return;
+		}
+		Long sentAt = pending.get(token);
+		if (sentAt == null) {
+			return;
+		}
+		long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(now - sentAt), HIGHEST_TRACKABLE_MICROS);
+		recorders.computeIfAbsent(type, key -> new Recorder(HIGHEST_TRACKABLE_MICROS, 3)).recordValue(micros);
+	}
+
+	void start() {
+		startedAt = System.nanoTime();
+		recording = true;
+	}
+
+	void stop() {
+		recording = false;
+		stoppedAt = System.nanoTime();
+	}
+
+	void report() {
+		double seconds = Math.max(1, stoppedAt - startedAt) / 1e9;
+		System.out.printf("frames sent=%d (%.0f/s) received=%d (%.0f/s)%n",
+				framesSent.sum(), framesSent.sum() / seconds,
+				framesReceived.sum(), framesReceived.sum() / seconds);
+		Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+		for (Map.Entry<String, Recorder> entry : new TreeMap<>(recorders).entrySet()) {
+			Histogram histogram = entry.getValue().getIntervalHistogram();
+			total.add(histogram);
+			print(entry.getKey(), histogram);
+		}
+		print("ALL", total);
+	}
+
+	long framesReceived() {
+		return framesReceived.sum();
+	}
+
+	private void print(String type, Histogram histogram) {
+		System.out.printf("%-16s count=%9d p50=%8.2fms p99=%8.2fms p999=%8.2fms max=%8.2fms%n", type,
+				histogram.getTotalCount(),
+				histogram.getValueAtPercentile(50) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0,
+				histogram.getValueAtPercentile(99.9) / 1000.0,
+				histogram.getMaxValue() / 1000.0);
+	}
+}
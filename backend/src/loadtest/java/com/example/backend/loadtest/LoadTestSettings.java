@@ -0,0 +1,43 @@
+package com.example.backend.loadtest;
+
+/**
+ * 压测参数，全部通过系统属性覆盖，例如
+ * mvn -Ploadtest test -Dloadtest.documents=4 -Dloadtest.clients-per-document=200 -Dloadtest.draft-per-second=5
+ * 各动作频率均为每个客户端每秒次数，0 表示不发送该动作。
+ * loadtest.virtual-threads 对应 spring.threads.virtual.enabled，分别以 true/false 各跑一次即可对比两种通道执行器。
+ */
+final class LoadTestSettings {
+
+	final int documents = intProperty("loadtest.documents", 2);
+	final int clientsPerDocument = intProperty("loadtest.clients-per-document", 100);
+	final int warmupSeconds = intProperty("loadtest.warmup-seconds", 10);
+	final int durationSeconds = intProperty("loadtest.duration-seconds", 60);
+	final int connectBatch = intProperty("loadtest.connect-batch", 50);
+	final double draftPerSecond = doubleProperty("loadtest.draft-per-second", 2.0);
+	final double cursorPerSecond = doubleProperty("loadtest.cursor-per-second", 5.0);
+	final double savePerSecond = doubleProperty("loadtest.save-per-second", 0.2);
+	final double chatPerSecond = doubleProperty("loadtest.chat-per-second", 0.05);
+	final boolean virtualThreads = Boolean.parseBoolean(System.getProperty("loadtest.virtual-threads", "false"));
+
+	int totalClients() {
+		return documents * clientsPerDocument;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("documents=%d clientsPerDocument=%d warmup=%ds duration=%ds "
+						+ "draft=%.2f/s cursor=%.2f/s save=%.2f/s chat=%.2f/s virtualThreads=%s",
+				documents, clientsPerDocument, warmupSeconds, durationSeconds,
+				draftPerSecond, cursorPerSecond, savePerSecond, chatPerSecond, virtualThreads);
+	}
+
+	private static int intProperty(String name, int defaultValue) {
+		String value = System.getProperty(name);
+		return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	private static double doubleProperty(String name, double defaultValue) {
+		String value = System.getProperty(name);
+		return value == null || value.isBlank() ? defaultValue : Double.parseDouble(value.trim());
+	}
+}
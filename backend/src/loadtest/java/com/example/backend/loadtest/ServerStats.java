@@ -0,0 +1,81 @@
+package com.example.backend.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每秒采样一次进程 CPU 与堆占用。
+ * 模拟客户端与服务端运行在同一 JVM 中，CPU 为两者之和，应视为服务端开销的上界。
+ */
+final class ServerStats {
+
+	private final com.sun.management.OperatingSystemMXBean os =
+			(com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+	private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "loadtest-stats");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private int samples;
+	private double cpuSum;
+	private double cpuMax;
+	private long heapSum;
+	private long heapMax;
+	private long startCpuNanos;
+	private long startGcMillis;
+	private long startedAt;
+	private long stoppedAt;
+	private long cpuNanos;
+	private long gcMillis;
+
+	void start() {
+		startedAt = System.nanoTime();
+		startCpuNanos = os.getProcessCpuTime();
+		startGcMillis = gcMillis();
+		sampler.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+	}
+
+	void stop() throws InterruptedException {
+		sampler.shutdown();
+		sampler.awaitTermination(5, TimeUnit.SECONDS);
+		stoppedAt = System.nanoTime();
+		cpuNanos = os.getProcessCpuTime() - startCpuNanos;
+		gcMillis = gcMillis() - startGcMillis;
+	}
+
+	private synchronized void sample() {
+		double cpu = os.getProcessCpuLoad();
+		if (cpu >= 0) {
+			cpuSum += cpu;
+			cpuMax = Math.max(cpuMax, cpu);
+		}
+		long heap = memory.getHeapMemoryUsage().getUsed();
+		heapSum += heap;
+		heapMax = Math.max(heapMax, heap);
+		samples++;
+	}
+
+	synchronized void report() {
+		double seconds = Math.max(1, stoppedAt - startedAt) / 1e9;
+		int count = Math.max(1, samples);
+		System.out.printf("cpu avg=%.1f%% max=%.1f%% cores busy=%.2f/%d gc=%dms%n",
+				cpuSum / count * 100, cpuMax * 100, cpuNanos / 1e9 / seconds,
+				os.getAvailableProcessors(), gcMillis);
+		System.out.printf("heap avg=%dMB max=%dMB limit=%dMB%n",
+				heapSum / count >> 20, heapMax >> 20, memory.getHeapMemoryUsage().getMax() >> 20);
+	}
+
+	private static long gcMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(0, gc.getCollectionTime());
+		}
+		return total;
+	}
+}
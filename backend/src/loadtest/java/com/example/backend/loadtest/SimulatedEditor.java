@@ -0,0 +1,137 @@
+package com.example.backend.loadtest;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 一个模拟编辑者：连接后订阅文档主题与个人通知队列，加入文档，
+ * 再按配置的频率发送草稿、光标、保存与聊天。草稿与保存都在文档开头插入一个字符，
+ * 无需跟踪服务端草稿长度即可一直有效；每条消息携带标记，用于统计广播延迟。
+ */
+final class SimulatedEditor extends StompSessionHandlerAdapter {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final long documentId;
+	private final long userId;
+	private final LoadTestSettings settings;
+	private final LatencyRecorder recorder;
+	private final CountDownLatch connected;
+	private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+	private volatile StompSession session;
+
+	SimulatedEditor(long documentId, long userId, LoadTestSettings settings,
+			LatencyRecorder recorder, CountDownLatch connected) {
+		this.documentId = documentId;
+		this.userId = userId;
+		this.settings = settings;
+		this.recorder = recorder;
+		this.connected = connected;
+	}
+
+	@Override
+	public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+		this.session = session;
+		StompFrameHandler handler = new FrameHandler();
+		session.subscribe("/topic/document/" + documentId, handler);
+		session.subscribe("/user/queue/notifications", handler);
+		send("join", Map.of());
+		connected.countDown();
+	}
+
+	/**
+	 * 按配置频率启动各动作，首次执行随机错开，避免所有客户端同时发送
+	 */
+	void start(ScheduledExecutorService scheduler) {
+		schedule(scheduler, settings.draftPerSecond, () -> send("draft", Map.of(
+				"type", "INSERT", "position", 0, "text", "d", "clientId", recorder.stamp())));
+		schedule(scheduler, settings.cursorPerSecond, () -> {
+			int position = ThreadLocalRandom.current().nextInt(1000);
+			send("cursor", Map.of("position", position, "line", 1, "column", position));
+		});
+		schedule(scheduler, settings.savePerSecond, () -> send("save", Map.of(
+				"type", "INSERT", "position", 0, "text", "s", "clientId", recorder.stamp())));
+		schedule(scheduler, settings.chatPerSecond, () -> send("chat", Map.of("content", recorder.stamp())));
+	}
+
+	void stop() {
+		tasks.forEach(task -> task.cancel(false));
+		StompSession current = session;
+		if (current != null && current.isConnected()) {
+			current.disconnect();
+		}
+	}
+
+	private void schedule(ScheduledExecutorService scheduler, double perSecond, Runnable action) {
+		if (perSecond <= 0) {
+			return;
+		}
+		long periodMicros = (long) (1_000_000 / perSecond);
+		long initialDelay = ThreadLocalRandom.current().nextLong(periodMicros);
+		tasks.add(scheduler.scheduleAtFixedRate(action, initialDelay, periodMicros, TimeUnit.MICROSECONDS));
+	}
+
+	private void send(String action, Object payload) {
+		StompSession current = session;
+		if (current == null || !current.isConnected()) {
+			return;
+		}
+		try {
+			current.send("/app/document/" + documentId + "/" + action, payload);
+			recorder.sent();
+		} catch (RuntimeException e) {
+			// 发送缓冲已满或连接正在关闭：丢弃本次动作，由帧速率体现
+		}
+	}
+
+	@Override
+	public void handleException(StompSession session, StompCommand command, StompHeaders headers,
+			byte[] payload, Throwable exception) {
+		System.err.printf("editor user=%d doc=%d error: %s%n", userId, documentId, exception.getMessage());
+	}
+
+	@Override
+	public void handleTransportError(StompSession session, Throwable exception) {
+		System.err.printf("editor user=%d doc=%d transport error: %s%n", userId, documentId, exception.getMessage());
+	}
+
+	private final class FrameHandler implements StompFrameHandler {
+
+		@Override
+		public Type getPayloadType(StompHeaders headers) {
+			return byte[].class;
+		}
+
+		@Override
+		public void handleFrame(StompHeaders headers, Object payload) {
+			JsonNode message;
+			try {
+				message = MAPPER.readTree((byte[]) payload);
+			} catch (Exception e) {
+				recorder.received("UNPARSEABLE", null);
+				return;
+			}
+			String type = message.path("type").asText("UNKNOWN");
+			JsonNode data = message.path("data");
+			// 聊天广播原样带回内容，其余广播带回发送方的 clientId
+			String token = "CHAT".equals(type) ? data.path("content").asText(null) : data.path("clientId").asText(null);
+			recorder.received(type, token);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.example.backend.config;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import com.example.backend.dto.websocket.WebSocketMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 协作帧二进制编码
+ * 客户端通过原生 WebSocket 端点 /ws-binary 连接，并在 CONNECT 帧携带 x-frame-codec:cbor 时启用：
+ * 高频协作消息（草稿、光标、CRDT 更新）以 CBOR 二进制帧下发，type 字段替换为整数标签；
+ * 其他消息和未协商的会话仍使用 JSON。客户端可以用 content-type:application/cbor 发送 CBOR 帧。
+ * CBOR 负载由 {@link com.example.backend.service.DocumentBroadcaster} 在广播源头直接从消息对象编码一次，
+ * 放在服务端内部头 {@link #CBOR_PAYLOAD_HEADER} 中随广播复制给每个订阅者（不会写到线上），
+ * 出站拦截器只替换负载，不解析 JSON、不加锁。
+ */
+@Slf4j
+@Component
+public class CborFrameCodec implements ChannelInterceptor {
+
+    public static final String CODEC_HEADER = "x-frame-codec";
+    public static final String CODEC_CBOR = "cbor";
+    public static final String BINARY_ATTRIBUTE = "binaryFrames";
+    public static final String CBOR_PAYLOAD_HEADER = "cborPayload";
+
+    /**
+     * 预先分配的消息类型标签，客户端按同一张表还原 type
+     */
+    public static final Map<String, Integer> TYPE_TAGS = Map.of(
+            "DRAFT_EDIT", 1,
+            "DRAFT_DELTA", 2,
+            "SAVE_CONFIRMED", 3,
+            "CURSOR", 4,
+            "CURSORS", 5,
+            "CRDT_UPDATE", 6);
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper = new CborMessageConverter().getCborMapper();
+
+    // 已协商 CBOR 的会话
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    public CborFrameCodec(ObjectMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+    }
+
+    /**
+     * 入站：CONNECT 时协商编码，DISCONNECT 时清理
+     */
+    public ChannelInterceptor inbound() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+                if (accessor == null || accessor.getCommand() == null) {
+                    return message;
+                }
+                if (StompCommand.CONNECT.equals(accessor.getCommand())) {
+                    negotiate(accessor);
+                } else if (StompCommand.DISCONNECT.equals(accessor.getCommand())) {
+                    cborSessions.remove(accessor.getSessionId());
+                }
+                return message;
+            }
+        };
+    }
+
+    /**
+     * 出站：把发往 CBOR 会话的协作消息转码为二进制帧
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (cborSessions.isEmpty() || !(headers.get(CBOR_PAYLOAD_HEADER) instanceof byte[] cbor)) {
+            return message;
+        }
+        // 简单代理以 SimpMessageHeaderAccessor 构造 MESSAGE 帧，按通用的 simp 头判断
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || !isCborSession(SimpMessageHeaderAccessor.getSessionId(headers))) {
+            return message;
+        }
+        StompHeaderAccessor target = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        target.copyHeaders(headers);
+        // 只有 application/octet-stream 才会以 WebSocket 二进制帧发送
+        target.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        target.setNativeHeader(CODEC_HEADER, CODEC_CBOR);
+        return MessageBuilder.createMessage(cbor, target.getMessageHeaders());
+    }
+
+    boolean isCborSession(String sessionId) {
+        return sessionId != null && cborSessions.contains(sessionId);
+    }
+
+    /**
+     * 是否有会话协商了 CBOR；没有时广播方无需编码
+     */
+    public boolean hasCborSessions() {
+        return !cborSessions.isEmpty();
+    }
+
+    /**
+     * 直接从消息对象编码 CBOR 负载（字段与 JSON 相同，type 替换为整数标签）；不需要二进制编码的类型返回 null
+     */
+    public byte[] encode(WebSocketMessage message) {
+        Integer tag = message == null || message.getType() == null ? null : TYPE_TAGS.get(message.getType());
+        if (tag == null) {
+            return null;
+        }
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("type", tag);
+        fields.put("documentId", message.getDocumentId());
+        fields.put("userId", message.getUserId());
+        fields.put("nickname", message.getNickname());
+        fields.put("data", message.getData());
+        fields.put("timestamp", message.getTimestamp());
+        try {
+            return cborMapper.writeValueAsBytes(fields);
+        } catch (IOException e) {
+            log.warn("CBOR 编码失败，继续使用 JSON: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void negotiate(StompHeaderAccessor accessor) {
+        if (!CODEC_CBOR.equalsIgnoreCase(accessor.getFirstNativeHeader(CODEC_HEADER))) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        // SockJS 只支持文本帧，只有原生 WebSocket 端点才能启用二进制编码
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_ATTRIBUTE))) {
+            log.debug("会话 {} 请求 CBOR 编码但不是二进制端点，继续使用 JSON", accessor.getSessionId());
+            return;
+        }
+        cborSessions.add(accessor.getSessionId());
+    }
+
+    /**
+     * 把其他节点经集群总线转发来的 JSON 负载转码为 CBOR（每条广播每个节点一次）；不需要转码时返回 null
+     */
+    public byte[] transcode(byte[] json) {
+        try {
+            JsonNode node = jsonMapper.readTree(json);
+            if (!(node instanceof ObjectNode object) || !object.path("type").isTextual()) {
+                return null;
+            }
+            Integer tag = TYPE_TAGS.get(object.get("type").asText());
+            if (tag == null) {
+                return null;
+            }
+            object.put("type", tag);
+            return cborMapper.writeValueAsBytes(object);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
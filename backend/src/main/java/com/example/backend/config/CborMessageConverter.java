@@ -0,0 +1,64 @@
+package com.example.backend.config;
+
+import java.io.IOException;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+/**
+ * CBOR 消息转换器
+ * 客户端以 content-type:application/cbor 发送的 STOMP 帧按 CBOR 解码为处理方法参数。
+ */
+public class CborMessageConverter extends AbstractMessageConverter {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final ObjectMapper cborMapper = CBORMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .findAndAddModules()
+            .build();
+
+    public CborMessageConverter() {
+        super(APPLICATION_CBOR);
+        // 仅在显式声明 CBOR 时生效，未声明 content-type 的帧仍交给 JSON 转换器
+        setStrictContentTypeMatch(true);
+    }
+
+    public ObjectMapper getCborMapper() {
+        return cborMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        Object payload = message.getPayload();
+        if (!(payload instanceof byte[] bytes)) {
+            return null;
+        }
+        try {
+            return cborMapper.readValue(bytes, targetClass);
+        } catch (IOException e) {
+            throw new MessageConversionException(message, "CBOR 解码失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        try {
+            return cborMapper.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new MessageConversionException("CBOR 编码失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.backend.config;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import com.example.backend.service.ClusterMessageBus;
+
+/**
+ * 集群模式配置
+ * 开启 app.websocket.cluster.enabled 后订阅 Redis 集群频道，把其他节点（及本节点）发布的事件交给消息总线。
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.websocket.cluster.enabled", havingValue = "true")
+public class ClusterConfig {
+
+    @Bean
+    public RedisMessageListenerContainer clusterListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                  ClusterMessageBus clusterMessageBus) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // 在订阅线程上依次处理，保持频道中的消息顺序
+        container.setTaskExecutor(new SyncTaskExecutor());
+        container.addMessageListener(
+                (message, pattern) -> clusterMessageBus.onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(ClusterMessageBus.CHANNEL));
+        return container;
+    }
+}
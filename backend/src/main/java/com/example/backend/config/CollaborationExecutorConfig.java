@@ -0,0 +1,41 @@
+package com.example.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 协作执行器配置
+ * 文档邮箱的消费任务在此执行：与 WebSocket 通道共用 spring.threads.virtual.enabled 开关，
+ * 开启且 JDK 21+ 时每个任务一个虚拟线程；否则使用固定线程数的平台线程池。
+ * 该线程池的任务队列不设上限，积压由每个文档邮箱的容量（app.collab.mailbox.capacity）限制。
+ */
+@Slf4j
+@Configuration
+public class CollaborationExecutorConfig {
+
+    @Value("${app.collab.executor.pool-size:16}")
+    private int poolSize;
+
+    @Bean(name = "documentSequencerExecutor")
+    public TaskExecutor documentSequencerExecutor(VirtualThreadExecutors virtualThreadExecutors) {
+        TaskExecutor virtual = virtualThreadExecutors.taskExecutor("doc-seq-");
+        if (virtual != null) {
+            log.info("文档邮箱使用虚拟线程执行");
+            return virtual;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("doc-seq-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        log.info("文档邮箱使用平台线程池执行, poolSize={}", poolSize);
+        return executor;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.backend.config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 出站背压策略
+ * 每个会话的发送缓冲按字节数和“当前一次发送已耗时”计算负载：
+ * 超过光标阈值时丢弃 CURSOR/CURSORS 帧（下一帧光标会覆盖），超过草稿阈值时再丢弃草稿帧，
+ * 并在本轮首次丢弃草稿时改为下发一条 FRAMES_DROPPED 通知，客户端据此重新同步草稿；
+ * 仍超出发送缓冲或时间上限的会话直接断开，避免一个慢客户端拖住整个文档的广播。
+ * 丢弃数按帧类型计入 collab.outbound.dropped。
+ * 由 {@link WebSocketBrokerConfiguration} 作为 SubProtocolWebSocketHandler 的会话包装接入，直接管理真实的发送缓冲。
+ */
+@Slf4j
+@Component
+public class OutboundBackpressure {
+
+    public static final String TYPE_FRAMES_DROPPED = "FRAMES_DROPPED";
+
+    private static final String KIND_CURSOR = "cursor";
+    private static final String KIND_DRAFT = "draft";
+    private static final String TOPIC_PREFIX = "destination:/topic/document/";
+    private static final byte[] JSON_TYPE_MARKER = "\"type\":\"".getBytes(StandardCharsets.UTF_8);
+    // CBOR 文本串 "type"（0x64 + 4 字节）
+    private static final byte[] CBOR_TYPE_MARKER = {0x64, 't', 'y', 'p', 'e'};
+
+    private static final Set<String> CURSOR_TYPES = Set.of("CURSOR", "CURSORS");
+    private static final Set<String> DRAFT_TYPES = Set.of("DRAFT_EDIT", "DRAFT_DELTA");
+    private static final Map<Integer, String> TAG_TYPES = new HashMap<>();
+
+    static {
+        CborFrameCodec.TYPE_TAGS.forEach((type, tag) -> TAG_TYPES.put(tag, type));
+    }
+
+    private final int sendTimeLimit;
+    private final int bufferSizeLimit;
+    private final Counter terminatedCounter;
+    private final Map<String, Counter> droppedCounters;
+
+    public OutboundBackpressure(MeterRegistry meterRegistry,
+                                @Value("${app.websocket.outbound.send-time-limit-ms:10000}") int sendTimeLimit,
+                                @Value("${app.websocket.outbound.buffer-size-limit:524288}") int bufferSizeLimit) {
+        this.sendTimeLimit = sendTimeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.terminatedCounter = Counter.builder("collab.outbound.terminated")
+                .description("持续超出发送预算被断开的会话数")
+                .register(meterRegistry);
+        this.droppedCounters = Map.of(
+                KIND_CURSOR, droppedCounter(meterRegistry, KIND_CURSOR),
+                KIND_DRAFT, droppedCounter(meterRegistry, KIND_DRAFT));
+    }
+
+    /**
+     * 为会话套上带策略的发送缓冲（替代 SubProtocolWebSocketHandler 默认的 ConcurrentWebSocketSessionDecorator）
+     */
+    public WebSocketSession decorateSession(WebSocketSession session) {
+        return new BudgetedSession(session);
+    }
+
+    long droppedCount(String kind) {
+        return (long) droppedCounters.get(kind).count();
+    }
+
+    /**
+     * 会话负载等级：0 正常，1 丢弃光标，2 再丢弃草稿
+     */
+    int pressureLevel(int bufferSize, long timeSinceSendStarted) {
+        if (bufferSize > bufferSizeLimit / 2 || timeSinceSendStarted > sendTimeLimit / 2) {
+            return 2;
+        }
+        if (bufferSize > bufferSizeLimit / 4 || timeSinceSendStarted > sendTimeLimit / 4) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 从 STOMP 帧中读取消息类型（JSON 负载读 type 字段，CBOR 负载按类型标签还原）
+     */
+    static String frameType(WebSocketMessage<?> message) {
+        byte[] frame = frameBytes(message);
+        if (frame == null) {
+            return null;
+        }
+        int json = indexOf(frame, JSON_TYPE_MARKER, 0);
+        if (json >= 0) {
+            int start = json + JSON_TYPE_MARKER.length;
+            int end = start;
+            while (end < frame.length && frame[end] != '"') {
+                end++;
+            }
+            return new String(frame, start, end - start, StandardCharsets.UTF_8);
+        }
+        int cbor = indexOf(frame, CBOR_TYPE_MARKER, 0);
+        if (cbor >= 0 && cbor + CBOR_TYPE_MARKER.length < frame.length) {
+            int tag = frame[cbor + CBOR_TYPE_MARKER.length] & 0xff;
+            // CBOR 0..23 的无符号整数以单字节编码
+            return tag <= 0x17 ? TAG_TYPES.get(tag) : null;
+        }
+        return null;
+    }
+
+    static String documentId(WebSocketMessage<?> message) {
+        byte[] frame = frameBytes(message);
+        if (frame == null) {
+            return "unknown";
+        }
+        byte[] marker = TOPIC_PREFIX.getBytes(StandardCharsets.UTF_8);
+        int index = indexOf(frame, marker, 0);
+        if (index < 0) {
+            return "unknown";
+        }
+        int start = index + marker.length;
+        int end = start;
+        while (end < frame.length && frame[end] >= '0' && frame[end] <= '9') {
+            end++;
+        }
+        return end > start ? new String(frame, start, end - start, StandardCharsets.US_ASCII) : "unknown";
+    }
+
+    /**
+     * 用被丢弃帧的头部（目标、订阅 ID）构造一条 FRAMES_DROPPED 通知帧
+     */
+    static TextMessage droppedNotice(WebSocketMessage<?> dropped, String documentId) {
+        byte[] frame = frameBytes(dropped);
+        String text = new String(frame, StandardCharsets.UTF_8);
+        int headerEnd = text.indexOf("\n\n");
+        StringBuilder headers = new StringBuilder();
+        for (String line : text.substring(0, headerEnd).split("\n")) {
+            if (!line.startsWith("content-length:") && !line.startsWith("content-type:")
+                    && !line.startsWith(CborFrameCodec.CODEC_HEADER + ":")) {
+                headers.append(line).append('\n');
+            }
+        }
+        String body = "{\"type\":\"" + TYPE_FRAMES_DROPPED + "\",\"documentId\":"
+                + ("unknown".equals(documentId) ? "null" : documentId)
+                + ",\"data\":{\"kinds\":[\"DRAFT\"]},\"timestamp\":" + System.currentTimeMillis() + "}";
+        headers.append("content-type:application/json;charset=UTF-8\n")
+                .append("content-length:").append(body.getBytes(StandardCharsets.UTF_8).length).append('\n');
+        return new TextMessage(headers + "\n" + body + "\0");
+    }
+
+    private static Counter droppedCounter(MeterRegistry meterRegistry, String kind) {
+        return Counter.builder("collab.outbound.dropped")
+                .description("因慢消费者被丢弃的出站帧数")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    private static byte[] frameBytes(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return text.asBytes();
+        }
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer buffer = binary.getPayload().duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] source, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= source.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (source[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 带预算的会话：发送缓冲超过阈值时按策略丢帧，超过上限时断开（TERMINATE）
+     */
+    private final class BudgetedSession extends ConcurrentWebSocketSessionDecorator {
+
+        // 当前这一轮拥塞是否已下发过草稿丢弃通知
+        private volatile boolean draftNoticeSent;
+
+        private BudgetedSession(WebSocketSession delegate) {
+            super(delegate, sendTimeLimit, bufferSizeLimit, OverflowStrategy.TERMINATE);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            int level = pressureLevel(getBufferSize(), getTimeSinceSendStarted());
+            if (level == 0) {
+                draftNoticeSent = false;
+            } else {
+                String type = frameType(message);
+                if (type != null && CURSOR_TYPES.contains(type)) {
+                    droppedCounters.get(KIND_CURSOR).increment();
+                    return;
+                }
+                if (level >= 2 && type != null && DRAFT_TYPES.contains(type)) {
+                    droppedCounters.get(KIND_DRAFT).increment();
+                    if (draftNoticeSent) {
+                        return;
+                    }
+                    draftNoticeSent = true;
+                    message = droppedNotice(message, documentId(message));
+                }
+            }
+            try {
+                super.sendMessage(message);
+            } catch (SessionLimitExceededException e) {
+                terminatedCounter.increment();
+                log.warn("会话 {} 持续超出发送预算，已断开: {}", getId(), e.getMessage());
+                throw e;
+            }
+        }
+    }
+}
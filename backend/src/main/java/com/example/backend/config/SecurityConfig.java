@@ -49,7 +49,7 @@ public class SecurityConfig {
                 // 静态资源
                 .requestMatchers("/uploads/**").permitAll()
                 // WebSocket端点
-                .requestMatchers("/ws/**").permitAll()
+                .requestMatchers("/ws/**", "/ws-binary").permitAll()
                 // 管理员接口
                 .requestMatchers("/api/admin/**").hasRole("ADMIN")
                 // 其他接口需要认证
@@ -0,0 +1,48 @@
+package com.example.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 虚拟线程执行器
+ * 开启 spring.threads.virtual.enabled 且运行在 JDK 21+ 时，Spring Boot 会让 Tomcat 连接器使用虚拟线程；
+ * 这里为 STOMP 的 clientInbound/clientOutbound 通道提供同样的虚拟线程执行器（两者分别由
+ * preserveReceiveOrder / preservePublishOrder 保证会话内顺序；broker 通道保持同步以保证广播顺序），
+ * 处理方法阻塞在 Redis/JDBC 上时不再受平台线程池大小限制；文档邮箱的消费任务也使用同一开关。
+ * 未开启或 JDK 版本不足时返回 null，调用方继续使用各自的平台线程池。
+ */
+@Slf4j
+@Component
+public class VirtualThreadExecutors {
+
+    private static final int VIRTUAL_THREAD_MIN_JAVA_VERSION = 21;
+
+    private final boolean enabled;
+
+    public VirtualThreadExecutors(@Value("${spring.threads.virtual.enabled:false}") boolean requested) {
+        this.enabled = requested && Runtime.version().feature() >= VIRTUAL_THREAD_MIN_JAVA_VERSION;
+        if (requested && !enabled) {
+            log.warn("已开启虚拟线程，但当前 JDK {} 不支持，继续使用平台线程池", Runtime.version().feature());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器；未启用时返回 null
+     */
+    public TaskExecutor taskExecutor(String threadNamePrefix) {
+        if (!enabled) {
+            return null;
+        }
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.backend.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * STOMP 消息代理基础配置（代替 @EnableWebSocketMessageBroker）
+ * 端点、通道与代理仍由各 WebSocketMessageBrokerConfigurer 配置；这里只替换 SubProtocolWebSocketHandler 的会话包装：
+ * 默认每个会话套一层 ConcurrentWebSocketSessionDecorator，积压就发生在这一层，
+ * 出站背压策略必须接管这一层的缓冲才能看到真实的积压量。
+ */
+@Configuration(proxyBeanMethods = false)
+public class WebSocketBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    private final OutboundBackpressure outboundBackpressure;
+
+    public WebSocketBrokerConfiguration(OutboundBackpressure outboundBackpressure) {
+        this.outboundBackpressure = outboundBackpressure;
+    }
+
+    @Override
+    @Bean
+    public WebSocketHandler subProtocolWebSocketHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel) {
+        SubProtocolWebSocketHandler handler = new SubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel) {
+            @Override
+            protected WebSocketSession decorateSession(WebSocketSession session) {
+                return outboundBackpressure.decorateSession(session);
+            }
+        };
+        handler.setPhase(getPhase());
+        return handler;
+    }
+}
@@ -1,33 +1,136 @@
 package com.example.backend.config;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import com.example.backend.service.PresenceService;
 
 /**
  * WebSocket配置类
+ * 消息代理由 {@link WebSocketBrokerConfiguration} 启用，慢消费者的出站背压也在那里接入
  */
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     
+    private final CborFrameCodec cborFrameCodec;
+    private final PresenceService presenceService;
+    private final VirtualThreadExecutors virtualThreadExecutors;
+    private final TaskScheduler messageBrokerTaskScheduler;
+    
+    @Value("${app.websocket.heartbeat-ms:10000}")
+    private long heartbeatMillis;
+    
+    /**
+     * 在线状态服务依赖消息模板，而消息模板又依赖本配置，需延迟注入
+     */
+    public WebSocketConfig(CborFrameCodec cborFrameCodec,
+                           @Lazy PresenceService presenceService,
+                           VirtualThreadExecutors virtualThreadExecutors,
+                           @Lazy TaskScheduler messageBrokerTaskScheduler) {
+        this.cborFrameCodec = cborFrameCodec;
+        this.presenceService = presenceService;
+        this.virtualThreadExecutors = virtualThreadExecutors;
+        this.messageBrokerTaskScheduler = messageBrokerTaskScheduler;
+    }
+    
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // 配置消息代理，客户端订阅地址前缀
-        config.enableSimpleBroker("/topic", "/queue");
+        config.enableSimpleBroker("/topic", "/queue")
+                // STOMP心跳：客户端心跳帧用于刷新在线状态，服务端心跳用于检测半开连接
+                .setHeartbeatValue(new long[] {heartbeatMillis, heartbeatMillis})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         // 客户端发送消息的地址前缀
         config.setApplicationDestinationPrefixes("/app");
         // 点对点消息前缀
         config.setUserDestinationPrefix("/user");
+        // 增量操作依赖顺序，保证同一会话的广播按发布顺序送达
+        config.setPreservePublishOrder(true);
+        // broker 通道保持同步：发布顺序保证不覆盖该通道，异步执行会让 /topic 广播（按修订号的 SAVE_CONFIRMED、DRAFT_DELTA）乱序
     }
     
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // WebSocket连接端点，支持SockJS回退
+        // 同一会话的入站消息按接收顺序处理，避免增量草稿乱序
+        registry.setPreserveReceiveOrder(true);
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+        // 原生WebSocket端点，可协商CBOR二进制帧
+        registry.addEndpoint("/ws-binary")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(binaryEndpointMarker());
+    }
+    
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        Executor executor = virtualThreadExecutors.taskExecutor("ws-in-");
+        if (executor != null) {
+            registration.executor(executor);
+        }
+        registration.interceptors(cborFrameCodec.inbound(), new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                // 任意入站帧（含心跳帧）都视为会话仍然在线
+                presenceService.touch(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+                return message;
+            }
+        });
+    }
+    
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        Executor executor = virtualThreadExecutors.taskExecutor("ws-out-");
+        if (executor != null) {
+            registration.executor(executor);
+        }
+        registration.interceptors(cborFrameCodec);
+    }
+    
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // 保留默认的JSON/字符串转换器，额外支持application/cbor入站帧
+        messageConverters.add(new CborMessageConverter());
+        return true;
+    }
+    
+    private HandshakeInterceptor binaryEndpointMarker() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request,
+                                           ServerHttpResponse response,
+                                           WebSocketHandler wsHandler,
+                                           Map<String, Object> attributes) {
+                attributes.put(CborFrameCodec.BINARY_ATTRIBUTE, Boolean.TRUE);
+                return true;
+            }
+            
+            @Override
+            public void afterHandshake(ServerHttpRequest request,
+                                       ServerHttpResponse response,
+                                       WebSocketHandler wsHandler,
+                                       Exception exception) {
+            }
+        };
     }
 }
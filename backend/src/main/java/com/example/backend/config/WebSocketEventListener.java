@@ -1,44 +1,51 @@
 package com.example.backend.config;
 
-import java.security.Principal;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
 import com.example.backend.dto.websocket.WebSocketMessage;
 import com.example.backend.entity.User;
 import com.example.backend.repository.UserRepository;
 import com.example.backend.service.CollaborationCacheService;
+import com.example.backend.service.DocumentBroadcaster;
+import com.example.backend.service.CursorAggregator;
+import com.example.backend.service.PresenceService;
+import com.example.backend.service.SessionUserCache;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * WebSocket 事件监听器
- * 处理连接、断开等事件，确保 Redis 数据正确清理
+ * 处理连接、订阅、断开等事件，确保 Redis 数据正确清理。
+ * 一个 STOMP 会话可以同时加入多个文档：退订某文档的最后一个频道或断开连接时，按文档逐个离开。
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class WebSocketEventListener {
 
+    private static final String DOCUMENT_TOPIC = "/topic/document/";
+
     private final CollaborationCacheService collaborationCacheService;
     private final UserRepository userRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final DocumentBroadcaster documentBroadcaster;
+    private final CursorAggregator cursorAggregator;
+    private final SessionUserCache sessionUserCache;
+    private final PresenceService presenceService;
 
-    // 存储 sessionId -> userId 的映射
-    private final Map<String, Long> sessionUserMap = new ConcurrentHashMap<>();
-    
-    // 存储 sessionId -> documentId 的映射（一个用户一次只能在一个文档中）
-    private final Map<String, Long> sessionDocumentMap = new ConcurrentHashMap<>();
+    // sessionId -> 该会话对文档频道的订阅（一个连接可以同时订阅多个文档）
+    private final Map<String, DocumentSubscriptions> sessionSubscriptions = new ConcurrentHashMap<>();
 
     /**
      * 监听 WebSocket 连接事件
@@ -51,83 +58,76 @@ public class WebSocketEventListener {
     }
 
     /**
-     * 监听订阅事件，记录用户订阅的文档
+     * 监听订阅事件，记录会话订阅的文档（订阅 ID -> 文档 ID）
      */
     @EventListener
     public void handleSubscribeEvent(SessionSubscribeEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         String sessionId = headerAccessor.getSessionId();
+        String subscriptionId = headerAccessor.getSubscriptionId();
         String destination = headerAccessor.getDestination();
         
-        if (destination != null && destination.startsWith("/topic/document/")) {
+        if (sessionId != null && subscriptionId != null && destination != null && destination.startsWith(DOCUMENT_TOPIC)) {
             try {
                 // 提取文档 ID: /topic/document/{documentId}
-                String docIdStr = destination.replace("/topic/document/", "");
-                Long documentId = Long.valueOf(docIdStr);
-                
-                // 获取用户信息
-                Principal userPrincipal = headerAccessor.getUser();
-                if (userPrincipal != null) {
-                    String email = userPrincipal.getName();
-                    User user = userRepository.findByEmail(email).orElse(null);
-                    if (user != null) {
-                        sessionUserMap.put(sessionId, user.getId());
-                        sessionDocumentMap.put(sessionId, documentId);
-                        log.debug("用户 {} 订阅文档 {}, sessionId={}", user.getUsername(), documentId, sessionId);
-                    }
-                }
+                Long documentId = Long.valueOf(destination.substring(DOCUMENT_TOPIC.length()));
+                sessionSubscriptions.computeIfAbsent(sessionId, key -> new DocumentSubscriptions())
+                        .add(subscriptionId, documentId);
+                log.debug("会话 {} 订阅文档 {}", sessionId, documentId);
             } catch (NumberFormatException e) {
                 log.debug("无法解析文档 ID: {}", destination);
             }
         }
     }
 
+    /**
+     * 监听退订事件：会话不再订阅某文档的任何频道时，视为离开该文档
+     */
+    @EventListener
+    public void handleUnsubscribeEvent(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headerAccessor.getSessionId();
+        DocumentSubscriptions subscriptions = sessionId == null ? null : sessionSubscriptions.get(sessionId);
+        if (subscriptions == null || headerAccessor.getSubscriptionId() == null) {
+            return;
+        }
+        long documentId = subscriptions.remove(headerAccessor.getSubscriptionId());
+        if (documentId < 0 || subscriptions.contains(documentId)) {
+            return;
+        }
+        User user = sessionUserCache.resolveSession(sessionId);
+        if (user == null) {
+            user = sessionUserCache.resolve(headerAccessor.getUser());
+        }
+        if (user != null) {
+            leaveDocument(sessionId, documentId, user.getId(), user);
+        }
+    }
+
     /**
      * 监听 WebSocket 断开连接事件
-     * 清理 Redis 中的在线用户数据
+     * 清理该会话加入的每个文档在 Redis 中的在线用户数据
      */
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         String sessionId = headerAccessor.getSessionId();
         
-        Long userId = sessionUserMap.remove(sessionId);
-        Long documentId = sessionDocumentMap.remove(sessionId);
+        sessionSubscriptions.remove(sessionId);
+        User cachedUser = sessionUserCache.resolveSession(sessionId);
+        sessionUserCache.unregister(sessionId);
+        PresenceService.TrackedSession tracked = presenceService.untrack(sessionId);
         
-        if (userId != null && documentId != null) {
-            // 从 Redis 移除在线用户
-            collaborationCacheService.removeOnlineUser(documentId, userId);
-            
-            // 获取用户信息用于广播
-            User user = userRepository.findById(userId).orElse(null);
-            String nickname = user != null ? user.getUsername() : "Unknown";
-            
-            // 广播用户离开消息
-            WebSocketMessage message = WebSocketMessage.builder()
-                    .type("LEAVE")
-                    .documentId(documentId)
-                    .userId(userId)
-                    .nickname(nickname)
-                    .timestamp(System.currentTimeMillis())
-                    .data(Map.of(
-                            "userId", userId,
-                            "onlineUsers", collaborationCacheService.getOnlineUsers(documentId)
-                    ))
-                    .build();
-            
-            messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
-            
-            // 如果所有人都离开了，清空文档缓存
-            Set<Long> remainingUsers = collaborationCacheService.getOnlineUsers(documentId);
-            if (remainingUsers.isEmpty()) {
-                collaborationCacheService.clearDocumentState(documentId);
-                log.info("文档 {} 无在线用户，已清理缓存", documentId);
-            }
-            
-            log.info("用户 {} (sessionId={}) 断开连接，已从文档 {} 移除", nickname, sessionId, documentId);
-        } else {
+        if (tracked == null) {
             log.debug("WebSocket 断开: sessionId={}, 无需清理（用户未加入文档）", sessionId);
+            return;
+        }
+        Long userId = tracked.getUserId();
+        User user = cachedUser != null ? cachedUser : userRepository.findById(userId).orElse(null);
+        for (long documentId : tracked.getDocumentIds()) {
+            removeFromDocument(sessionId, documentId, userId, user);
         }
+        log.info("会话 {} 断开连接，已从 {} 个文档移除", sessionId, tracked.getDocumentIds().length);
     }
 
     /**
@@ -135,18 +135,95 @@ public class WebSocketEventListener {
      */
     public void registerUserJoinDocument(String sessionId, Long userId, Long documentId) {
         if (sessionId != null && userId != null && documentId != null) {
-            sessionUserMap.put(sessionId, userId);
-            sessionDocumentMap.put(sessionId, documentId);
+            presenceService.track(sessionId, documentId, userId);
+        }
+    }
+
+    /**
+     * 会话离开单个文档（显式 leave 或退订）；会话未加入该文档时忽略
+     */
+    public void leaveDocument(String sessionId, Long documentId, Long userId, User user) {
+        if (presenceService.untrack(sessionId, documentId)) {
+            removeFromDocument(sessionId, documentId, userId, user);
         }
     }
 
     /**
-     * 注销用户离开文档（供 WebSocketController 调用）
+     * 会话离开文档后从在线列表移除用户并广播 LEAVE；用户在任一节点仍有其他会话加入该文档时保留
      */
-    public void unregisterUserFromDocument(String sessionId) {
-        if (sessionId != null) {
-            sessionUserMap.remove(sessionId);
-            sessionDocumentMap.remove(sessionId);
+    private void removeFromDocument(String sessionId, Long documentId, Long userId, User user) {
+        // 同一脚本内移除会话成员记录，用户已无会话时移除在线用户，最后一人离开时清空文档缓存
+        Set<Long> remainingUsers = collaborationCacheService.leaveDocument(documentId, userId, sessionId);
+        if (remainingUsers == null) {
+            log.debug("用户 {} 仍有其他会话在文档 {} 中，保留在线状态", userId, documentId);
+            return;
+        }
+        cursorAggregator.remove(documentId, userId);
+        
+        String nickname = user != null ? user.getUsername() : "Unknown";
+        
+        // 广播用户离开消息
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type("LEAVE")
+                .documentId(documentId)
+                .userId(userId)
+                .nickname(nickname)
+                .timestamp(System.currentTimeMillis())
+                .data(Map.of(
+                        "userId", userId,
+                        "onlineUsers", remainingUsers
+                ))
+                .build();
+        
+        documentBroadcaster.toDocument(documentId, message);
+        
+        if (remainingUsers.isEmpty()) {
+            log.info("文档 {} 无在线用户，已清理缓存", documentId);
+        }
+        log.info("用户 {} 离开文档 {} 协作", nickname, documentId);
+    }
+
+    /**
+     * 会话的文档订阅：订阅 ID 与文档 ID 的平行数组（一个会话通常只有少量订阅）
+     */
+    private static final class DocumentSubscriptions {
+        private String[] subscriptionIds = new String[2];
+        private long[] documentIds = new long[2];
+        private int size;
+
+        synchronized void add(String subscriptionId, long documentId) {
+            if (size == documentIds.length) {
+                subscriptionIds = Arrays.copyOf(subscriptionIds, size << 1);
+                documentIds = Arrays.copyOf(documentIds, size << 1);
+            }
+            subscriptionIds[size] = subscriptionId;
+            documentIds[size++] = documentId;
+        }
+
+        /**
+         * 移除订阅并返回其文档 ID，不存在时返回 -1
+         */
+        synchronized long remove(String subscriptionId) {
+            for (int i = 0; i < size; i++) {
+                if (subscriptionIds[i].equals(subscriptionId)) {
+                    long documentId = documentIds[i];
+                    size--;
+                    subscriptionIds[i] = subscriptionIds[size];
+                    documentIds[i] = documentIds[size];
+                    subscriptionIds[size] = null;
+                    return documentId;
+                }
+            }
+            return -1;
+        }
+
+        synchronized boolean contains(long documentId) {
+            for (int i = 0; i < size; i++) {
+                if (documentIds[i] == documentId) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.example.backend.config;
 
 import com.example.backend.security.JwtUtil;
+import com.example.backend.service.SessionUserCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
@@ -17,7 +18,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
 /**
@@ -25,13 +25,13 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
  */
 @Slf4j
 @Configuration
-@EnableWebSocketMessageBroker
 @Order(Ordered.HIGHEST_PRECEDENCE + 99)
 @RequiredArgsConstructor
 public class WebSocketSecurityConfig implements WebSocketMessageBrokerConfigurer {
     
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final SessionUserCache sessionUserCache;
     
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
@@ -54,6 +54,8 @@ public class WebSocketSecurityConfig implements WebSocketMessageBrokerConfigurer
                                             new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                                     SecurityContextHolder.getContext().setAuthentication(authentication);
                                     accessor.setUser(authentication);
+                                    // 连接时解析一次用户，后续消息直接读取会话缓存
+                                    sessionUserCache.register(accessor.getSessionId(), userDetails.getUsername());
                                 }
                             }
                         } catch (Exception e) {
@@ -1,5 +1,7 @@
 package com.example.backend.controller;
 
+import java.util.List;
+
 import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -30,6 +32,7 @@ import com.example.backend.dto.document.UpdateDocumentRequest;
 import com.example.backend.entity.User;
 import com.example.backend.service.DocumentService;
 import com.example.backend.service.UserService;
+import com.example.backend.util.ThreeWayMerge;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -82,12 +85,14 @@ public class DocumentController {
 
     /**
      * 获取协作缓存态（确认态内容、当前用户草稿、在线列表）
+     * 携带 sinceRevision 时只返回该修订号之后的操作（超出操作窗口时仍返回全文）
      */
     @GetMapping("/{id}/cache")
     public ApiResponse<DocumentCacheResponse> getDocumentCache(@AuthenticationPrincipal UserDetails userDetails,
-                                                                @PathVariable Long id) {
+                                                                @PathVariable Long id,
+                                                                @RequestParam(required = false) Long sinceRevision) {
         User user = userService.getUserByEmail(userDetails.getUsername());
-        DocumentCacheResponse cache = documentService.getDocumentCache(id, user.getId());
+        DocumentCacheResponse cache = documentService.getDocumentCache(id, user.getId(), sinceRevision);
         return ApiResponse.success(cache);
     }
     
@@ -105,13 +110,18 @@ public class DocumentController {
 
     /**
      * 保存至 Redis 确认态（不持久化数据库）。
+     * 与他人修改重叠的部分以确认态为准，冲突明细随响应返回。
      */
     @PostMapping("/{id}/cache/save")
-    public ApiResponse<Void> saveDocumentCache(@AuthenticationPrincipal UserDetails userDetails,
-                                               @PathVariable Long id,
-                                               @Valid @RequestBody SaveDocumentRequest request) {
+    public ApiResponse<List<ThreeWayMerge.Conflict>> saveDocumentCache(@AuthenticationPrincipal UserDetails userDetails,
+                                                                       @PathVariable Long id,
+                                                                       @Valid @RequestBody SaveDocumentRequest request) {
         User user = userService.getUserByEmail(userDetails.getUsername());
-        documentService.saveDocumentCache(id, user.getId(), user.getUsername(), request.getContent());
+        List<ThreeWayMerge.Conflict> conflicts = documentService.saveDocumentCache(id, user.getId(), user.getUsername(),
+                request.getContent(), request.getBaseRevision());
+        if (!conflicts.isEmpty()) {
+            return ApiResponse.success("已保存，部分内容与他人修改冲突", conflicts);
+        }
         return ApiResponse.success("保存成功");
     }
     
@@ -1,30 +1,42 @@
 package com.example.backend.controller;
 
 import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
 import com.example.backend.config.WebSocketEventListener;
+import com.example.backend.dto.websocket.AppliedOperation;
+import com.example.backend.dto.websocket.CrdtMessage;
 import com.example.backend.dto.websocket.CursorPosition;
 import com.example.backend.dto.websocket.DocumentOperation;
+import com.example.backend.dto.websocket.JoinRequest;
 import com.example.backend.dto.websocket.WebSocketMessage;
 import com.example.backend.entity.ChatMessage;
 import com.example.backend.entity.User;
+import com.example.backend.exception.BusinessException;
 import com.example.backend.repository.UserRepository;
 import com.example.backend.service.ChatService;
 import com.example.backend.service.CollaborationCacheService;
+import com.example.backend.service.DocumentBroadcaster;
+import com.example.backend.service.CrdtCollaborationService;
+import com.example.backend.service.CursorAggregator;
+import com.example.backend.service.DocumentSequencer;
 import com.example.backend.service.DocumentService;
+import com.example.backend.service.DraftLogService;
+import com.example.backend.service.OperationTransformService;
+import com.example.backend.service.PresenceService;
+import com.example.backend.service.SessionUserCache;
+import com.example.backend.util.TextOperation;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -37,19 +49,33 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class WebSocketController {
     
-    private final SimpMessagingTemplate messagingTemplate;
+    private final DocumentBroadcaster documentBroadcaster;
     private final ChatService chatService;
     private final UserRepository userRepository;
         private final DocumentService documentService;
         private final CollaborationCacheService collaborationCacheService;
+        private final DraftLogService draftLogService;
+        private final OperationTransformService operationTransformService;
+        private final CrdtCollaborationService crdtCollaborationService;
+        private final DocumentSequencer documentSequencer;
+        private final CursorAggregator cursorAggregator;
+        private final SessionUserCache sessionUserCache;
+        private final PresenceService presenceService;
         private final WebSocketEventListener webSocketEventListener;
-    
-    // 存储每个文档的光标位置
-    private final Map<Long, Map<Long, CursorPosition>> documentCursors = new ConcurrentHashMap<>();
 
         private static final String TYPE_DRAFT_EDIT = "DRAFT_EDIT";
+        private static final String TYPE_DRAFT_DELTA = "DRAFT_DELTA";
+        private static final String TYPE_DRAFT_RESYNC = "DRAFT_RESYNC";
+        private static final String TYPE_DRAFT_REPLAY = "DRAFT_REPLAY";
         private static final String TYPE_SAVE_CONFIRMED = "SAVE_CONFIRMED";
-        private static final String TYPE_SAVE_REJECTED = "SAVE_REJECTED";
+        private static final String TYPE_SAVE_CONFLICT = "SAVE_CONFLICT";
+        private static final String TYPE_HISTORY_UNAVAILABLE = "HISTORY_UNAVAILABLE";
+        private static final String ACTION_UNDO = "UNDO";
+        private static final String ACTION_REDO = "REDO";
+        private static final String TYPE_RESYNC = "RESYNC";
+        private static final String TYPE_CRDT_SYNC = "CRDT_SYNC";
+        private static final String TYPE_CATCH_UP = "CATCH_UP";
+        private static final String TYPE_CRDT_UPDATE = "CRDT_UPDATE";
     
     /**
      * 加入文档协作
@@ -57,18 +83,33 @@ public class WebSocketController {
     @MessageMapping("/document/{documentId}/join")
     public void joinDocument(@DestinationVariable Long documentId, 
                              @Header("simpSessionId") String sessionId,
+                             @Payload(required = false) JoinRequest joinRequest,
                              Principal principal) {
         if (principal == null) return;
         
-        User user = userRepository.findByEmail(principal.getName()).orElse(null);
+        User user = sessionUserCache.resolve(principal);
         if (user == null) return;
 
+        // 无读取权限时直接拒绝，不下发内容、不进入在线名册
+        String collabMode = readableCollabMode(documentId, user);
+        if (collabMode == null) return;
+
         // 初始化确认态（无则回填数据库内容）
         initializeConfirmedCache(documentId, user.getId());
+        if (CrdtCollaborationService.MODE_CRDT.equals(collabMode)) {
+            sendCrdtSync(documentId, user, joinRequest == null ? null : joinRequest.getStateVector(),
+                    joinRequest == null ? null : joinRequest.getEpoch());
+        } else if (joinRequest != null) {
+            if (joinRequest.getLastRevision() != null) {
+                sendCatchUp(documentId, user, joinRequest.getLastRevision());
+            }
+            if (joinRequest.getDraftStreamId() != null) {
+                sendDraftReplay(documentId, user, joinRequest.getDraftStreamId());
+            }
+        }
 
-        // 添加在线用户到 Redis
-        collaborationCacheService.addOnlineUser(documentId, user.getId());
-        Set<Long> onlineUsers = collaborationCacheService.getOnlineUsers(documentId);
+        // 添加在线用户及名册条目到 Redis
+        Set<Long> onlineUsers = presenceService.join(documentId, user, sessionId);
         
         // 注册 session 映射，用于断开时清理
         webSocketEventListener.registerUserJoinDocument(sessionId, user.getId(), documentId);
@@ -79,14 +120,11 @@ public class WebSocketController {
             .userId(user.getId())
             .nickname(user.getUsername())
             .timestamp(System.currentTimeMillis())
-            .data(Map.of(
-                "user", userSummary(user),
-                "onlineUsers", onlineUsers,
-                "onlineUserSummaries", buildOnlineUserSummaries(onlineUsers)
-            ))
+            // 只广播加入者本人（增量），完整名册经 sendOnlineSnapshot 只发给加入者
+            .data(Map.of("user", presenceService.summary(user)))
             .build();
 
-        messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
+        documentBroadcaster.toDocument(documentId, message);
         sendOnlineSnapshot(documentId, user, onlineUsers);
         log.info("用户 {} 加入文档 {} 协作", user.getUsername(), documentId);
     }
@@ -100,40 +138,11 @@ public class WebSocketController {
                               Principal principal) {
         if (principal == null) return;
         
-        User user = userRepository.findByEmail(principal.getName()).orElse(null);
+        User user = sessionUserCache.resolve(principal);
         if (user == null) return;
         
-        // 注销 session 映射
-        webSocketEventListener.unregisterUserFromDocument(sessionId);
-        
-        // 移除用户
-        collaborationCacheService.removeOnlineUser(documentId, user.getId());
-        
-        // 移除光标
-        Map<Long, CursorPosition> cursors = documentCursors.get(documentId);
-        if (cursors != null) {
-            cursors.remove(user.getId());
-        }
-        
-        WebSocketMessage message = WebSocketMessage.builder()
-                .type("LEAVE")
-                .documentId(documentId)
-                .userId(user.getId())
-                .nickname(user.getUsername())
-                .timestamp(System.currentTimeMillis())
-                .data(Map.of(
-                        "userId", user.getId(),
-                        "onlineUsers", collaborationCacheService.getOnlineUsers(documentId)
-                ))
-                .build();
-
-        messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
-
-        // 所有人离开后清空该文档的协作缓存
-        if (collaborationCacheService.getOnlineUsers(documentId).isEmpty()) {
-            collaborationCacheService.clearDocumentState(documentId);
-        }
-        log.info("用户 {} 离开文档 {} 协作", user.getUsername(), documentId);
+        // 注销会话与文档的关联，移除在线状态并广播 LEAVE（同一会话加入的其他文档不受影响）
+        webSocketEventListener.leaveDocument(sessionId, documentId, user.getId(), user);
     }
     
     /**
@@ -145,10 +154,10 @@ public class WebSocketController {
                            Principal principal) {
         if (principal == null) return;
         
-        User user = userRepository.findByEmail(principal.getName()).orElse(null);
+        User user = sessionUserCache.resolve(principal);
         if (user == null) return;
 
-        handleDraftMessage(documentId, user, operation);
+        enqueue(documentId, user, () -> handleDraftMessage(documentId, user, operation));
     }
 
     /**
@@ -160,14 +169,25 @@ public class WebSocketController {
                                 Principal principal) {
         if (principal == null) return;
 
-        User user = userRepository.findByEmail(principal.getName()).orElse(null);
+        User user = sessionUserCache.resolve(principal);
         if (user == null) return;
 
-        handleDraftMessage(documentId, user, operation);
+        enqueue(documentId, user, () -> handleDraftMessage(documentId, user, operation));
     }
 
     private void handleDraftMessage(Long documentId, User user, DocumentOperation operation) {
-        documentService.getEditableDocument(documentId, user.getId());
+        String collabMode = documentService.checkEditable(documentId, user.getId());
+        if (CrdtCollaborationService.MODE_CRDT.equals(collabMode)) {
+            // CRDT 文档没有草稿层，提示客户端切换到 CRDT 同步
+            sendResync(documentId, user, "文档已切换为 CRDT 协作模式");
+            return;
+        }
+        if (TextOperation.isDelta(operation)) {
+            handleDraftDelta(documentId, user, operation);
+            return;
+        }
+
+        // 旧客户端：全量内容模式
         String content = operation.getContent();
         if (content == null || content.isEmpty()) {
             content = operation.getText();
@@ -176,22 +196,95 @@ public class WebSocketController {
             return;
         }
 
-        collaborationCacheService.saveDraft(documentId, user.getId(), content);
+        String streamId = draftLogService.saveDraft(documentId, user.getId(), content);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("content", content);
+        if (streamId != null) {
+            data.put("streamId", streamId);
+        }
 
         WebSocketMessage message = WebSocketMessage.builder()
                 .type(TYPE_DRAFT_EDIT)
                 .documentId(documentId)
                 .userId(user.getId())
                 .nickname(user.getUsername())
-                .data(Map.of("content", content))
+                .data(data)
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        documentBroadcaster.toDocument(documentId, message);
+    }
+
+    /**
+     * 增量草稿：校验并应用到当前用户草稿，只广播增量
+     */
+    private void handleDraftDelta(Long documentId, User user, DocumentOperation operation) {
+        String base = draftLogService.getDraft(documentId, user.getId());
+        boolean startsDraft = base == null;
+        if (base == null) {
+            base = collaborationCacheService.getConfirmed(documentId);
+        }
+        if (base == null) {
+            base = "";
+        }
+
+        TextOperation textOperation;
+        String draft;
+        try {
+            textOperation = TextOperation.fromDocumentOperation(operation, base.length());
+            draft = textOperation.apply(base);
+        } catch (BusinessException e) {
+            // 基准不一致：要求客户端以服务端草稿重新同步
+            log.debug("草稿增量校验失败 doc:{} user:{} {}", documentId, user.getId(), e.getMessage());
+            WebSocketMessage resync = WebSocketMessage.builder()
+                    .type(TYPE_DRAFT_RESYNC)
+                    .documentId(documentId)
+                    .userId(user.getId())
+                    .nickname(user.getUsername())
+                    .data(Map.of("content", base, "reason", e.getMessage()))
+                    .timestamp(System.currentTimeMillis())
+                    .build();
+            documentBroadcaster.toUser(user.getEmail(), "/queue/notifications", resync);
+            return;
+        }
+        if (textOperation.isNoop()) {
+            return;
+        }
+
+        // 草稿起点以全量内容记录，之后的记录只追加增量，回放时不依赖确认态的变化
+        String streamId = startsDraft
+                ? draftLogService.saveDraft(documentId, user.getId(), draft)
+                : draftLogService.appendDelta(documentId, user.getId(), textOperation);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("ops", textOperation.toWire());
+        if (streamId != null) {
+            data.put("streamId", streamId);
+        }
+        data.put("baseLength", textOperation.getBaseLength());
+        if (operation.getVersion() != null) {
+            data.put("version", operation.getVersion());
+        }
+        if (operation.getClientId() != null) {
+            data.put("clientId", operation.getClientId());
+        }
+
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type(TYPE_DRAFT_DELTA)
+                .documentId(documentId)
+                .userId(user.getId())
+                .nickname(user.getUsername())
+                .data(data)
                 .timestamp(System.currentTimeMillis())
                 .build();
 
-        messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
+        documentBroadcaster.toDocument(documentId, message);
     }
 
     /**
-     * 保存确认态（实字层，写入 Redis confirmed）
+     * 保存确认态（实字层，经 OT 引擎排序后写入 Redis confirmed）
+     * 全量内容携带 version（基准修订号）时与之后的修改三方合并，重叠冲突通过 SAVE_CONFLICT 单独通知保存者
      */
     @MessageMapping("/document/{documentId}/save")
     public void handleSave(@DestinationVariable Long documentId,
@@ -199,53 +292,227 @@ public class WebSocketController {
                            Principal principal) {
         if (principal == null) return;
 
-        User user = userRepository.findByEmail(principal.getName()).orElse(null);
+        User user = sessionUserCache.resolve(principal);
         if (user == null) return;
 
-        documentService.getEditableDocument(documentId, user.getId());
+        enqueue(documentId, user, () -> processSave(documentId, user, operation));
+    }
 
-        String content = operation.getContent();
-        if (content == null || content.isEmpty()) {
-            content = operation.getText();
+    private void processSave(Long documentId, User user, DocumentOperation operation) {
+        String collabMode = documentService.checkEditable(documentId, user.getId());
+        if (CrdtCollaborationService.MODE_CRDT.equals(collabMode)) {
+            sendResync(documentId, user, "文档已切换为 CRDT 协作模式");
+            return;
         }
-        if (content == null) {
+
+        AppliedOperation applied;
+        try {
+            if (TextOperation.isDelta(operation)) {
+                applied = operationTransformService.submit(documentId, user.getId(), operation.getVersion(), operation);
+            } else {
+                String content = operation.getContent();
+                if (content == null || content.isEmpty()) {
+                    content = operation.getText();
+                }
+                if (content == null) {
+                    return;
+                }
+                applied = operationTransformService.submitContent(documentId, user.getId(), operation.getVersion(), content);
+            }
+        } catch (BusinessException e) {
+            // 基准修订号过期或操作非法：下发最新确认态，由客户端重新同步
+            log.debug("保存操作无法应用 doc:{} user:{} {}", documentId, user.getId(), e.getMessage());
+            sendResync(documentId, user, e.getMessage());
             return;
         }
 
-        String lockToken = UUID.randomUUID().toString();
-        boolean locked = collaborationCacheService.acquireSaveLock(documentId, lockToken);
-        if (!locked) {
-            WebSocketMessage rejected = WebSocketMessage.builder()
-                    .type(TYPE_SAVE_REJECTED)
+        boolean conflicted = applied.getConflicts() != null && !applied.getConflicts().isEmpty();
+        // 有冲突时保留草稿：冲突区域以确认态为准，保存者的内容仍在草稿中
+        if (!conflicted) {
+            draftLogService.clearDraft(documentId, user.getId());
+        }
+
+        // 只有旧版全量保存（不带基准修订号）的客户端依赖全文，其余客户端按 ops 应用
+        boolean legacyContent = !TextOperation.isDelta(operation) && operation.getVersion() == null;
+        broadcastApplied(documentId, user, applied, operation.getClientId(), null, legacyContent);
+
+        if (conflicted) {
+            Map<String, Object> conflictData = new HashMap<>();
+            conflictData.put("revision", applied.getRevision());
+            conflictData.put("conflicts", applied.getConflicts());
+            if (operation.getClientId() != null) {
+                conflictData.put("clientId", operation.getClientId());
+            }
+            documentBroadcaster.toUser(user.getEmail(), "/queue/notifications", WebSocketMessage.builder()
+                    .type(TYPE_SAVE_CONFLICT)
                     .documentId(documentId)
                     .userId(user.getId())
                     .nickname(user.getUsername())
-                    .data(Map.of("reason", "保存冲突，请稍后重试"))
+                    .data(conflictData)
                     .timestamp(System.currentTimeMillis())
-                    .build();
-            messagingTemplate.convertAndSendToUser(user.getEmail(), "/queue/notifications", rejected);
+                    .build());
+        }
+    }
+    
+    /**
+     * 服务端撤销：撤销当前用户最近一次操作，逆操作与之后的并发操作变换后按普通保存广播
+     */
+    @MessageMapping("/document/{documentId}/undo")
+    public void handleUndo(@DestinationVariable Long documentId,
+                           @Payload(required = false) DocumentOperation operation,
+                           Principal principal) {
+        handleHistory(documentId, operation, principal, ACTION_UNDO);
+    }
+
+    /**
+     * 服务端重做：重做当前用户最近一次撤销
+     */
+    @MessageMapping("/document/{documentId}/redo")
+    public void handleRedo(@DestinationVariable Long documentId,
+                           @Payload(required = false) DocumentOperation operation,
+                           Principal principal) {
+        handleHistory(documentId, operation, principal, ACTION_REDO);
+    }
+
+    private void handleHistory(Long documentId, DocumentOperation operation, Principal principal, String action) {
+        if (principal == null) return;
+
+        User user = sessionUserCache.resolve(principal);
+        if (user == null) return;
+
+        String clientId = operation == null ? null : operation.getClientId();
+        enqueue(documentId, user, () -> processHistory(documentId, user, clientId, action));
+    }
+
+    private void processHistory(Long documentId, User user, String clientId, String action) {
+        String collabMode = documentService.checkEditable(documentId, user.getId());
+        if (CrdtCollaborationService.MODE_CRDT.equals(collabMode)) {
+            sendResync(documentId, user, "文档已切换为 CRDT 协作模式");
             return;
         }
 
+        AppliedOperation applied;
         try {
-            collaborationCacheService.saveConfirmed(documentId, content);
-            collaborationCacheService.clearDraft(documentId, user.getId());
-
-            WebSocketMessage message = WebSocketMessage.builder()
-                    .type(TYPE_SAVE_CONFIRMED)
+            applied = ACTION_UNDO.equals(action)
+                    ? operationTransformService.undo(documentId, user.getId())
+                    : operationTransformService.redo(documentId, user.getId());
+        } catch (BusinessException e) {
+            // 栈为空或目标操作已滑出日志窗口：只通知本人，文档状态不变
+            Map<String, Object> data = new HashMap<>();
+            data.put("action", action);
+            data.put("reason", e.getMessage());
+            data.put("revision", collaborationCacheService.getRevision(documentId));
+            if (clientId != null) {
+                data.put("clientId", clientId);
+            }
+            documentBroadcaster.toUser(user.getEmail(), "/queue/notifications", WebSocketMessage.builder()
+                    .type(TYPE_HISTORY_UNAVAILABLE)
                     .documentId(documentId)
                     .userId(user.getId())
                     .nickname(user.getUsername())
-                    .data(Map.of("content", content))
+                    .data(data)
                     .timestamp(System.currentTimeMillis())
-                    .build();
+                    .build());
+            return;
+        }
+        broadcastApplied(documentId, user, applied, clientId, action, false);
+    }
+
+    /**
+     * 广播确认：携带 ops 与修订号，全文只在旧版全量保存时附带，避免每次确认都下发整篇文档
+     */
+    private void broadcastApplied(Long documentId, User user, AppliedOperation applied, String clientId, String action,
+                                  boolean includeContent) {
+        Map<String, Object> data = new HashMap<>();
+        if (includeContent) {
+            data.put("content", applied.getContent());
+        }
+        data.put("revision", applied.getRevision());
+        data.put("baseRevision", applied.getBaseRevision());
+        data.put("ops", applied.getOps());
+        if (clientId != null) {
+            data.put("clientId", clientId);
+        }
+        if (action != null) {
+            data.put("action", action);
+        }
+
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type(TYPE_SAVE_CONFIRMED)
+                .documentId(documentId)
+                .userId(user.getId())
+                .nickname(user.getUsername())
+                .data(data)
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        documentBroadcaster.toDocument(documentId, message);
+    }
 
-            messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
-        } finally {
-            collaborationCacheService.releaseSaveLock(documentId, lockToken);
+    /**
+     * CRDT 更新：合并后原样广播，客户端按任意顺序合并均可收敛
+     */
+    @MessageMapping("/document/{documentId}/crdt/update")
+    public void handleCrdtUpdate(@DestinationVariable Long documentId,
+                                 @Payload CrdtMessage update,
+                                 Principal principal) {
+        if (principal == null) return;
+
+        User user = sessionUserCache.resolve(principal);
+        if (user == null) return;
+
+        enqueue(documentId, user, () -> processCrdtUpdate(documentId, user, update));
+    }
+
+    private void processCrdtUpdate(Long documentId, User user, CrdtMessage update) {
+        String collabMode = documentService.checkEditable(documentId, user.getId());
+        if (!CrdtCollaborationService.MODE_CRDT.equals(collabMode)) {
+            sendResync(documentId, user, "文档未启用 CRDT 协作模式");
+            return;
         }
+
+        try {
+            crdtCollaborationService.applyUpdate(documentId, update.getUpdate());
+        } catch (BusinessException e) {
+            log.debug("CRDT 更新无法应用 doc:{} user:{} {}", documentId, user.getId(), e.getMessage());
+            sendCrdtSync(documentId, user, null, null);
+            return;
+        }
+
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type(TYPE_CRDT_UPDATE)
+                .documentId(documentId)
+                .userId(user.getId())
+                .nickname(user.getUsername())
+                .data(CrdtMessage.builder()
+                        .update(update.getUpdate())
+                        .clientId(update.getClientId())
+                        .build())
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        documentBroadcaster.toDocument(documentId, message);
     }
-    
+
+    /**
+     * CRDT 状态向量同步：只下发客户端缺失的更新
+     */
+    @MessageMapping("/document/{documentId}/crdt/sync")
+    public void handleCrdtSync(@DestinationVariable Long documentId,
+                               @Payload(required = false) CrdtMessage request,
+                               Principal principal) {
+        if (principal == null) return;
+
+        User user = sessionUserCache.resolve(principal);
+        if (user == null) return;
+
+        // 加入与更新路径已各自校验权限，单独的同步请求在此校验
+        if (readableCollabMode(documentId, user) == null) return;
+
+        sendCrdtSync(documentId, user, request == null ? null : request.getStateVector(),
+                request == null ? null : request.getEpoch());
+    }
+
     /**
      * 更新光标位置
      */
@@ -255,26 +522,13 @@ public class WebSocketController {
                              Principal principal) {
         if (principal == null) return;
         
-        User user = userRepository.findByEmail(principal.getName()).orElse(null);
+        User user = sessionUserCache.resolve(principal);
         if (user == null) return;
         
-        // 更新光标位置
+        // 只记录最新位置，由聚合器按固定频率合并为 CURSORS 帧广播
         cursorPosition.setUserId(user.getId());
         cursorPosition.setNickname(user.getUsername());
-        documentCursors.computeIfAbsent(documentId, k -> new ConcurrentHashMap<>())
-                .put(user.getId(), cursorPosition);
-        
-        // 广播光标位置
-        WebSocketMessage message = WebSocketMessage.builder()
-                .type("CURSOR")
-                .documentId(documentId)
-                .userId(user.getId())
-                .nickname(user.getUsername())
-                .data(cursorPosition)
-                .timestamp(System.currentTimeMillis())
-                .build();
-        
-        messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
+        cursorAggregator.update(documentId, cursorPosition);
     }
     
     /**
@@ -286,7 +540,7 @@ public class WebSocketController {
                                 Principal principal) {
         if (principal == null) return;
         
-        User user = userRepository.findByEmail(principal.getName()).orElse(null);
+        User user = sessionUserCache.resolve(principal);
         if (user == null) return;
         
         String content = payload.get("content");
@@ -311,7 +565,7 @@ public class WebSocketController {
                 .timestamp(System.currentTimeMillis())
                 .build();
         
-        messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
+        documentBroadcaster.toDocument(documentId, message);
     }
     
     /**
@@ -321,7 +575,7 @@ public class WebSocketController {
     @SendToUser("/queue/online-users")
     public WebSocketMessage getOnlineUsers(@DestinationVariable Long documentId) {
         Set<Long> users = collaborationCacheService.getOnlineUsers(documentId);
-        Map<Long, CursorPosition> cursors = documentCursors.getOrDefault(documentId, Map.of());
+        Map<Long, CursorPosition> cursors = cursorAggregator.getCursors(documentId);
         
         return WebSocketMessage.builder()
                 .type("ONLINE_USERS")
@@ -331,6 +585,101 @@ public class WebSocketController {
                 .build();
     }
 
+    /**
+     * 追赶同步：只下发客户端修订号之后的确认操作，超出保留窗口时下发快照
+     */
+    private void sendCatchUp(Long documentId, User user, Long lastRevision) {
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type(TYPE_CATCH_UP)
+                .documentId(documentId)
+                .userId(user.getId())
+                .nickname(user.getUsername())
+                .data(operationTransformService.catchUp(documentId, lastRevision))
+                .timestamp(System.currentTimeMillis())
+                .build();
+        documentBroadcaster.toUser(user.getEmail(), "/queue/notifications", message);
+    }
+
+    /**
+     * 回放客户端最后看到的草稿流 ID 之后的记录；记录已被压缩或 ID 非法时改发全部草稿快照。
+     * 回放包含所有用户的草稿，调用方需已校验读取权限
+     */
+    private void sendDraftReplay(Long documentId, User user, String fromStreamId) {
+        Map<String, Object> data = new HashMap<>();
+        List<Map<String, Object>> entries = draftLogService.replaySince(documentId, fromStreamId);
+        if (entries != null) {
+            data.put("entries", entries);
+        } else {
+            data.put("drafts", draftLogService.getAllDrafts(documentId));
+        }
+        data.put("streamId", draftLogService.getLastStreamId(documentId));
+
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type(TYPE_DRAFT_REPLAY)
+                .documentId(documentId)
+                .userId(user.getId())
+                .nickname(user.getUsername())
+                .data(data)
+                .timestamp(System.currentTimeMillis())
+                .build();
+        documentBroadcaster.toUser(user.getEmail(), "/queue/notifications", message);
+    }
+
+    /**
+     * 投递到文档邮箱串行执行，邮箱已满时提示客户端重新同步
+     */
+    private void enqueue(Long documentId, User user, Runnable task) {
+        try {
+            documentSequencer.execute(documentId, task);
+        } catch (BusinessException e) {
+            log.debug("文档 {} 邮箱已满，丢弃用户 {} 的变更", documentId, user.getId());
+            sendResync(documentId, user, e.getMessage());
+        }
+    }
+
+    private void sendResync(Long documentId, User user, String reason) {
+        WebSocketMessage resync = WebSocketMessage.builder()
+                .type(TYPE_RESYNC)
+                .documentId(documentId)
+                .userId(user.getId())
+                .nickname(user.getUsername())
+                .data(Map.of(
+                        "content", Objects.requireNonNullElse(collaborationCacheService.getConfirmed(documentId), ""),
+                        "revision", collaborationCacheService.getRevision(documentId),
+                        "reason", reason == null ? "" : reason
+                ))
+                .timestamp(System.currentTimeMillis())
+                .build();
+        documentBroadcaster.toUser(user.getEmail(), "/queue/notifications", resync);
+    }
+
+    /**
+     * 下发 CRDT 状态（完整 RGA 状态或缺失的更新），调用方需已校验读取权限
+     */
+    private void sendCrdtSync(Long documentId, User user, String stateVector, Long epoch) {
+        WebSocketMessage sync = WebSocketMessage.builder()
+                .type(TYPE_CRDT_SYNC)
+                .documentId(documentId)
+                .userId(user.getId())
+                .nickname(user.getUsername())
+                .data(crdtCollaborationService.sync(documentId, stateVector, epoch))
+                .timestamp(System.currentTimeMillis())
+                .build();
+        documentBroadcaster.toUser(user.getEmail(), "/queue/notifications", sync);
+    }
+
+    /**
+     * 校验读取权限并返回协作引擎；无权访问或文档已删除时返回 null
+     */
+    private String readableCollabMode(Long documentId, User user) {
+        try {
+            return documentService.checkReadable(documentId, user.getId());
+        } catch (BusinessException e) {
+            log.debug("拒绝下发文档内容 doc:{} user:{} {}", documentId, user.getId(), e.getMessage());
+            return null;
+        }
+    }
+
     private void initializeConfirmedCache(Long documentId, Long userId) {
         String confirmed = collaborationCacheService.getConfirmed(documentId);
         if (confirmed != null) {
@@ -353,30 +702,13 @@ public class WebSocketController {
                 .nickname(user.getUsername())
             .data(Map.of(
                 "onlineUsers", onlineUsers,
-                "onlineUserSummaries", buildOnlineUserSummaries(onlineUsers)
+                "onlineUserSummaries", presenceService.getRoster(documentId, onlineUsers)
             ))
                 .timestamp(System.currentTimeMillis())
                 .build();
-        messagingTemplate.convertAndSendToUser(user.getEmail(), "/queue/online-users", snapshot);
+        documentBroadcaster.toUser(user.getEmail(), "/queue/online-users", snapshot);
     }
 
-    private Map<String, Object> userSummary(User user) {
-        return Map.of(
-                "id", user.getId(),
-                "username", user.getUsername(),
-                "avatarUrl", user.getAvatarUrl() == null ? "" : user.getAvatarUrl()
-        );
-    }
-
-    private Set<Map<String, Object>> buildOnlineUserSummaries(Set<Long> userIds) {
-        if (userIds == null || userIds.isEmpty()) {
-            return Set.of();
-        }
-        return userRepository.findAllById(userIds).stream()
-                .map(this::userSummary)
-                .collect(Collectors.toSet());
-    }
-    
     /**
      * 发送通知给特定用户
      */
@@ -391,7 +723,7 @@ public class WebSocketController {
                 .timestamp(System.currentTimeMillis())
                 .build();
         
-        messagingTemplate.convertAndSendToUser(
+        documentBroadcaster.toUser(
                 user.getEmail(),
                 "/queue/notifications",
                 message
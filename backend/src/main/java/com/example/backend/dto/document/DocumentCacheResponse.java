@@ -2,6 +2,8 @@ package com.example.backend.dto.document;
 
 import java.util.Set;
 
+import com.example.backend.dto.websocket.CatchUp;
+
 import lombok.Builder;
 import lombok.Data;
 
@@ -16,4 +18,14 @@ public class DocumentCacheResponse {
     private String userDraftContent;
     private Set<Long> onlineUsers;
     private Long draftTtlSeconds;
+    /**
+     * 草稿操作流的最新 ID，重连时携带以只回放之后的草稿记录
+     */
+    private String draftStreamId;
+    private Long revision;
+    private String collabMode;
+    /**
+     * 携带 sinceRevision 请求时的追赶结果；mode=ops 时 confirmedContent 为空
+     */
+    private CatchUp catchUp;
 }
@@ -25,6 +25,7 @@ public class DocumentDTO {
     private String ownerAvatarUrl;
     private String visibility;
     private String docType;
+    private String collabMode;
     private Long forkedFromId;
     private String content;
     private String tags;
@@ -45,6 +46,7 @@ public class DocumentDTO {
                 .ownerAvatarUrl(document.getOwner().getAvatarUrl())
                 .visibility(document.getVisibility())
                 .docType(document.getDocType())
+                .collabMode(document.getCollabMode())
                 .forkedFromId(document.getForkedFrom() != null ? document.getForkedFrom().getId() : null)
                 .content(document.getContent())
                 .tags(document.getTags())
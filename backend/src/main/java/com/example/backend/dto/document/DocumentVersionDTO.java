@@ -26,12 +26,15 @@ public class DocumentVersionDTO {
     private String createdByName;
     private LocalDateTime createdAt;
     
-    public static DocumentVersionDTO fromEntity(DocumentVersion version) {
+    /**
+     * @param content 还原后的版本内容（实体中可能只存增量），列表场景传 null
+     */
+    public static DocumentVersionDTO fromEntity(DocumentVersion version, String content) {
         return DocumentVersionDTO.builder()
                 .id(version.getId())
                 .documentId(version.getDocument().getId())
                 .versionNo(version.getVersionNo())
-                .content(version.getContent())
+                .content(content)
                 .commitMessage(version.getCommitMessage())
                 .createdById(version.getCreatedBy() != null ? version.getCreatedBy().getId() : null)
                 .createdByName(version.getCreatedBy() != null ? version.getCreatedBy().getUsername() : null)
@@ -9,4 +9,9 @@ import lombok.Data;
 public class SaveDocumentRequest {
 
     private String content;
+
+    /**
+     * 内容所基于的修订号；落后于服务端时与之后的修改三方合并，为空时直接覆盖
+     */
+    private Long baseRevision;
 }
@@ -11,4 +11,5 @@ public class UpdateDocumentRequest {
     private String title;
     private String visibility;
     private String tags;
+    private String collabMode;
 }
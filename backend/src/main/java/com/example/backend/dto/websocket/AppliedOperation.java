@@ -0,0 +1,45 @@
+package com.example.backend.dto.websocket;
+
+import java.util.List;
+
+import com.example.backend.util.ThreeWayMerge;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 已被服务端排序并应用到确认态的操作
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppliedOperation {
+
+    /**
+     * 应用后的文档修订号
+     */
+    private Long revision;
+
+    /**
+     * 客户端声明的基准修订号
+     */
+    private Long baseRevision;
+
+    /**
+     * 变换后实际应用的操作（ot.js 格式）
+     */
+    private List<Object> ops;
+
+    /**
+     * 应用后的确认态全文
+     */
+    private String content;
+
+    /**
+     * 三方合并后仍重叠的冲突（冲突区域已保留确认态内容），无冲突时为空
+     */
+    private List<ThreeWayMerge.Conflict> conflicts;
+}
@@ -0,0 +1,46 @@
+package com.example.backend.dto.websocket;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 加入/重连时的追赶同步结果：操作窗口内只返回缺失的操作，否则返回确认态快照
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatchUp {
+
+    public static final String MODE_OPS = "ops";
+    public static final String MODE_SNAPSHOT = "snapshot";
+
+    /**
+     * ops 或 snapshot
+     */
+    private String mode;
+
+    /**
+     * 客户端已有的修订号
+     */
+    private Long fromRevision;
+
+    /**
+     * 服务端当前修订号
+     */
+    private Long revision;
+
+    /**
+     * mode=ops 时按修订号顺序排列的缺失操作
+     */
+    private List<AppliedOperation> operations;
+
+    /**
+     * mode=snapshot 时的确认态全文
+     */
+    private String content;
+}
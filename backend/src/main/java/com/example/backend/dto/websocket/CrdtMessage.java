@@ -0,0 +1,36 @@
+package com.example.backend.dto.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * CRDT 同步消息DTO（二进制字段均为 Base64）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CrdtMessage {
+
+    /**
+     * 二进制更新
+     */
+    private String update;
+
+    /**
+     * 状态向量
+     */
+    private String stateVector;
+
+    /**
+     * 服务端状态代数，变化时客户端需丢弃本地副本重新同步
+     */
+    private Long epoch;
+
+    /**
+     * 客户端ID
+     */
+    private String clientId;
+}
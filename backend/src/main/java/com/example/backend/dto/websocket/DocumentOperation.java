@@ -1,5 +1,7 @@
 package com.example.backend.dto.websocket;
 
+import java.util.List;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -39,6 +41,11 @@ public class DocumentOperation {
      */
     private Integer length;
     
+    /**
+     * 复合增量操作（ot.js 格式：正数保留、负数删除、字符串插入），优先于单步字段
+     */
+    private List<Object> ops;
+    
     /**
      * 操作的版本号
      */
@@ -0,0 +1,36 @@
+package com.example.backend.dto.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 加入文档协作请求DTO（可选，旧客户端不携带消息体）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JoinRequest {
+
+    /**
+     * CRDT 模式下客户端本地副本的状态向量（Base64）
+     */
+    private String stateVector;
+
+    /**
+     * CRDT 模式下客户端本地副本的状态代数
+     */
+    private Long epoch;
+
+    /**
+     * 客户端最后看到的草稿流 ID，携带时回放之后的草稿记录
+     */
+    private String draftStreamId;
+
+    /**
+     * OT 模式下客户端已有的确认态修订号，携带时只下发之后的操作
+     */
+    private Long lastRevision;
+}
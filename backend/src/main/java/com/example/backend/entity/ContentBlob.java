@@ -0,0 +1,45 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * 内容块实体类（按 SHA-256 寻址，内容相同的文档与版本共用一行）
+ * 对应数据库表 content_blobs；引用计数由数据库触发器维护，应用只通过 ContentBlobService 写入
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Immutable
+@BatchSize(size = 50)
+@Table(name = "content_blobs")
+public class ContentBlob {
+    
+    /**
+     * 内容 UTF-8 字节的 SHA-256，小写十六进制
+     */
+    @Id
+    @Column(length = 64)
+    private String hash;
+    
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String content;
+    
+    /**
+     * 引用该内容的文档与版本行数
+     */
+    @Column(name = "ref_count", insertable = false, updatable = false)
+    private Long refCount;
+    
+    @Column(name = "touched_at", insertable = false, updatable = false)
+    private LocalDateTime touchedAt;
+}
@@ -39,10 +39,12 @@ public class Document {
     private User owner;
     
     /**
-     * 当前最新「已提交」内容
+     * 当前最新内容（显式提交或协作自动保存写入；版本历史只来自提交），按内容哈希引用 content_blobs，
+     * 空内容时为 null。写入须经 ContentBlobService
      */
-    @Column(columnDefinition = "TEXT")
-    private String content;
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name = "content_hash")
+    private ContentBlob contentBlob;
     
     /**
      * 文档类型: markdown / txt
@@ -78,6 +80,13 @@ public class Document {
     @Builder.Default
     private String status = "ACTIVE";
     
+    /**
+     * 协作引擎: OT-修订号排序的操作变换, CRDT-序列 CRDT
+     */
+    @Column(name = "collab_mode", length = 20)
+    @Builder.Default
+    private String collabMode = "OT";
+    
     /**
      * 物理文件存储相对路径，格式: {ownerId}/{folderId}/
      */
@@ -98,4 +107,11 @@ public class Document {
     @UpdateTimestamp
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
+    
+    /**
+     * 当前最新内容，无内容块时为空串
+     */
+    public String getContent() {
+        return contentBlob == null ? "" : contentBlob.getContent();
+    }
 }
@@ -40,10 +40,18 @@ public class DocumentVersion {
     private Integer versionNo;
     
     /**
-     * 本次提交的完整内容快照
+     * 存储内容的哈希（content_blobs）：FULL 时为完整快照，DELTA 时为相对上一版本的增量（TextOperation 线上格式的 JSON），
+     * 空快照为 null。读取内容须经 DocumentVersionStore 还原
      */
-    @Column(columnDefinition = "TEXT", nullable = false)
-    private String content;
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    
+    /**
+     * 存储方式：FULL-完整快照（关键帧）, DELTA-相对上一版本的增量
+     */
+    @Column(name = "storage_kind", length = 10, nullable = false)
+    @Builder.Default
+    private String storageKind = "FULL";
     
     /**
      * 提交说明，类似Git commit message
@@ -0,0 +1,40 @@
+package com.example.backend.repository;
+
+import com.example.backend.entity.ContentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+    
+    @Query("SELECT b.content FROM ContentBlob b WHERE b.hash = :hash")
+    Optional<String> findContentByHash(@Param("hash") String hash);
+    
+    /**
+     * 刷新已有内容块的使用时间并锁定该行，防止在本事务引用它之前被清理；返回 0 表示不存在
+     */
+    @Modifying
+    @Query(value = "UPDATE content_blobs SET touched_at = NOW() WHERE hash = :hash", nativeQuery = true)
+    int touch(@Param("hash") String hash);
+    
+    /**
+     * 写入内容块，已存在（并发写入相同内容）时只刷新使用时间
+     */
+    @Modifying
+    @Query(value = "INSERT INTO content_blobs (hash, content) VALUES (:hash, :content) " +
+                   "ON CONFLICT (hash) DO UPDATE SET touched_at = NOW()", nativeQuery = true)
+    int insert(@Param("hash") String hash, @Param("content") String content);
+    
+    /**
+     * 清理无引用且超过宽限期未被使用的内容块
+     */
+    @Modifying
+    @Query(value = "DELETE FROM content_blobs WHERE ref_count <= 0 " +
+                   "AND touched_at < NOW() - :graceMinutes * INTERVAL '1 minute'", nativeQuery = true)
+    int deleteUnreferenced(@Param("graceMinutes") long graceMinutes);
+}
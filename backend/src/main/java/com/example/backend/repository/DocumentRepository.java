@@ -5,6 +5,7 @@ import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -111,4 +112,21 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
                                                @Param("folderId") Long folderId, 
                                                @Param("title") String title, 
                                                @Param("excludeId") Long excludeId);
+
+    /**
+     * 查询文档的协作模式（id, collabMode），排除已删除文档
+     */
+    @Query("SELECT d.id, d.collabMode FROM Document d WHERE d.id IN :ids AND d.status <> 'DELETED'")
+    List<Object[]> findCollabModes(@Param("ids") java.util.Collection<Long> ids);
+
+    /**
+     * 自动保存写回内容（内容块已由 ContentBlobService 写入）；读取内容之后文档又被提交或修改过（updated_at 更新）时不覆盖
+     */
+    @Modifying
+    @Query("UPDATE Document d SET d.contentBlob = :blob, d.updatedAt = :now WHERE d.id = :id " +
+           "AND d.status <> 'DELETED' AND (d.updatedAt IS NULL OR d.updatedAt <= :readAt)")
+    int autosaveContent(@Param("id") Long id,
+                        @Param("blob") com.example.backend.entity.ContentBlob blob,
+                        @Param("readAt") java.time.LocalDateTime readAt,
+                        @Param("now") java.time.LocalDateTime now);
 }
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -20,6 +21,20 @@ public interface DocumentVersionRepository extends JpaRepository<DocumentVersion
     @Query("SELECT MAX(dv.versionNo) FROM DocumentVersion dv WHERE dv.document.id = :documentId")
     Integer findMaxVersionNoByDocumentId(@Param("documentId") Long documentId);
     
+    /**
+     * 不晚于指定版本的最近一个完整快照（关键帧）版本号
+     */
+    @Query("SELECT MAX(dv.versionNo) FROM DocumentVersion dv WHERE dv.document.id = :documentId "
+            + "AND dv.versionNo <= :versionNo AND dv.storageKind = 'FULL'")
+    Integer findKeyframeVersionNo(@Param("documentId") Long documentId, @Param("versionNo") Integer versionNo);
+    
+    /**
+     * 文档是否已有内容哈希相同的完整快照版本
+     */
+    boolean existsByDocumentIdAndContentHashAndStorageKind(Long documentId, String contentHash, String storageKind);
+    
+    List<DocumentVersion> findByDocumentIdAndVersionNoBetweenOrderByVersionNoAsc(Long documentId, Integer from, Integer to);
+    
     @Query("SELECT dv FROM DocumentVersion dv WHERE dv.document.id = :documentId ORDER BY dv.versionNo DESC LIMIT 1")
     Optional<DocumentVersion> findLatestVersionByDocumentId(@Param("documentId") Long documentId);
 }
@@ -38,6 +38,8 @@ public class AdminService {
     private final DocumentRepository documentRepository;
     private final OperationLogRepository operationLogRepository;
     private final DocumentService documentService;
+    private final SessionUserCache sessionUserCache;
+    private final DocumentAclCache documentAclCache;
     
     /**
      * 获取系统统计数据
@@ -97,7 +99,7 @@ public class AdminService {
         }
         
         user.setStatus("BANNED");
-        userRepository.save(user);
+        sessionUserCache.refresh(userRepository.save(user));
         
         // 记录操作日志
         logOperation(userId, "BAN_USER", "USER", "禁用用户: " + user.getUsername());
@@ -112,7 +114,7 @@ public class AdminService {
                 .orElseThrow(() -> new BusinessException(ErrorCode.USER_NOT_FOUND, "用户不存在"));
         
         user.setStatus("ACTIVE");
-        userRepository.save(user);
+        sessionUserCache.refresh(userRepository.save(user));
         
         // 记录操作日志
         logOperation(userId, "UNBAN_USER", "USER", "解禁用户: " + user.getUsername());
@@ -134,6 +136,7 @@ public class AdminService {
         logOperation(userId, "DELETE_USER", "USER", "删除用户: " + user.getUsername());
         
         userRepository.delete(user);
+        sessionUserCache.evict(user.getEmail());
     }
     
     /**
@@ -190,6 +193,7 @@ public class AdminService {
         
         document.setStatus("ACTIVE");
         documentRepository.save(document);
+        documentAclCache.invalidateDocument(documentId);
         
         // 记录操作日志
         logOperation(documentId, "RESTORE_DOCUMENT", "DOC", "恢复文档: " + document.getTitle());
@@ -223,6 +227,7 @@ public class AdminService {
         // 逻辑删除
         document.setStatus("DELETED");
         documentRepository.save(document);
+        documentAclCache.invalidateDocument(documentId);
     }
     
     /**
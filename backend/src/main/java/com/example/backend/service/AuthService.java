@@ -50,6 +50,7 @@ public class AuthService {
     private final StringRedisTemplate stringRedisTemplate;
     private final RateLimiter rateLimiter;
     private final JavaMailSender mailSender;
+    private final SessionUserCache sessionUserCache;
     
     private static final String VERIFICATION_CODE_PREFIX = "reg_code:";
     private static final String PASSWORD_RESET_PREFIX = "pwd_reset:";
@@ -201,6 +202,7 @@ public class AuthService {
         }
         
         user = userRepository.save(user);
+        sessionUserCache.refresh(user);
         return UserDTO.fromEntity(user);
     }
     
@@ -267,7 +269,7 @@ public class AuthService {
                 .orElseThrow(() -> new BusinessException(ErrorCode.USER_NOT_FOUND, "用户不存在"));
         
         user.setAvatarUrl(avatarUrl);
-        userRepository.save(user);
+        sessionUserCache.refresh(userRepository.save(user));
         return avatarUrl;
     }
     
@@ -0,0 +1,99 @@
+package com.example.backend.service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 集群消息总线
+ * 开启集群模式（app.websocket.cluster.enabled=true）时，事件经 Redis pub/sub 发布到所有节点，
+ * 各节点按事件类型交给本地处理器；未开启时直接在本节点同步处理。
+ * 消息格式: {kind}|{nodeId}|{body}
+ */
+@Slf4j
+@Service
+public class ClusterMessageBus {
+
+    public static final String CHANNEL = "collab:cluster";
+    private static final char SEPARATOR = '|';
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Consumer<String>> handlers = new ConcurrentHashMap<>();
+
+    public ClusterMessageBus(StringRedisTemplate stringRedisTemplate,
+                             @Value("${app.websocket.cluster.enabled:false}") boolean enabled) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 注册事件处理器（每种事件一个）
+     */
+    public void register(String kind, Consumer<String> handler) {
+        handlers.put(kind, handler);
+    }
+
+    /**
+     * 发布事件到所有节点（含本节点）
+     */
+    public void publish(String kind, String body) {
+        if (!enabled) {
+            dispatch(kind, body);
+            return;
+        }
+        stringRedisTemplate.convertAndSend(CHANNEL, kind + SEPARATOR + nodeId + SEPARATOR + body);
+    }
+
+    /**
+     * 只通知其他节点（本节点已自行处理）
+     */
+    public void publishToOthers(String kind, String body) {
+        if (!enabled) {
+            return;
+        }
+        stringRedisTemplate.convertAndSend(CHANNEL, kind + SEPARATOR + "!" + nodeId + SEPARATOR + body);
+    }
+
+    /**
+     * 处理从 Redis 频道收到的原始消息
+     */
+    public void onMessage(String raw) {
+        int first = raw.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : raw.indexOf(SEPARATOR, first + 1);
+        if (second < 0) {
+            log.warn("无法解析集群消息: {}", raw.length() > 64 ? raw.substring(0, 64) : raw);
+            return;
+        }
+        String origin = raw.substring(first + 1, second);
+        if (origin.equals("!" + nodeId)) {
+            return;
+        }
+        dispatch(raw.substring(0, first), raw.substring(second + 1));
+    }
+
+    private void dispatch(String kind, String body) {
+        Consumer<String> handler = handlers.get(kind);
+        if (handler == null) {
+            log.debug("未注册的集群事件类型: {}", kind);
+            return;
+        }
+        try {
+            handler.accept(body);
+        } catch (RuntimeException e) {
+            log.warn("集群事件 {} 处理失败: {}", kind, e.getMessage(), e);
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package com.example.backend.service;
 
-import java.util.HashSet;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import org.springframework.data.redis.core.Cursor;
-import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisZSetCommands.ZAddArgs;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import lombok.RequiredArgsConstructor;
@@ -20,147 +29,639 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class CollaborationCacheService {
 
-    private static final int DEFAULT_DRAFT_TTL_HOURS = 1;
     private static final int DEFAULT_CONFIRMED_TTL_HOURS = 1;
     private static final int DEFAULT_SAVE_LOCK_TTL_SECONDS = 5;
+    private static final int DEFAULT_OPERATION_LOG_SIZE = 500;
+
+    /**
+     * 仅当锁仍由 token 持有时删除（比较并删除）
+     */
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0",
+            Long.class);
+
+    /**
+     * 会话离开：先移除会话成员记录，用户在任一节点仍有其他会话加入时返回 {-1} 并保留在线状态；
+     * 否则移除在线用户及其名册条目，若已无存活成员则一并删除文档的全部协作状态并移出索引
+     * （尚未自动保存的文档保留内容状态，等待写回后按 TTL 过期）。返回剩余存活用户
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LEAVE_SCRIPT = new DefaultRedisScript<>(
+            "if ARGV[4] ~= '' then redis.call('hdel', KEYS[5], ARGV[4]) "
+                    + "for _, owner in ipairs(redis.call('hvals', KEYS[5])) do "
+                    + "if owner == ARGV[1] then return {'-1'} end end end "
+                    + "redis.call('zrem', KEYS[1], ARGV[1]) redis.call('hdel', KEYS[4], ARGV[1]) "
+                    + "if redis.call('zcount', KEYS[1], ARGV[2], '+inf') == 0 then "
+                    + "redis.call('srem', KEYS[2], ARGV[3]) "
+                    + "if redis.call('zscore', KEYS[3], ARGV[3]) then redis.call('del', KEYS[1], KEYS[4], KEYS[5]) "
+                    + "else redis.call('del', KEYS[1], unpack(KEYS, 4)) end return {} end "
+                    + "return redis.call('zrangebyscore', KEYS[1], ARGV[2], '+inf')",
+            List.class);
+
+    /**
+     * 离开脚本的返回标记：用户仍有其他会话加入（用户 ID 均为正数，不会与之冲突）
+     */
+    private static final String STILL_JOINED = "-1";
+
+    /**
+     * 移除心跳早于截止时间的成员（含名册条目与会话成员记录）并返回；成员全部过期时同样清空文档协作状态
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SWEEP_SCRIPT = new DefaultRedisScript<>(
+            "local stale = redis.call('zrangebyscore', KEYS[1], '-inf', '(' .. ARGV[1]) "
+                    + "if #stale > 0 then redis.call('zremrangebyscore', KEYS[1], '-inf', '(' .. ARGV[1]) "
+                    + "redis.call('hdel', KEYS[4], unpack(stale)) "
+                    + "local gone = {} for _, id in ipairs(stale) do gone[id] = true end "
+                    + "local members = redis.call('hgetall', KEYS[5]) "
+                    + "for i = 1, #members, 2 do if gone[members[i + 1]] then redis.call('hdel', KEYS[5], members[i]) end end end "
+                    + "if redis.call('zcard', KEYS[1]) == 0 then redis.call('srem', KEYS[2], ARGV[2]) "
+                    + "if redis.call('zscore', KEYS[3], ARGV[2]) then redis.call('del', KEYS[1], KEYS[4], KEYS[5]) "
+                    + "else redis.call('del', KEYS[1], unpack(KEYS, 4)) end end "
+                    + "return stale",
+            List.class);
+
+    /**
+     * 加入文档：写入心跳、文档索引、名册条目与会话成员记录
+     */
+    private static final RedisScript<Long> JOIN_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('zadd', KEYS[1], ARGV[2], ARGV[1]) redis.call('sadd', KEYS[2], ARGV[3]) "
+                    + "if ARGV[4] ~= '' then redis.call('hset', KEYS[3], ARGV[1], ARGV[4]) end "
+                    + "if ARGV[5] ~= '' then redis.call('hset', KEYS[4], ARGV[5], ARGV[1]) end return 1",
+            Long.class);
+
+    /**
+     * 仅当用户仍在名册中时改写其条目，避免给已离开的用户写回残留条目
+     */
+    private static final RedisScript<Long> UPDATE_ROSTER_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return 0 end "
+                    + "redis.call('hset', KEYS[1], ARGV[1], ARGV[2]) return 1",
+            Long.class);
+
+    /**
+     * 压入撤销/重做栈：丢弃已滑出操作日志窗口的修订号，只保留最近 maxDepth 个；可同时清空另一个栈
+     */
+    private static final RedisScript<Long> PUSH_HISTORY_SCRIPT = new DefaultRedisScript<>(
+            "local list = {} local value = redis.call('hget', KEYS[1], ARGV[1]) "
+                    + "if value then for r in string.gmatch(value, '[^,]+') do "
+                    + "if tonumber(r) > tonumber(ARGV[5]) then list[#list + 1] = r end end end "
+                    + "list[#list + 1] = ARGV[2] "
+                    + "local first = math.max(1, #list - tonumber(ARGV[4]) + 1) "
+                    + "redis.call('hset', KEYS[1], ARGV[1], table.concat(list, ',', first)) "
+                    + "if ARGV[3] ~= '' then redis.call('hdel', KEYS[1], ARGV[3]) end "
+                    + "redis.call('expire', KEYS[1], ARGV[6]) return #list - first + 1",
+            Long.class);
+
+    /**
+     * 仅当 CRDT 状态代数未变化时追加更新并续期，返回列表长度；代数已变化（状态被重置）时返回 -1
+     */
+    private static final RedisScript<Long> APPEND_CRDT_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[3]) or '0') ~= ARGV[2] then return -1 end "
+                    + "local size = redis.call('rpush', KEYS[1], ARGV[1]) "
+                    + "redis.call('expire', KEYS[1], ARGV[3]) redis.call('expire', KEYS[2], ARGV[3]) return size",
+            Long.class);
+
+    /**
+     * 仅当代数未变化时以压缩后的状态替换，并裁掉已折叠进状态的前 ARGV[3] 条更新
+     */
+    private static final RedisScript<Long> COMPACT_CRDT_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[3]) or '0') ~= ARGV[2] then return 0 end "
+                    + "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[4]) redis.call('ltrim', KEYS[2], ARGV[3], -1) return 1",
+            Long.class);
+
+    /**
+     * 尚无状态时写入初始状态并推进代数，返回新代数；已有状态时返回 0
+     */
+    private static final RedisScript<Long> INIT_CRDT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end "
+                    + "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2]) return redis.call('incr', KEYS[2])",
+            Long.class);
+
+    /**
+     * 清空状态与更新列表并推进代数，使旧代数的追加与压缩全部失效
+     */
+    private static final RedisScript<Long> RESET_CRDT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1], KEYS[2]) return redis.call('incr', KEYS[3])",
+            Long.class);
+
+    /**
+     * 有在线成员的文档索引，供清扫任务遍历（节点宕机后仍能找到需要清理的文档）
+     */
+    private static final String PRESENCE_INDEX_KEY = "collab:presence:docs";
+
+    /**
+     * 认领到期的待写回文档：把分数推到租约截止时间，返回文档 ID。
+     * 认领者宕机时租约到期后会被再次认领
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_DIRTY_SCRIPT = new DefaultRedisScript<>(
+            "local due = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[3])) "
+                    + "for _, id in ipairs(due) do redis.call('zadd', KEYS[1], 'XX', ARGV[2], id) end "
+                    + "return due",
+            List.class);
+
+    /**
+     * 写回完成：分数仍是租约时间（期间没有新的修改）才移出待写回集合
+     */
+    private static final RedisScript<Long> COMPLETE_DIRTY_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('zscore', KEYS[1], ARGV[1]) == ARGV[2] then return redis.call('zrem', KEYS[1], ARGV[1]) end "
+                    + "return 0",
+            Long.class);
+
+    /**
+     * 待写回数据库的文档，分数为最早一次未保存修改的时间（毫秒）
+     */
+    private static final String AUTOSAVE_DIRTY_KEY = "collab:autosave:dirty";
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    public void saveDraft(Long documentId, Long userId, String content) {
-        if (documentId == null || userId == null || content == null) {
+    @Value("${app.collab.presence.ttl-seconds:30}")
+    private long presenceTtlSeconds = 30;
+
+    public void saveConfirmed(Long documentId, String content) {
+        if (documentId == null || content == null) {
             return;
         }
-        String key = draftKey(documentId, userId);
-        stringRedisTemplate.opsForValue().set(key, content, DEFAULT_DRAFT_TTL_HOURS, TimeUnit.HOURS);
+        stringRedisTemplate.opsForValue().set(confirmedKey(documentId), content, DEFAULT_CONFIRMED_TTL_HOURS, TimeUnit.HOURS);
     }
 
-    public Long getDraftTtlSeconds(Long documentId, Long userId) {
-        if (documentId == null || userId == null) {
+    public String getConfirmed(Long documentId) {
+        if (documentId == null) {
             return null;
         }
-        Long ttl = stringRedisTemplate.getExpire(draftKey(documentId, userId), TimeUnit.SECONDS);
-        return ttl != null && ttl >= 0 ? ttl : null;
+        return stringRedisTemplate.opsForValue().get(confirmedKey(documentId));
     }
 
-    public String getDraft(Long documentId, Long userId) {
-        if (documentId == null || userId == null) {
-            return null;
+    public boolean acquireSaveLock(Long documentId, String token) {
+        if (documentId == null || token == null) {
+            return false;
         }
-        return stringRedisTemplate.opsForValue().get(draftKey(documentId, userId));
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(saveLockKey(documentId), token, DEFAULT_SAVE_LOCK_TTL_SECONDS, TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(locked);
     }
 
-    public void clearDraft(Long documentId, Long userId) {
-        if (documentId == null || userId == null) {
+    public void releaseSaveLock(Long documentId, String token) {
+        if (documentId == null || token == null) {
             return;
         }
-        stringRedisTemplate.delete(draftKey(documentId, userId));
+        stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(saveLockKey(documentId)), token);
     }
 
-    public void saveConfirmed(Long documentId, String content) {
-        if (documentId == null || content == null) {
+    /**
+     * 获取文档当前修订号（无记录时为 0）
+     */
+    public long getRevision(Long documentId) {
+        if (documentId == null) {
+            return 0L;
+        }
+        String value = stringRedisTemplate.opsForValue().get(revisionKey(documentId));
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    /**
+     * 追加一条已确认的操作并推进修订号，仅保留最近的操作窗口。
+     * 调用方需持有保存锁。
+     */
+    public void appendOperation(Long documentId, long revision, String encodedOperation) {
+        if (documentId == null || encodedOperation == null) {
             return;
         }
-        stringRedisTemplate.opsForValue().set(confirmedKey(documentId), content, DEFAULT_CONFIRMED_TTL_HOURS, TimeUnit.HOURS);
+        String key = operationLogKey(documentId);
+        stringRedisTemplate.opsForList().rightPush(key, revision + ":" + encodedOperation);
+        stringRedisTemplate.opsForList().trim(key, -DEFAULT_OPERATION_LOG_SIZE, -1);
+        stringRedisTemplate.expire(key, DEFAULT_CONFIRMED_TTL_HOURS, TimeUnit.HOURS);
+        stringRedisTemplate.opsForValue().set(revisionKey(documentId), String.valueOf(revision));
+        markDirty(documentId);
     }
 
-    public String getConfirmed(Long documentId) {
+    /**
+     * 标记文档内容有未写回数据库的修改。
+     * 使用 LT：保留最早的修改时间；已被认领（分数为租约时间）时拉回当前时间，写回完成后不会被误删
+     */
+    public void markDirty(Long documentId) {
+        if (documentId == null) {
+            return;
+        }
+        byte[] key = AUTOSAVE_DIRTY_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] member = documentId.toString().getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.zSetCommands()
+                .zAdd(key, System.currentTimeMillis(), member, ZAddArgs.empty().lt()));
+    }
+
+    /**
+     * 认领最早修改时间不晚于 cutoffMillis 的文档（最多 limit 个），租约到 leaseUntilMillis
+     */
+    public List<Long> claimDirtyDocuments(long cutoffMillis, long leaseUntilMillis, int limit) {
+        List<?> claimed = stringRedisTemplate.execute(CLAIM_DIRTY_SCRIPT, List.of(AUTOSAVE_DIRTY_KEY),
+                String.valueOf(cutoffMillis), String.valueOf(leaseUntilMillis), String.valueOf(limit));
+        if (claimed == null) {
+            return List.of();
+        }
+        return claimed.stream().map(Object::toString).map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 写回成功后释放认领；认领之后又有新修改的文档保持待写回
+     */
+    public void completeDirty(Long documentId, long leaseUntilMillis) {
+        if (documentId == null) {
+            return;
+        }
+        stringRedisTemplate.execute(COMPLETE_DIRTY_SCRIPT, List.of(AUTOSAVE_DIRTY_KEY),
+                documentId.toString(), String.valueOf(leaseUntilMillis));
+    }
+
+    /**
+     * 待写回的文档数
+     */
+    public long countDirtyDocuments() {
+        Long size = stringRedisTemplate.opsForZSet().zCard(AUTOSAVE_DIRTY_KEY);
+        return size == null ? 0L : size;
+    }
+
+    /**
+     * 读取用户的撤销/重做栈（栈底在前，元素为操作日志中的修订号）
+     */
+    public List<Long> getHistory(Long documentId, String stack) {
+        if (documentId == null || stack == null) {
+            return new ArrayList<>();
+        }
+        Object value = stringRedisTemplate.opsForHash().get(historyKey(documentId), stack);
+        List<Long> revisions = new ArrayList<>();
+        if (value != null && !value.toString().isEmpty()) {
+            for (String revision : value.toString().split(",")) {
+                revisions.add(Long.valueOf(revision));
+            }
+        }
+        return revisions;
+    }
+
+    /**
+     * 把修订号压入栈（clearStack 非空时同时清空该栈），修订号不大于 minRevision 的旧条目被丢弃
+     */
+    public void pushHistory(Long documentId, String stack, long revision, String clearStack, int maxDepth, long minRevision) {
+        if (documentId == null || stack == null) {
+            return;
+        }
+        stringRedisTemplate.execute(PUSH_HISTORY_SCRIPT, List.of(historyKey(documentId)), stack, String.valueOf(revision),
+                clearStack == null ? "" : clearStack, String.valueOf(maxDepth), String.valueOf(minRevision),
+                String.valueOf(TimeUnit.HOURS.toSeconds(DEFAULT_CONFIRMED_TTL_HOURS)));
+    }
+
+    /**
+     * 写回用户的撤销/重做栈（为空时删除）。调用方需在文档邮箱内执行
+     */
+    public void putHistory(Long documentId, String stack, List<Long> revisions) {
+        if (documentId == null || stack == null) {
+            return;
+        }
+        String key = historyKey(documentId);
+        if (revisions == null || revisions.isEmpty()) {
+            stringRedisTemplate.opsForHash().delete(key, stack);
+            return;
+        }
+        String value = revisions.stream().map(String::valueOf).collect(Collectors.joining(","));
+        stringRedisTemplate.opsForHash().put(key, stack, value);
+        stringRedisTemplate.expire(key, DEFAULT_CONFIRMED_TTL_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * 操作日志保留的条数，超出窗口的操作无法再撤销
+     */
+    public int getOperationLogSize() {
+        return DEFAULT_OPERATION_LOG_SIZE;
+    }
+
+    /**
+     * 按修订号顺序返回 fromRevision 之后的操作（修订号 -> 编码后的操作）。
+     * 若窗口内已缺失所需的最早操作则返回 null，调用方需要全量重同步。
+     */
+    public Map<Long, String> getOperationsSince(Long documentId, long fromRevision) {
         if (documentId == null) {
             return null;
         }
-        return stringRedisTemplate.opsForValue().get(confirmedKey(documentId));
+        long current = getRevision(documentId);
+        Map<Long, String> result = new LinkedHashMap<>();
+        if (fromRevision >= current) {
+            return result;
+        }
+        long needed = current - fromRevision;
+        if (needed > DEFAULT_OPERATION_LOG_SIZE) {
+            return null;
+        }
+        // 日志按修订号顺序追加在尾部，只取最后 needed 条
+        List<String> entries = stringRedisTemplate.opsForList().range(operationLogKey(documentId), -needed, -1);
+        if (entries != null) {
+            for (String entry : entries) {
+                int separator = entry.indexOf(':');
+                long revision = Long.parseLong(entry.substring(0, separator));
+                if (revision > fromRevision && revision <= current) {
+                    result.put(revision, entry.substring(separator + 1));
+                }
+            }
+        }
+        if (result.size() != needed) {
+            return null;
+        }
+        return result;
     }
 
-    public boolean acquireSaveLock(Long documentId, String token) {
-        if (documentId == null || token == null) {
+    /**
+     * 在代数 epoch 下追加一条 CRDT 二进制更新，返回当前待压缩的更新条数；
+     * 状态已被重置（代数变化）时不追加并返回 -1
+     */
+    public long appendCrdtUpdate(Long documentId, byte[] update, long epoch) {
+        if (documentId == null || update == null) {
+            return 0L;
+        }
+        Long size = stringRedisTemplate.execute(APPEND_CRDT_SCRIPT,
+                List.of(crdtUpdatesKey(documentId), crdtStateKey(documentId), crdtEpochKey(documentId)),
+                Base64.getEncoder().encodeToString(update), String.valueOf(epoch),
+                String.valueOf(TimeUnit.HOURS.toSeconds(DEFAULT_CONFIRMED_TTL_HOURS)));
+        if (size == null || size < 0) {
+            return -1L;
+        }
+        markDirty(documentId);
+        return size;
+    }
+
+    /**
+     * 尚未压缩的更新条数
+     */
+    public long getCrdtUpdateCount(Long documentId) {
+        if (documentId == null) {
+            return 0L;
+        }
+        Long size = stringRedisTemplate.opsForList().size(crdtUpdatesKey(documentId));
+        return size == null ? 0L : size;
+    }
+
+    public List<byte[]> getCrdtUpdates(Long documentId) {
+        if (documentId == null) {
+            return List.of();
+        }
+        List<String> entries = stringRedisTemplate.opsForList().range(crdtUpdatesKey(documentId), 0, -1);
+        if (entries == null) {
+            return List.of();
+        }
+        return entries.stream().map(Base64.getDecoder()::decode).collect(Collectors.toList());
+    }
+
+    public byte[] getCrdtState(Long documentId) {
+        if (documentId == null) {
+            return null;
+        }
+        String value = stringRedisTemplate.opsForValue().get(crdtStateKey(documentId));
+        return value == null ? null : Base64.getDecoder().decode(value);
+    }
+
+    /**
+     * 仅在尚无状态时写入初始 CRDT 状态，并推进 epoch；返回是否写入成功
+     */
+    public boolean initCrdtState(Long documentId, byte[] state) {
+        if (documentId == null || state == null) {
             return false;
         }
-        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(saveLockKey(documentId), token, DEFAULT_SAVE_LOCK_TTL_SECONDS, TimeUnit.SECONDS);
+        Long epoch = stringRedisTemplate.execute(INIT_CRDT_SCRIPT,
+                List.of(crdtStateKey(documentId), crdtEpochKey(documentId)),
+                Base64.getEncoder().encodeToString(state), String.valueOf(TimeUnit.HOURS.toSeconds(DEFAULT_CONFIRMED_TTL_HOURS)));
+        return epoch != null && epoch > 0;
+    }
+
+    /**
+     * 在代数 epoch 下用压缩后的状态替换，并裁掉已折叠进状态的前 compactedCount 条更新；
+     * 期间状态被重置时放弃，避免旧状态覆盖新播种的内容
+     */
+    public boolean compactCrdtState(Long documentId, byte[] state, long compactedCount, long epoch) {
+        if (documentId == null || state == null) {
+            return false;
+        }
+        Long compacted = stringRedisTemplate.execute(COMPACT_CRDT_SCRIPT,
+                List.of(crdtStateKey(documentId), crdtUpdatesKey(documentId), crdtEpochKey(documentId)),
+                Base64.getEncoder().encodeToString(state), String.valueOf(epoch), String.valueOf(compactedCount),
+                String.valueOf(TimeUnit.HOURS.toSeconds(DEFAULT_CONFIRMED_TTL_HOURS)));
+        return compacted != null && compacted == 1L;
+    }
+
+    public long getCrdtEpoch(Long documentId) {
+        if (documentId == null) {
+            return 0L;
+        }
+        String value = stringRedisTemplate.opsForValue().get(crdtEpochKey(documentId));
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    public boolean acquireCrdtCompactionLock(Long documentId) {
+        if (documentId == null) {
+            return false;
+        }
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(crdtCompactionLockKey(documentId), "1",
+                DEFAULT_SAVE_LOCK_TTL_SECONDS, TimeUnit.SECONDS);
         return Boolean.TRUE.equals(locked);
     }
 
-    public void releaseSaveLock(Long documentId, String token) {
-        if (documentId == null || token == null) {
+    public void releaseCrdtCompactionLock(Long documentId) {
+        if (documentId == null) {
             return;
         }
-        String key = saveLockKey(documentId);
-        String current = stringRedisTemplate.opsForValue().get(key);
-        if (token.equals(current)) {
-            stringRedisTemplate.delete(key);
+        stringRedisTemplate.delete(crdtCompactionLockKey(documentId));
+    }
+
+    /**
+     * 清空 CRDT 状态并推进代数，此前代数下的追加与压缩都会被拒绝
+     */
+    public void clearCrdtState(Long documentId) {
+        if (documentId == null) {
+            return;
         }
+        stringRedisTemplate.execute(RESET_CRDT_SCRIPT,
+                List.of(crdtStateKey(documentId), crdtUpdatesKey(documentId), crdtEpochKey(documentId)));
     }
 
-    public void addOnlineUser(Long documentId, Long userId) {
+    /**
+     * 会话加入文档：以当前时间作为心跳写入在线有序集合，写入名册条目（用户摘要 JSON），
+     * 并记录会话成员（sessionId -> userId），离开时据此判断用户在集群中是否仍有其他会话
+     */
+    public void addOnlineUser(Long documentId, Long userId, String rosterEntry, String sessionId) {
         if (documentId == null || userId == null) {
             return;
         }
-        stringRedisTemplate.opsForSet().add(onlineUsersKey(documentId), userId.toString());
+        stringRedisTemplate.execute(JOIN_SCRIPT,
+                List.of(onlineUsersKey(documentId), PRESENCE_INDEX_KEY, rosterKey(documentId), sessionsKey(documentId)),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), documentId.toString(),
+                rosterEntry == null ? "" : rosterEntry, sessionId == null ? "" : sessionId);
     }
 
-    public void removeOnlineUser(Long documentId, Long userId) {
-        if (documentId == null || userId == null) {
+    /**
+     * 读取指定用户的名册条目（用户 ID -> 摘要 JSON），缺失的用户不在结果中
+     */
+    public Map<Long, String> getRosterEntries(Long documentId, Collection<Long> userIds) {
+        if (documentId == null || userIds == null || userIds.isEmpty()) {
+            return Map.of();
+        }
+        List<Object> fields = userIds.stream().map(id -> (Object) id.toString()).collect(Collectors.toList());
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(rosterKey(documentId), fields);
+        Map<Long, String> result = new LinkedHashMap<>();
+        int i = 0;
+        for (Long userId : userIds) {
+            Object value = values.get(i++);
+            if (value != null) {
+                result.put(userId, value.toString());
+            }
+        }
+        return result;
+    }
+
+    public void putRosterEntries(Long documentId, Map<Long, String> entries) {
+        if (documentId == null || entries == null || entries.isEmpty()) {
+            return;
+        }
+        Map<String, String> fields = new LinkedHashMap<>();
+        entries.forEach((userId, entry) -> fields.put(userId.toString(), entry));
+        stringRedisTemplate.opsForHash().putAll(rosterKey(documentId), fields);
+    }
+
+    /**
+     * 用户资料变更后改写其所在各文档的名册条目（遍历有在线成员的文档，只改写已有条目）
+     */
+    public void updateRosterEntry(Long userId, String rosterEntry) {
+        if (userId == null || rosterEntry == null) {
             return;
         }
-        stringRedisTemplate.opsForSet().remove(onlineUsersKey(documentId), userId.toString());
+        for (Long documentId : getPresenceDocuments()) {
+            stringRedisTemplate.execute(UPDATE_ROSTER_SCRIPT, List.of(rosterKey(documentId)), userId.toString(), rosterEntry);
+        }
+    }
+
+    /**
+     * 批量刷新心跳（文档 -> 用户 -> 最后活动时间），一次往返完成
+     */
+    public void touchOnlineUsers(Map<Long, Map<Long, Long>> heartbeats) {
+        if (heartbeats == null || heartbeats.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] index = PRESENCE_INDEX_KEY.getBytes(StandardCharsets.UTF_8);
+            heartbeats.forEach((documentId, users) -> {
+                byte[] key = onlineUsersKey(documentId).getBytes(StandardCharsets.UTF_8);
+                users.forEach((userId, seenAt) -> connection.zSetCommands()
+                        .zAdd(key, seenAt, userId.toString().getBytes(StandardCharsets.UTF_8), ZAddArgs.empty().gt()));
+                connection.setCommands().sAdd(index, documentId.toString().getBytes(StandardCharsets.UTF_8));
+            });
+            return null;
+        });
+    }
+
+    /**
+     * 移除在线用户，最后一人离开时在同一脚本内清空文档协作状态，返回剩余在线用户
+     */
+    public Set<Long> leaveDocument(Long documentId, Long userId) {
+        return leaveDocument(documentId, userId, null);
+    }
+
+    /**
+     * 会话离开文档：用户在任一节点仍有其他会话加入该文档时保留在线状态并返回 null，
+     * 否则同 {@link #leaveDocument(Long, Long)}
+     */
+    public Set<Long> leaveDocument(Long documentId, Long userId, String sessionId) {
+        if (documentId == null || userId == null) {
+            return Set.of();
+        }
+        List<?> remaining = stringRedisTemplate.execute(LEAVE_SCRIPT, presenceKeys(documentId), userId.toString(),
+                String.valueOf(presenceCutoff()), documentId.toString(), sessionId == null ? "" : sessionId);
+        if (remaining != null && remaining.size() == 1 && STILL_JOINED.equals(String.valueOf(remaining.get(0)))) {
+            return null;
+        }
+        return toUserIds(remaining);
+    }
+
+    /**
+     * 移除心跳超时的用户并返回；全部超时时一并清空文档协作状态
+     */
+    public Set<Long> removeStaleUsers(Long documentId, long cutoffMillis) {
+        if (documentId == null) {
+            return Set.of();
+        }
+        List<?> stale = stringRedisTemplate.execute(SWEEP_SCRIPT, presenceKeys(documentId),
+                String.valueOf(cutoffMillis), documentId.toString());
+        return toUserIds(stale);
+    }
+
+    /**
+     * 当前有在线成员的文档
+     */
+    public Set<Long> getPresenceDocuments() {
+        Set<String> members = stringRedisTemplate.opsForSet().members(PRESENCE_INDEX_KEY);
+        if (members == null || members.isEmpty()) {
+            return Set.of();
+        }
+        return members.stream().map(Long::valueOf).collect(Collectors.toSet());
     }
 
+    /**
+     * 心跳未超时的在线用户
+     */
     public Set<Long> getOnlineUsers(Long documentId) {
         if (documentId == null) {
             return Set.of();
         }
-        Set<String> members = stringRedisTemplate.opsForSet().members(onlineUsersKey(documentId));
+        Set<String> members = stringRedisTemplate.opsForZSet()
+                .rangeByScore(onlineUsersKey(documentId), presenceCutoff(), Double.POSITIVE_INFINITY);
         if (members == null || members.isEmpty()) {
             return Set.of();
         }
         return members.stream().map(Long::valueOf).collect(Collectors.toSet());
     }
 
+    public long getPresenceTtlMillis() {
+        return TimeUnit.SECONDS.toMillis(presenceTtlSeconds);
+    }
+
     public void clearDocumentState(Long documentId) {
         if (documentId == null) {
             return;
         }
-        stringRedisTemplate.delete(confirmedKey(documentId));
-        stringRedisTemplate.delete(saveLockKey(documentId));
-        stringRedisTemplate.delete(onlineUsersKey(documentId));
-        clearAllDrafts(documentId);
+        List<String> keys = new ArrayList<>(documentStateKeys(documentId));
+        keys.add(onlineUsersKey(documentId));
+        keys.add(rosterKey(documentId));
+        keys.add(sessionsKey(documentId));
+        stringRedisTemplate.delete(keys);
+        stringRedisTemplate.opsForSet().remove(PRESENCE_INDEX_KEY, documentId.toString());
+        stringRedisTemplate.opsForZSet().remove(AUTOSAVE_DIRTY_KEY, documentId.toString());
     }
 
     /**
      * 清理内容相关缓存，但保留在线列表。
+     * 修订号不清除，保证同一文档的修订号单调递增；内容已随提交落库，同时移出待写回集合。
      */
     public void clearContentCaches(Long documentId) {
         if (documentId == null) {
             return;
         }
-        stringRedisTemplate.delete(confirmedKey(documentId));
-        stringRedisTemplate.delete(saveLockKey(documentId));
-        clearAllDrafts(documentId);
+        stringRedisTemplate.delete(List.of(confirmedKey(documentId), saveLockKey(documentId),
+                operationLogKey(documentId), historyKey(documentId), draftsKey(documentId), draftLogKey(documentId)));
+        stringRedisTemplate.opsForZSet().remove(AUTOSAVE_DIRTY_KEY, documentId.toString());
     }
 
-    public void clearAllDrafts(Long documentId) {
-        if (documentId == null) {
-            return;
-        }
-        String pattern = draftKey(documentId, "*");
-        Set<String> keys = new HashSet<>();
-        var connectionFactory = stringRedisTemplate.getConnectionFactory();
-        if (connectionFactory == null) {
-            return;
-        }
-        try (Cursor<byte[]> cursor = connectionFactory.getConnection()
-                .scan(ScanOptions.scanOptions().match(pattern).count(100).build())) {
-            cursor.forEachRemaining(item -> keys.add(new String(item)));
-        }
-        if (!keys.isEmpty()) {
-            stringRedisTemplate.delete(keys);
-        }
+    /**
+     * 文档的全部协作状态 key（不含修订号与在线列表）
+     */
+    private List<String> documentStateKeys(Long documentId) {
+        return List.of(confirmedKey(documentId), saveLockKey(documentId), operationLogKey(documentId), historyKey(documentId),
+                draftsKey(documentId), draftLogKey(documentId), crdtStateKey(documentId), crdtUpdatesKey(documentId));
     }
 
-    private String draftKey(Long documentId, Long userId) {
-        return "doc:" + documentId + ":draft:" + userId;
+    /**
+     * 草稿快照哈希（见 {@link DraftLogService}）
+     */
+    static String draftsKey(Long documentId) {
+        return "doc:" + documentId + ":drafts";
     }
 
-    private String draftKey(Long documentId, String wildcard) {
-        return "doc:" + documentId + ":draft:" + wildcard;
+    /**
+     * 草稿操作流（见 {@link DraftLogService}）
+     */
+    static String draftLogKey(Long documentId) {
+        return "doc:" + documentId + ":drafts:log";
     }
 
     private String confirmedKey(Long documentId) {
@@ -171,7 +672,77 @@ public class CollaborationCacheService {
         return "doc:" + documentId + ":save:lock";
     }
 
+    private String revisionKey(Long documentId) {
+        return "doc:" + documentId + ":revision";
+    }
+
+    private String operationLogKey(Long documentId) {
+        return "doc:" + documentId + ":ops";
+    }
+
+    private String historyKey(Long documentId) {
+        return "doc:" + documentId + ":history";
+    }
+
+    private String crdtStateKey(Long documentId) {
+        return "doc:" + documentId + ":crdt:state";
+    }
+
+    private String crdtUpdatesKey(Long documentId) {
+        return "doc:" + documentId + ":crdt:updates";
+    }
+
+    private String crdtEpochKey(Long documentId) {
+        return "doc:" + documentId + ":crdt:epoch";
+    }
+
+    private String crdtCompactionLockKey(Long documentId) {
+        return "doc:" + documentId + ":crdt:compact:lock";
+    }
+
+    /**
+     * 离开/清扫脚本的 key：在线集合、文档索引、待写回集合、名册、会话成员，其后是文档协作状态
+     */
+    private List<String> presenceKeys(Long documentId) {
+        List<String> keys = new ArrayList<>();
+        keys.add(onlineUsersKey(documentId));
+        keys.add(PRESENCE_INDEX_KEY);
+        keys.add(AUTOSAVE_DIRTY_KEY);
+        keys.add(rosterKey(documentId));
+        keys.add(sessionsKey(documentId));
+        keys.addAll(documentStateKeys(documentId));
+        return keys;
+    }
+
+    private long presenceCutoff() {
+        return System.currentTimeMillis() - getPresenceTtlMillis();
+    }
+
+    private Set<Long> toUserIds(List<?> members) {
+        if (members == null || members.isEmpty()) {
+            return Set.of();
+        }
+        return members.stream().map(member -> Long.valueOf(member.toString())).collect(Collectors.toSet());
+    }
+
+    /**
+     * 在线成员名册（用户 ID -> 摘要 JSON），加入/离开时增量维护
+     */
+    private String rosterKey(Long documentId) {
+        return "doc:" + documentId + ":roster";
+    }
+
+    /**
+     * 加入文档的会话（sessionId -> userId），覆盖集群内所有节点
+     */
+    private String sessionsKey(Long documentId) {
+        return "doc:" + documentId + ":sessions";
+    }
+
+    /**
+     * 在线成员有序集合（score 为最后心跳时间）；旧版的 doc:{id}:users 集合不再使用
+     */
     private String onlineUsersKey(Long documentId) {
-        return "doc:" + documentId + ":users";
+        return "doc:" + documentId + ":presence";
     }
 }
@@ -34,6 +34,7 @@ public class CollaboratorService {
     private final DocumentWorkspaceRequestRepository workspaceRequestRepository;
     private final UserService userService;
     private final NotificationService notificationService;
+    private final DocumentAclCache documentAclCache;
     
     /**
      * 获取文档协作者列表（包含所有者）
@@ -144,6 +145,7 @@ public class CollaboratorService {
                     .invitedBy(document.getOwner())
                     .build();
             collaboratorRepository.save(collaborator);
+            documentAclCache.invalidate(document.getId(), userId);
             
             invite.setStatus("APPROVED");
             
@@ -196,6 +198,7 @@ public class CollaboratorService {
                 .orElseThrow(() -> new BusinessException(ErrorCode.COLLABORATOR_NOT_FOUND, "协作者不存在"));
         
         collaboratorRepository.delete(collaborator);
+        documentAclCache.invalidate(documentId, collaboratorUserId);
         
         // 发送通知
         notificationService.createNotification(
@@ -305,6 +308,7 @@ public class CollaboratorService {
                 .invitedBy(handler)
                 .build();
         collaboratorRepository.save(collaborator);
+        documentAclCache.invalidate(documentId, request.getApplicant().getId());
         
         // 通知申请人
         notificationService.createNotification(
@@ -0,0 +1,100 @@
+package com.example.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.entity.ContentBlob;
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+import com.example.backend.repository.ContentBlobRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 内容寻址存储
+ * 文档与版本只保存内容的 SHA-256，相同内容只存一份：克隆、无改动的提交、回滚到已有快照都只多一个引用。
+ * 空内容不建内容块（哈希为 null），避免所有新建文档争用同一行的引用计数。
+ * 引用计数由 documents / document_versions 上的触发器维护（级联删除同样生效）；
+ * 计数归零的内容块在宽限期后由定时任务清理，写入前先刷新使用时间，保证正在引用的内容不会被清理。
+ */
+@Slf4j
+@Service
+public class ContentBlobService {
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final long sweepGraceMinutes;
+
+    public ContentBlobService(ContentBlobRepository contentBlobRepository,
+                              @Value("${app.blob.sweep-grace-minutes:60}") long sweepGraceMinutes) {
+        this.contentBlobRepository = contentBlobRepository;
+        this.sweepGraceMinutes = sweepGraceMinutes;
+    }
+
+    /**
+     * 内容的 SHA-256（UTF-8），空内容返回 null
+     */
+    public static String hash(String content) {
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 确保内容已存储并返回哈希；已存在时不再传输内容。调用方需在同一事务中引用该哈希
+     */
+    @Transactional
+    public String put(String content) {
+        String hash = hash(content);
+        if (hash != null && !exists(hash)) {
+            contentBlobRepository.insert(hash, content);
+        }
+        return hash;
+    }
+
+    /**
+     * 同 put，返回可赋给 Document.contentBlob 的实体
+     */
+    @Transactional
+    public ContentBlob putBlob(String content) {
+        String hash = put(content);
+        return hash == null ? null : contentBlobRepository.getReferenceById(hash);
+    }
+
+    /**
+     * 内容块是否存在；存在时同时刷新使用时间，本事务内可安全引用
+     */
+    @Transactional
+    public boolean exists(String hash) {
+        return hash != null && contentBlobRepository.touch(hash) > 0;
+    }
+
+    public String get(String hash) {
+        if (hash == null) {
+            return "";
+        }
+        return contentBlobRepository.findContentByHash(hash)
+                .orElseThrow(() -> new BusinessException(ErrorCode.SYSTEM_ERROR, "内容块 " + hash + " 不存在"));
+    }
+
+    @Scheduled(fixedDelayString = "${app.blob.sweep-interval-ms:3600000}")
+    @Transactional
+    public void sweep() {
+        int deleted = contentBlobRepository.deleteUnreferenced(sweepGraceMinutes);
+        if (deleted > 0) {
+            log.info("清理无引用内容块 {} 个", deleted);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.backend.service;
+
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.websocket.CrdtMessage;
+import com.example.backend.entity.Document;
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+import com.example.backend.repository.DocumentRepository;
+import com.example.backend.util.RgaDocument;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CRDT 协作引擎（可按文档选择，替代草稿/确认态模型）
+ * 客户端各自生成二进制更新，服务端只做合并与转发：更新追加到 Redis 列表，无需保存锁，
+ * 副本间按任意顺序合并即可收敛。加入时按客户端状态向量只下发缺失的更新。
+ * 本节点缓存的副本记录其对应的状态代数（epoch）与已合并的更新条数，与 Redis 不一致时先刷新；
+ * 重置在文档邮箱内执行并推进代数，其他节点据代数丢弃旧副本，旧代数的追加被拒绝。
+ */
+@Slf4j
+@Service
+public class CrdtCollaborationService {
+
+    public static final String MODE_OT = "OT";
+    public static final String MODE_CRDT = "CRDT";
+
+    /**
+     * 种子内容使用的保留客户端ID
+     */
+    private static final int SEED_CLIENT_ID = 0;
+    private static final int COMPACTION_THRESHOLD = 200;
+    private static final int MAX_CACHED_REPLICAS = 256;
+    private static final String KIND_RESET = "crdt-reset";
+
+    /**
+     * 本节点缓存的副本：所属状态代数与已合并的 Redis 更新条数
+     */
+    private static final class Replica {
+        private final RgaDocument document = new RgaDocument();
+        private final long epoch;
+        private long mergedUpdates;
+
+        private Replica(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private final CollaborationCacheService collaborationCacheService;
+    private final DocumentRepository documentRepository;
+    private final DocumentSequencer documentSequencer;
+    private final ClusterMessageBus clusterMessageBus;
+
+    private final Map<Long, Replica> replicas = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Replica> eldest) {
+                    return size() > MAX_CACHED_REPLICAS;
+                }
+            });
+
+    public CrdtCollaborationService(CollaborationCacheService collaborationCacheService,
+                                    DocumentRepository documentRepository,
+                                    DocumentSequencer documentSequencer,
+                                    ClusterMessageBus clusterMessageBus) {
+        this.collaborationCacheService = collaborationCacheService;
+        this.documentRepository = documentRepository;
+        this.documentSequencer = documentSequencer;
+        this.clusterMessageBus = clusterMessageBus;
+        clusterMessageBus.register(KIND_RESET, body -> replicas.remove(Long.valueOf(body)));
+    }
+
+    public static boolean isCrdt(Document document) {
+        return document != null && MODE_CRDT.equalsIgnoreCase(document.getCollabMode());
+    }
+
+    public static String normalizeMode(String mode) {
+        if (mode == null || mode.isBlank()) {
+            return MODE_OT;
+        }
+        String upper = mode.toUpperCase();
+        if (!MODE_OT.equals(upper) && !MODE_CRDT.equals(upper)) {
+            throw new BusinessException(ErrorCode.PARAM_ERROR, "协作引擎仅支持 OT 或 CRDT");
+        }
+        return upper;
+    }
+
+    /**
+     * 校验并合并客户端更新，追加到 Redis 后返回原始更新用于广播；
+     * 状态在此期间被重置时丢弃副本并抛出业务异常，客户端需重新同步
+     */
+    public byte[] applyUpdate(Long documentId, String encodedUpdate) {
+        byte[] update = decode(encodedUpdate);
+        Replica replica = current(documentId);
+        long pendingCount;
+        synchronized (replica) {
+            replica.document.applyUpdate(update);
+            pendingCount = collaborationCacheService.appendCrdtUpdate(documentId, update, replica.epoch);
+            if (pendingCount < 0) {
+                replicas.remove(documentId, replica);
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, "CRDT 状态已重置，请重新同步");
+            }
+            // 期间没有其他节点追加或压缩时副本与 Redis 保持一致，否则下次访问时刷新
+            if (pendingCount == replica.mergedUpdates + 1) {
+                replica.mergedUpdates = pendingCount;
+            }
+        }
+        if (pendingCount >= COMPACTION_THRESHOLD) {
+            compact(documentId);
+        }
+        return update;
+    }
+
+    /**
+     * 按客户端状态向量计算其缺失的更新，同时返回服务端状态向量
+     */
+    public CrdtMessage sync(Long documentId, String encodedStateVector, Long clientEpoch) {
+        Replica replica = current(documentId);
+        // 代数不一致说明服务端状态已重建，客户端需要完整状态
+        byte[] remote = clientEpoch != null && clientEpoch == replica.epoch ? decode(encodedStateVector) : null;
+        synchronized (replica) {
+            return CrdtMessage.builder()
+                    .update(Base64.getEncoder().encodeToString(replica.document.encodeDiff(remote)))
+                    .stateVector(Base64.getEncoder().encodeToString(replica.document.encodeStateVector()))
+                    .epoch(replica.epoch)
+                    .build();
+        }
+    }
+
+    /**
+     * 当前合并后的文本
+     */
+    public String getText(Long documentId) {
+        Replica replica = current(documentId);
+        synchronized (replica) {
+            return replica.document.getText();
+        }
+    }
+
+    /**
+     * 丢弃 CRDT 状态，下次访问时以最新确认态重新播种。
+     * 在文档邮箱内执行，与本节点排队中的更新互斥；其他节点收到通知后丢弃副本
+     */
+    public void reset(Long documentId) {
+        documentSequencer.call(documentId, () -> {
+            replicas.remove(documentId);
+            collaborationCacheService.clearCrdtState(documentId);
+            return null;
+        });
+        clusterMessageBus.publishToOthers(KIND_RESET, documentId.toString());
+    }
+
+    /**
+     * 本节点副本；Redis 中的代数或更新条数与副本不一致（重置、其他节点追加、压缩）时先刷新
+     */
+    private Replica current(Long documentId) {
+        Replica replica = replicas.get(documentId);
+        if (replica != null
+                && replica.epoch == collaborationCacheService.getCrdtEpoch(documentId)
+                && replica.mergedUpdates == collaborationCacheService.getCrdtUpdateCount(documentId)) {
+            return replica;
+        }
+        return refresh(documentId);
+    }
+
+    /**
+     * 把 Redis 中的状态与增量合并进本地副本（合并幂等，可吸收其他节点写入的更新）；
+     * 代数变化时改用新副本。先读代数再读状态，读取期间发生重置时副本带旧代数，下次访问会再次刷新
+     */
+    private Replica refresh(Long documentId) {
+        byte[] state = collaborationCacheService.getCrdtState(documentId);
+        if (state == null) {
+            seed(documentId);
+        }
+        long epoch = collaborationCacheService.getCrdtEpoch(documentId);
+        state = collaborationCacheService.getCrdtState(documentId);
+        List<byte[]> updates = collaborationCacheService.getCrdtUpdates(documentId);
+        Replica replica = replicas.compute(documentId,
+                (id, existing) -> existing != null && existing.epoch == epoch ? existing : new Replica(epoch));
+        synchronized (replica) {
+            if (state != null) {
+                replica.document.applyUpdate(state);
+            }
+            updates.forEach(replica.document::applyUpdate);
+            replica.mergedUpdates = updates.size();
+        }
+        return replica;
+    }
+
+    private void seed(Long documentId) {
+        String content = collaborationCacheService.getConfirmed(documentId);
+        if (content == null) {
+            content = documentRepository.findById(documentId).map(Document::getContent).orElse("");
+        }
+        RgaDocument seeded = new RgaDocument();
+        seeded.insert(SEED_CLIENT_ID, 0, content == null ? "" : content);
+        collaborationCacheService.initCrdtState(documentId, seeded.encodeState());
+    }
+
+    /**
+     * 把已追加的更新折叠进状态，避免加入时回放过长的更新列表
+     */
+    private void compact(Long documentId) {
+        if (!collaborationCacheService.acquireCrdtCompactionLock(documentId)) {
+            return;
+        }
+        try {
+            long epoch = collaborationCacheService.getCrdtEpoch(documentId);
+            byte[] state = collaborationCacheService.getCrdtState(documentId);
+            List<byte[]> updates = collaborationCacheService.getCrdtUpdates(documentId);
+            RgaDocument compacted = new RgaDocument();
+            if (state != null) {
+                compacted.applyUpdate(state);
+            }
+            updates.forEach(compacted::applyUpdate);
+            if (collaborationCacheService.compactCrdtState(documentId, compacted.encodeState(), updates.size(), epoch)) {
+                log.debug("文档 {} CRDT 状态已压缩，折叠 {} 条更新", documentId, updates.size());
+            }
+        } finally {
+            collaborationCacheService.releaseCrdtCompactionLock(documentId);
+        }
+    }
+
+    private byte[] decode(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Base64.getDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 数据不是合法的 Base64");
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.websocket.CursorPosition;
+import com.example.backend.dto.websocket.WebSocketMessage;
+import com.example.backend.util.LongObjectMap;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 光标聚合器
+ * 每个文档每个用户只保留最新光标位置，按固定频率把变化过的光标合并为一帧 CURSORS 广播，
+ * 避免每次鼠标/光标移动都向整个文档主题推送一条消息。
+ * 光标表有容量上限（文档数、每文档用户数），超出时淘汰最久未活动的条目；
+ * 断开、离开、心跳超时时移除，长时间未更新的光标由定时任务清理。
+ * 按文档加锁，不同文档的光标写入与刷新互不阻塞；文档内的用户键使用原始 long，不装箱。
+ */
+@Slf4j
+@Service
+public class CursorAggregator implements SchedulingConfigurer {
+
+    public static final String TYPE_CURSORS = "CURSORS";
+
+    private final DocumentBroadcaster documentBroadcaster;
+    private final int maxDocuments;
+    private final int maxUsersPerDocument;
+    private final long idleMillis;
+    private final long flushIntervalMillis;
+    private final Counter evictedCounter;
+
+    /**
+     * documentId -> 文档光标；每个文档的光标在各自的 DocumentCursors 上同步，不同文档互不阻塞
+     */
+    private final Map<Long, DocumentCursors> documents = new ConcurrentHashMap<>();
+
+    private final AtomicInteger totalCursors = new AtomicInteger();
+
+    public CursorAggregator(DocumentBroadcaster documentBroadcaster,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.collab.cursor.max-documents:10000}") int maxDocuments,
+                            @Value("${app.collab.cursor.max-users-per-document:200}") int maxUsersPerDocument,
+                            @Value("${app.collab.cursor.idle-ms:300000}") long idleMillis,
+                            @Value("${app.collab.cursor.flush-hz:25}") int flushHz) {
+        this.documentBroadcaster = documentBroadcaster;
+        this.maxDocuments = maxDocuments;
+        this.maxUsersPerDocument = maxUsersPerDocument;
+        this.idleMillis = idleMillis;
+        // 频率至少 1Hz、至多 1000Hz，避免配置为 0 时除零或刷新间隔为 0
+        this.flushIntervalMillis = Math.max(1, 1000 / Math.max(1, flushHz));
+        this.evictedCounter = Counter.builder("collab.cursor.evicted")
+                .description("因容量上限或空闲超时被淘汰的光标数")
+                .register(meterRegistry);
+        Gauge.builder("collab.cursor.documents", this, CursorAggregator::getDocumentCount)
+                .description("光标表中的文档数")
+                .register(meterRegistry);
+        Gauge.builder("collab.cursor.entries", this, CursorAggregator::getCursorCount)
+                .description("光标表中的光标总数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录光标位置，等待下一次刷新时合并广播
+     */
+    public void update(Long documentId, CursorPosition cursorPosition) {
+        if (documentId == null || cursorPosition == null || cursorPosition.getUserId() == null) {
+            return;
+        }
+        long userId = cursorPosition.getUserId();
+        long now = System.currentTimeMillis();
+        while (true) {
+            DocumentCursors cursors = documents.get(documentId);
+            if (cursors == null) {
+                if (documents.size() >= maxDocuments) {
+                    evictLeastRecentDocument();
+                }
+                cursors = documents.computeIfAbsent(documentId, id -> new DocumentCursors());
+            }
+            synchronized (cursors) {
+                // 取到引用后文档可能已被移除或淘汰，重新获取
+                if (cursors.retired) {
+                    continue;
+                }
+                CursorEntry previous = cursors.latest.get(userId);
+                if (previous == null && cursors.latest.size() >= maxUsersPerDocument) {
+                    evictLeastRecentCursor(cursors);
+                }
+                cursors.latest.put(userId, new CursorEntry(cursorPosition, now));
+                cursors.pending.put(userId, cursorPosition);
+                cursors.lastActivity = now;
+                if (previous == null) {
+                    totalCursors.incrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 移除离开用户的光标
+     */
+    public void remove(Long documentId, Long userId) {
+        if (documentId == null || userId == null) {
+            return;
+        }
+        DocumentCursors cursors = documents.get(documentId);
+        if (cursors == null) {
+            return;
+        }
+        synchronized (cursors) {
+            if (cursors.latest.remove(userId) != null) {
+                totalCursors.decrementAndGet();
+            }
+            cursors.pending.remove(userId);
+            if (cursors.latest.isEmpty()) {
+                retire(documentId, cursors);
+            }
+        }
+    }
+
+    /**
+     * 文档当前所有光标（副本）
+     */
+    public Map<Long, CursorPosition> getCursors(Long documentId) {
+        DocumentCursors cursors = documentId == null ? null : documents.get(documentId);
+        if (cursors == null) {
+            return Map.of();
+        }
+        synchronized (cursors) {
+            Map<Long, CursorPosition> result = new HashMap<>(cursors.latest.size() * 2);
+            cursors.latest.forEach((userId, entry) -> result.put(userId, entry.position()));
+            return result;
+        }
+    }
+
+    public int getDocumentCount() {
+        return documents.size();
+    }
+
+    public int getCursorCount() {
+        return totalCursors.get();
+    }
+
+    /**
+     * 按构造时校验过的频率注册刷新任务
+     */
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedRateTask(this::flush, Duration.ofMillis(flushIntervalMillis));
+    }
+
+    /**
+     * 按配置频率（默认 25Hz）刷新，每个文档最多一帧
+     */
+    public void flush() {
+        List<WebSocketMessage> messages = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        documents.forEach((documentId, cursors) -> {
+            List<CursorPosition> changed;
+            synchronized (cursors) {
+                if (cursors.pending.isEmpty()) {
+                    return;
+                }
+                changed = new ArrayList<>(cursors.pending.size());
+                cursors.pending.forEach((userId, position) -> changed.add(position));
+                cursors.pending.clear();
+            }
+            messages.add(WebSocketMessage.builder()
+                    .type(TYPE_CURSORS)
+                    .documentId(documentId)
+                    .data(Map.of("cursors", changed))
+                    .timestamp(now)
+                    .build());
+        });
+        // 广播在锁外进行，避免阻塞光标写入
+        for (WebSocketMessage message : messages) {
+            try {
+                documentBroadcaster.toDocument(message.getDocumentId(), message);
+            } catch (RuntimeException e) {
+                log.warn("文档 {} 光标广播失败: {}", message.getDocumentId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 清理长时间未更新的光标（例如断开事件丢失的会话）
+     */
+    @Scheduled(fixedRateString = "${app.collab.cursor.sweep-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        int[] evicted = {0};
+        documents.forEach((documentId, cursors) -> {
+            synchronized (cursors) {
+                int removed = cursors.latest.removeIf((userId, entry) -> entry.updatedAt() < cutoff);
+                if (removed > 0) {
+                    cursors.pending.removeIf((userId, position) -> !cursors.latest.containsKey(userId));
+                    totalCursors.addAndGet(-removed);
+                    evicted[0] += removed;
+                }
+                if (cursors.latest.isEmpty()) {
+                    retire(documentId, cursors);
+                }
+            }
+        });
+        if (evicted[0] > 0) {
+            evictedCounter.increment(evicted[0]);
+            log.debug("清理空闲光标 {} 个", evicted[0]);
+        }
+    }
+
+    private void evictLeastRecentDocument() {
+        long[] oldest = {0L, Long.MAX_VALUE};
+        documents.forEach((documentId, cursors) -> {
+            if (cursors.lastActivity < oldest[1]) {
+                oldest[0] = documentId;
+                oldest[1] = cursors.lastActivity;
+            }
+        });
+        DocumentCursors victim = documents.get(oldest[0]);
+        if (victim == null) {
+            return;
+        }
+        synchronized (victim) {
+            if (!victim.retired) {
+                retire(oldest[0], victim);
+                totalCursors.addAndGet(-victim.latest.size());
+                evictedCounter.increment(victim.latest.size());
+            }
+        }
+    }
+
+    /**
+     * 从表中移除文档光标并标记，持有旧引用的写入会重新获取（调用方需持有 cursors 的锁）
+     */
+    private void retire(long documentId, DocumentCursors cursors) {
+        cursors.retired = true;
+        documents.remove(documentId, cursors);
+    }
+
+    private void evictLeastRecentCursor(DocumentCursors cursors) {
+        long[] oldest = {0L, Long.MAX_VALUE};
+        cursors.latest.forEach((userId, entry) -> {
+            if (entry.updatedAt() < oldest[1]) {
+                oldest[0] = userId;
+                oldest[1] = entry.updatedAt();
+            }
+        });
+        if (cursors.latest.remove(oldest[0]) != null) {
+            cursors.pending.remove(oldest[0]);
+            totalCursors.decrementAndGet();
+            evictedCounter.increment();
+        }
+    }
+
+    private static final class DocumentCursors {
+        private final LongObjectMap<CursorEntry> latest = new LongObjectMap<>();
+        private final LongObjectMap<CursorPosition> pending = new LongObjectMap<>();
+        private volatile long lastActivity;
+        private boolean retired;
+    }
+
+    private record CursorEntry(CursorPosition position, long updatedAt) {
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.backend.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.backend.exception.BusinessException;
+
+/**
+ * 文档编辑权限决策缓存
+ * 按 (documentId, userId) 缓存编辑权限判断结果（含拒绝结果与文档协作引擎），短 TTL 过期，
+ * 协作者变更、文档/文件夹删除等场景显式失效，使草稿、保存等高频消息不再访问数据库。
+ * 集群模式下失效事件经 {@link ClusterMessageBus} 同步到所有节点；处于事务中时推迟到提交之后发布，
+ * 避免其他请求在提交前重新加载并缓存旧的判断。
+ */
+@Service
+public class DocumentAclCache {
+
+    /**
+     * 一次权限判断的结果：允许时记录协作引擎，拒绝时记录原始错误
+     */
+    private record Decision(String collabMode, Integer errorCode, String message, long expiresAt) {
+
+        private boolean expired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private static final String KIND_INVALIDATE = "acl";
+    private static final String ALL_USERS = "*";
+
+    private final Map<Long, Map<Long, Decision>> decisions = new ConcurrentHashMap<>();
+    private final ClusterMessageBus clusterMessageBus;
+    private final long ttlMillis;
+
+    public DocumentAclCache(ClusterMessageBus clusterMessageBus,
+                            @Value("${app.collab.acl.ttl-seconds:30}") long ttlSeconds) {
+        this.clusterMessageBus = clusterMessageBus;
+        this.ttlMillis = ttlSeconds * 1000L;
+        clusterMessageBus.register(KIND_INVALIDATE, this::onInvalidate);
+    }
+
+    /**
+     * 返回缓存的编辑权限判断；未命中时执行 loader（返回协作引擎或抛出业务异常）并缓存结果。
+     * 拒绝结果同样缓存，命中时抛出与首次判断相同的业务异常。
+     */
+    public String checkEditable(Long documentId, Long userId, Supplier<String> loader) {
+        long now = System.currentTimeMillis();
+        Decision decision = decisions.getOrDefault(documentId, Map.of()).get(userId);
+        if (decision == null || decision.expired(now)) {
+            try {
+                decision = new Decision(loader.get(), null, null, now + ttlMillis);
+            } catch (BusinessException e) {
+                decision = new Decision(null, e.getCode(), e.getMessage(), now + ttlMillis);
+            }
+            decisions.computeIfAbsent(documentId, id -> new ConcurrentHashMap<>()).put(userId, decision);
+        }
+        if (decision.errorCode() != null) {
+            throw new BusinessException(decision.errorCode(), decision.message());
+        }
+        return decision.collabMode();
+    }
+
+    /**
+     * 使单个用户对文档的权限判断失效
+     */
+    public void invalidate(Long documentId, Long userId) {
+        publishAfterCommit(documentId + ":" + userId);
+    }
+
+    /**
+     * 使文档的全部权限判断失效
+     */
+    public void invalidateDocument(Long documentId) {
+        publishAfterCommit(documentId + ":" + ALL_USERS);
+    }
+
+    private void publishAfterCommit(String body) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            clusterMessageBus.publish(KIND_INVALIDATE, body);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                clusterMessageBus.publish(KIND_INVALIDATE, body);
+            }
+        });
+    }
+
+    private void onInvalidate(String body) {
+        int split = body.indexOf(':');
+        Long documentId = Long.valueOf(body.substring(0, split));
+        String user = body.substring(split + 1);
+        if (ALL_USERS.equals(user)) {
+            decisions.remove(documentId);
+            return;
+        }
+        Map<Long, Decision> entries = decisions.get(documentId);
+        if (entries != null) {
+            entries.remove(Long.valueOf(user));
+        }
+    }
+
+    /**
+     * 定期清理过期的判断，避免长期不活跃的文档/用户占用内存
+     */
+    @Scheduled(fixedDelayString = "${app.collab.acl.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        decisions.forEach((documentId, entries) -> {
+            entries.values().removeIf(decision -> decision.expired(now));
+            if (entries.isEmpty()) {
+                decisions.remove(documentId, entries);
+            }
+        });
+    }
+}
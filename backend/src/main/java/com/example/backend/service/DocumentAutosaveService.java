@@ -0,0 +1,145 @@
+package com.example.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.backend.repository.DocumentRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 协作内容自动保存（write-behind）
+ * 确认态的每次变更只在 Redis 待写回集合中记下最早的未保存时间，定时任务认领已等待超过半个
+ * 最大延迟窗口的文档，按批读取最新内容并在一个事务内写回 documents.content_hash（内容存入内容寻址存储）：
+ * 窗口内的多次修改合并为一次写入，任一修改最迟在 max-lag 之后落库。
+ * 只更新文档内容，不生成 DocumentVersion —— 版本仍只由显式提交创建。
+ * 认领带租约，节点宕机后由其他节点在租约到期后接手；写回失败的文档保持待写回，下一轮重试。
+ */
+@Slf4j
+@Service
+public class DocumentAutosaveService {
+
+    private final CollaborationCacheService collaborationCacheService;
+    private final CrdtCollaborationService crdtCollaborationService;
+    private final DocumentRepository documentRepository;
+    private final ContentBlobService contentBlobService;
+    private final TransactionTemplate transactionTemplate;
+    private final long maxLagMillis;
+    private final int batchSize;
+    private final Counter flushedCounter;
+    private final Counter failedCounter;
+
+    public DocumentAutosaveService(CollaborationCacheService collaborationCacheService,
+                                   CrdtCollaborationService crdtCollaborationService,
+                                   DocumentRepository documentRepository,
+                                   ContentBlobService contentBlobService,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.collab.autosave.max-lag-ms:30000}") long maxLagMillis,
+                                   @Value("${app.collab.autosave.batch-size:100}") int batchSize) {
+        this.collaborationCacheService = collaborationCacheService;
+        this.crdtCollaborationService = crdtCollaborationService;
+        this.documentRepository = documentRepository;
+        this.contentBlobService = contentBlobService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxLagMillis = maxLagMillis;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushedCounter = Counter.builder("collab.autosave.flushed")
+                .description("自动保存写回数据库的文档数")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("collab.autosave.failed")
+                .description("自动保存写回失败的批次数")
+                .register(meterRegistry);
+        Gauge.builder("collab.autosave.pending", collaborationCacheService, CollaborationCacheService::countDirtyDocuments)
+                .description("等待写回数据库的文档数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 每半个最大延迟窗口执行一次，认领并写回到期的文档，直到没有到期文档
+     */
+    @Scheduled(fixedDelayString = "#{${app.collab.autosave.max-lag-ms:30000} / 2}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        long cutoff = now - maxLagMillis / 2;
+        // 租约取一个完整窗口：足够写完一批，宕机后也能在下一窗口内被接手
+        long leaseUntil = now + maxLagMillis;
+        List<Long> claimed;
+        do {
+            claimed = collaborationCacheService.claimDirtyDocuments(cutoff, leaseUntil, batchSize);
+            if (!claimed.isEmpty()) {
+                flushBatch(claimed, leaseUntil);
+            }
+        } while (claimed.size() == batchSize);
+    }
+
+    private void flushBatch(List<Long> documentIds, long leaseUntil) {
+        Map<Long, String> modes = new HashMap<>();
+        try {
+            for (Object[] row : documentRepository.findCollabModes(documentIds)) {
+                modes.put((Long) row[0], (String) row[1]);
+            }
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.warn("自动保存查询文档失败，稍后重试 docs:{}", documentIds, e);
+            documentIds.forEach(collaborationCacheService::markDirty);
+            return;
+        }
+
+        LocalDateTime readAt = LocalDateTime.now();
+        Map<Long, String> contents = new LinkedHashMap<>();
+        for (Long documentId : documentIds) {
+            String mode = modes.get(documentId);
+            String content = null;
+            if (mode != null) {
+                content = CrdtCollaborationService.MODE_CRDT.equalsIgnoreCase(mode)
+                        ? crdtCollaborationService.getText(documentId)
+                        : collaborationCacheService.getConfirmed(documentId);
+            }
+            if (content == null) {
+                // 文档已删除，或缓存已随提交清空：没有需要写回的内容
+                collaborationCacheService.completeDirty(documentId, leaseUntil);
+            } else {
+                contents.put(documentId, content);
+            }
+        }
+        if (contents.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Boolean> written = new HashMap<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                contents.forEach((documentId, content) -> written.put(documentId,
+                        documentRepository.autosaveContent(documentId, contentBlobService.putBlob(content), readAt, now) > 0));
+            });
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.warn("自动保存写回失败，稍后重试 docs:{}", contents.keySet(), e);
+            contents.keySet().forEach(collaborationCacheService::markDirty);
+            return;
+        }
+        written.forEach((documentId, saved) -> {
+            // 未写入说明读取后文档被提交或修改过，保持待写回，下一轮读取最新内容再判断
+            if (saved) {
+                flushedCounter.increment();
+                collaborationCacheService.completeDirty(documentId, leaseUntil);
+            } else {
+                collaborationCacheService.markDirty(documentId);
+            }
+        });
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import com.example.backend.config.CborFrameCodec;
+import com.example.backend.dto.websocket.WebSocketMessage;
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 文档消息广播器
+ * 单节点时直接投递到本地 simple broker；集群模式下先序列化一次，经 {@link ClusterMessageBus}
+ * 发布到所有节点，再由各节点投递给本地订阅者，使多实例部署时广播能到达所有会话。
+ * 所有节点按 Redis 频道中的同一顺序投递，各节点上的订阅者看到的消息顺序一致。
+ * 有会话协商了 CBOR 时，协作消息在投递前编码一次 CBOR 负载随广播携带，由 {@link CborFrameCodec} 按会话替换。
+ */
+@Slf4j
+@Service
+public class DocumentBroadcaster {
+
+    private static final String KIND_TOPIC = "topic";
+    private static final String KIND_USER = "user";
+    private static final Map<String, Object> JSON_HEADERS =
+            Map.of(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON);
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ClusterMessageBus clusterMessageBus;
+    private final ObjectMapper objectMapper;
+    private final CborFrameCodec cborFrameCodec;
+
+    public DocumentBroadcaster(SimpMessagingTemplate messagingTemplate,
+                               ClusterMessageBus clusterMessageBus,
+                               ObjectMapper objectMapper,
+                               CborFrameCodec cborFrameCodec) {
+        this.messagingTemplate = messagingTemplate;
+        this.clusterMessageBus = clusterMessageBus;
+        this.objectMapper = objectMapper;
+        this.cborFrameCodec = cborFrameCodec;
+        clusterMessageBus.register(KIND_TOPIC, this::deliverTopic);
+        clusterMessageBus.register(KIND_USER, this::deliverUser);
+    }
+
+    /**
+     * 广播到文档主题 /topic/document/{documentId}
+     */
+    public void toDocument(Long documentId, Object message) {
+        if (!clusterMessageBus.isEnabled()) {
+            byte[] cbor = cborFrameCodec.hasCborSessions() && message instanceof WebSocketMessage typed
+                    ? cborFrameCodec.encode(typed) : null;
+            if (cbor == null) {
+                messagingTemplate.convertAndSend(topic(documentId), message);
+            } else {
+                messagingTemplate.convertAndSend(topic(documentId), bytes(serialize(message)), headers(cbor));
+            }
+            return;
+        }
+        clusterMessageBus.publish(KIND_TOPIC, documentId + "\n" + serialize(message));
+    }
+
+    /**
+     * 发送到用户队列（用户可能连接在其他节点）
+     */
+    public void toUser(String email, String destination, Object message) {
+        if (!clusterMessageBus.isEnabled()) {
+            messagingTemplate.convertAndSendToUser(email, destination, message);
+            return;
+        }
+        clusterMessageBus.publish(KIND_USER, email + "\n" + destination + "\n" + serialize(message));
+    }
+
+    private void deliverTopic(String body) {
+        int split = body.indexOf('\n');
+        Long documentId = Long.valueOf(body.substring(0, split));
+        byte[] json = bytes(body.substring(split + 1));
+        byte[] cbor = cborFrameCodec.hasCborSessions() ? cborFrameCodec.transcode(json) : null;
+        if (cbor == null) {
+            messagingTemplate.convertAndSend(topic(documentId), json, JSON_HEADERS);
+        } else {
+            messagingTemplate.convertAndSend(topic(documentId), json, headers(cbor));
+        }
+    }
+
+    private void deliverUser(String body) {
+        int first = body.indexOf('\n');
+        int second = body.indexOf('\n', first + 1);
+        String email = body.substring(0, first);
+        String destination = body.substring(first + 1, second);
+        // 用户没有连接在本节点时 simple broker 直接忽略
+        messagingTemplate.convertAndSendToUser(email, destination, bytes(body.substring(second + 1)), JSON_HEADERS);
+    }
+
+    /**
+     * JSON 负载的消息头，附带预先编码的 CBOR 负载（内部头，不会写到线上）
+     */
+    private MessageHeaders headers(byte[] cbor) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setHeader(CborFrameCodec.CBOR_PAYLOAD_HEADER, cbor);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    private String topic(Long documentId) {
+        return "/topic/document/" + documentId;
+    }
+
+    private byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String serialize(Object message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "广播消息序列化失败");
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.backend.service;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 文档单写者序列器
+ * 每个文档一个有界邮箱，同一文档的变更按到达顺序在同一时刻只由一个消费者执行，
+ * 不同文档之间并行。邮箱排空后即回收，繁忙文档每轮最多处理固定数量的任务后让出执行器。
+ */
+@Slf4j
+@Service
+public class DocumentSequencer {
+
+    private static final int DRAIN_BATCH_SIZE = 64;
+
+    private final TaskExecutor executor;
+    private final ConcurrentHashMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ThreadLocal<Long> currentDocument = new ThreadLocal<>();
+    private final Counter rejectedCounter;
+    private final Counter processedCounter;
+    private final int capacity;
+    private final long callTimeoutMillis;
+
+    public DocumentSequencer(@Qualifier("documentSequencerExecutor") TaskExecutor executor,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.collab.mailbox.capacity:1000}") int capacity,
+                             @Value("${app.collab.mailbox.call-timeout-ms:10000}") long callTimeoutMillis) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.callTimeoutMillis = callTimeoutMillis;
+        this.rejectedCounter = Counter.builder("collab.mailbox.rejected")
+                .description("邮箱已满被拒绝的任务数")
+                .register(meterRegistry);
+        this.processedCounter = Counter.builder("collab.mailbox.processed")
+                .description("邮箱已处理的任务数")
+                .register(meterRegistry);
+        Gauge.builder("collab.mailbox.active", mailboxes, ConcurrentHashMap::size)
+                .description("存在待处理任务的文档数")
+                .register(meterRegistry);
+        Gauge.builder("collab.mailbox.depth", this, DocumentSequencer::getTotalQueueDepth)
+                .description("所有文档邮箱中排队的任务总数")
+                .register(meterRegistry);
+        Gauge.builder("collab.mailbox.depth.max", this, DocumentSequencer::getMaxQueueDepth)
+                .description("单个文档邮箱的最大排队任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 异步投递文档变更，邮箱已满时抛出 TOO_MANY_REQUESTS
+     */
+    public void execute(Long documentId, Runnable task) {
+        Mailbox mailbox = mailboxes.compute(documentId, (id, existing) -> {
+            Mailbox target = existing != null ? existing : new Mailbox(id, capacity);
+            if (!target.queue.offer(task)) {
+                rejectedCounter.increment();
+                throw new BusinessException(ErrorCode.TOO_MANY_REQUESTS, "文档繁忙，请稍后重试");
+            }
+            return target;
+        });
+        schedule(mailbox);
+    }
+
+    /**
+     * 同步执行文档变更并返回结果；已处于该文档邮箱内时直接执行，避免自我等待
+     */
+    public <T> T call(Long documentId, Supplier<T> task) {
+        if (documentId.equals(currentDocument.get())) {
+            return task.get();
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(documentId, () -> {
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        try {
+            return future.get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "文档变更执行失败");
+        } catch (TimeoutException e) {
+            throw new BusinessException(ErrorCode.TOO_MANY_REQUESTS, "文档繁忙，请稍后重试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "文档变更被中断");
+        }
+    }
+
+    /**
+     * 指定文档邮箱当前排队的任务数
+     */
+    public int getQueueDepth(Long documentId) {
+        Mailbox mailbox = mailboxes.get(documentId);
+        return mailbox == null ? 0 : mailbox.queue.size();
+    }
+
+    public int getTotalQueueDepth() {
+        return mailboxes.values().stream().mapToInt(mailbox -> mailbox.queue.size()).sum();
+    }
+
+    public int getMaxQueueDepth() {
+        return mailboxes.values().stream().mapToInt(mailbox -> mailbox.queue.size()).max().orElse(0);
+    }
+
+    private void schedule(Mailbox mailbox) {
+        if (mailbox.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(mailbox));
+        }
+    }
+
+    private void drain(Mailbox mailbox) {
+        currentDocument.set(mailbox.documentId);
+        try {
+            Runnable task;
+            int processed = 0;
+            while (processed < DRAIN_BATCH_SIZE && (task = mailbox.queue.poll()) != null) {
+                processed++;
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.warn("文档 {} 邮箱任务执行失败: {}", mailbox.documentId, e.getMessage(), e);
+                }
+            }
+            processedCounter.increment(processed);
+        } finally {
+            currentDocument.remove();
+            mailbox.scheduled.set(false);
+        }
+        // 与投递方在同一哈希桶锁内判断，保证同一文档任意时刻只有一个邮箱
+        mailboxes.computeIfPresent(mailbox.documentId,
+                (id, existing) -> existing == mailbox && mailbox.isIdle() ? null : existing);
+        if (!mailbox.queue.isEmpty()) {
+            schedule(mailbox);
+        }
+    }
+
+    /**
+     * 单个文档的有界邮箱
+     */
+    private static final class Mailbox {
+        private final Long documentId;
+        private final BlockingQueue<Runnable> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Mailbox(Long documentId, int capacity) {
+            this.documentId = documentId;
+            this.queue = new LinkedBlockingQueue<>(capacity);
+        }
+
+        private boolean isIdle() {
+            return queue.isEmpty() && !scheduled.get();
+        }
+    }
+}
@@ -2,17 +2,16 @@ package com.example.backend.service;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -26,6 +25,8 @@ import com.example.backend.dto.document.DocumentDTO;
 import com.example.backend.dto.document.DocumentVersionDTO;
 import com.example.backend.dto.document.MoveDocumentRequest;
 import com.example.backend.dto.document.UpdateDocumentRequest;
+import com.example.backend.dto.websocket.AppliedOperation;
+import com.example.backend.dto.websocket.CatchUp;
 import com.example.backend.dto.websocket.WebSocketMessage;
 import com.example.backend.entity.Document;
 import com.example.backend.entity.DocumentCollaborator;
@@ -38,6 +39,7 @@ import com.example.backend.repository.DocumentCollaboratorRepository;
 import com.example.backend.repository.DocumentFolderRepository;
 import com.example.backend.repository.DocumentRepository;
 import com.example.backend.repository.DocumentVersionRepository;
+import com.example.backend.util.ThreeWayMerge;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -58,11 +60,17 @@ public class DocumentService {
     private final DocumentRepository documentRepository;
     private final DocumentFolderRepository folderRepository;
     private final DocumentVersionRepository versionRepository;
+    private final DocumentVersionStore documentVersionStore;
+    private final ContentBlobService contentBlobService;
     private final DocumentCollaboratorRepository collaboratorRepository;
     private final UserService userService;
     private final FileStorageService fileStorageService;
     private final CollaborationCacheService collaborationCacheService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final DraftLogService draftLogService;
+    private final OperationTransformService operationTransformService;
+    private final CrdtCollaborationService crdtCollaborationService;
+    private final DocumentAclCache documentAclCache;
+    private final DocumentBroadcaster documentBroadcaster;
     
     /**
      * 创建文档
@@ -87,7 +95,6 @@ public class DocumentService {
                 .docType(normalizeDocType(request.getDocType()))
                 .visibility(request.getVisibility() != null ? request.getVisibility() : STATUS_PRIVATE)
                 .folder(folder)
-                .content("")
                 .storagePath(storagePath)
                 .status(STATUS_ACTIVE)
                 .build();
@@ -145,8 +152,11 @@ public class DocumentService {
         if (request.getTags() != null) {
             document.setTags(request.getTags());
         }
-        
-        
+        if (request.getCollabMode() != null) {
+            switchCollabMode(document, userId, CrdtCollaborationService.normalizeMode(request.getCollabMode()));
+            documentAclCache.invalidateDocument(documentId);
+        }
+
 
         document = documentRepository.save(document);
         return DocumentDTO.fromEntity(document, userId, true);
@@ -166,60 +176,38 @@ public class DocumentService {
         
         User user = userService.getUserById(userId);
         
-        // 获取最新版本号
-        Integer maxVersionNo = versionRepository.findMaxVersionNoByDocumentId(documentId);
-        int newVersionNo = (maxVersionNo == null ? 0 : maxVersionNo) + 1;
-        
-        // 创建新版本
-        DocumentVersion version = DocumentVersion.builder()
-                .document(document)
-                .versionNo(newVersionNo)
-                .content(request.getContent())
-                .commitMessage(request.getCommitMessage())
-                .createdBy(user)
-                .build();
-        
-        version = versionRepository.save(version);
+        // 创建新版本（按增量或关键帧存储）
+        DocumentVersion version = documentVersionStore.create(document, request.getContent(),
+                request.getCommitMessage(), user);
         
         // 更新文档内容
-        document.setContent(request.getContent());
+        document.setContentBlob(contentBlobService.putBlob(request.getContent()));
         documentRepository.save(document);
 
         // 将最新内容持久化到物理文件
         persistLatestContent(document, request.getContent());
         
-        return DocumentVersionDTO.fromEntity(version);
+        return DocumentVersionDTO.fromEntity(version, request.getContent());
     }
 
     /**
      * 保存至 Redis 确认态并广播。
+     * 经 OT 引擎排序后应用，并发保存不再被拒绝；携带基准修订号时三方合并，返回仍重叠的冲突。
      */
-    public void saveDocumentCache(Long documentId, Long userId, String username, String content) {
-        getEditableDocument(documentId, userId);
-
-        String lockToken = UUID.randomUUID().toString();
-        boolean locked = collaborationCacheService.acquireSaveLock(documentId, lockToken);
-        if (!locked) {
-            throw new BusinessException(ErrorCode.TOO_MANY_REQUESTS, "有人正在保存，请稍后重试");
+    public List<ThreeWayMerge.Conflict> saveDocumentCache(Long documentId, Long userId, String username,
+                                                          String content, Long baseRevision) {
+        Document document = getEditableDocument(documentId, userId);
+        if (CrdtCollaborationService.isCrdt(document)) {
+            throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 协作模式的文档请通过 CRDT 更新同步内容");
         }
 
-        try {
-            collaborationCacheService.saveConfirmed(documentId, content);
-            collaborationCacheService.clearDraft(documentId, userId);
-
-            WebSocketMessage message = WebSocketMessage.builder()
-                    .type("SAVE_CONFIRMED")
-                    .documentId(documentId)
-                    .userId(userId)
-                    .nickname(username)
-                    .data(Map.of("content", content))
-                    .timestamp(System.currentTimeMillis())
-                    .build();
-
-            messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
-        } finally {
-            collaborationCacheService.releaseSaveLock(documentId, lockToken);
+        AppliedOperation applied = operationTransformService.submitContent(documentId, userId, baseRevision, content);
+        List<ThreeWayMerge.Conflict> conflicts = applied.getConflicts() == null ? List.of() : applied.getConflicts();
+        if (conflicts.isEmpty()) {
+            draftLogService.clearDraft(documentId, userId);
         }
+        broadcastConfirmed(documentId, userId, username, applied, baseRevision == null);
+        return conflicts;
     }
 
     /**
@@ -228,7 +216,9 @@ public class DocumentService {
     @Transactional
     public DocumentVersionDTO commitDocumentFromCache(Long documentId, Long userId, String commitMessage) {
         Document document = getEditableDocument(documentId, userId);
-        String cached = collaborationCacheService.getConfirmed(documentId);
+        String cached = CrdtCollaborationService.isCrdt(document)
+                ? crdtCollaborationService.getText(documentId)
+                : collaborationCacheService.getConfirmed(documentId);
         String content = cached != null ? cached : (document.getContent() == null ? "" : document.getContent());
 
         CommitDocumentRequest request = new CommitDocumentRequest();
@@ -244,6 +234,13 @@ public class DocumentService {
      * 获取协作缓存状态（确认态 + 当前用户草稿 + 在线列表）。
      */
     public DocumentCacheResponse getDocumentCache(Long documentId, Long userId) {
+        return getDocumentCache(documentId, userId, null);
+    }
+
+    /**
+     * 获取协作缓存状态；携带 sinceRevision 且仍在操作窗口内时不返回确认态全文，只返回之后的操作。
+     */
+    public DocumentCacheResponse getDocumentCache(Long documentId, Long userId, Long sinceRevision) {
         Document document = getActiveDocument(documentId);
         if (!checkDocumentAccess(document, userId)) {
             throw new BusinessException(ErrorCode.DOCUMENT_ACCESS_DENIED, "无权访问此文档");
@@ -254,12 +251,28 @@ public class DocumentService {
             confirmed = document.getContent() == null ? "" : document.getContent();
             collaborationCacheService.saveConfirmed(documentId, confirmed);
         }
+        CatchUp catchUp = null;
+        if (CrdtCollaborationService.isCrdt(document)) {
+            confirmed = crdtCollaborationService.getText(documentId);
+        } else if (sinceRevision != null) {
+            catchUp = operationTransformService.catchUp(documentId, sinceRevision);
+            if (CatchUp.MODE_OPS.equals(catchUp.getMode())) {
+                confirmed = null;
+            } else {
+                confirmed = catchUp.getContent();
+                catchUp.setContent(null);
+            }
+        }
 
         return DocumentCacheResponse.builder()
                 .confirmedContent(confirmed)
-                .userDraftContent(collaborationCacheService.getDraft(documentId, userId))
+                .catchUp(catchUp)
+                .userDraftContent(draftLogService.getDraft(documentId, userId))
                 .onlineUsers(collaborationCacheService.getOnlineUsers(documentId))
-            .draftTtlSeconds(collaborationCacheService.getDraftTtlSeconds(documentId, userId))
+                .revision(collaborationCacheService.getRevision(documentId))
+                .collabMode(document.getCollabMode())
+            .draftTtlSeconds(draftLogService.getDraftTtlSeconds(documentId, userId))
+                .draftStreamId(draftLogService.getLastStreamId(documentId))
                 .build();
     }
     
@@ -281,6 +294,7 @@ public class DocumentService {
                 fileStorageService.deleteDocumentFile(document.getStoragePath(), document.getTitle());
             }
             collaborationCacheService.clearDocumentState(documentId);
+            documentAclCache.invalidateDocument(documentId);
             documentRepository.delete(document);
             return;
         }
@@ -294,8 +308,9 @@ public class DocumentService {
         document.setVisibility(STATUS_PRIVATE);
         documentRepository.save(document);
 
-        // 清理协作缓存（confirmed/draft/online）
+        // 清理协作缓存（confirmed/draft/online）与权限判断缓存
         collaborationCacheService.clearDocumentState(documentId);
+        documentAclCache.invalidateDocument(documentId);
     }
     
     /**
@@ -368,8 +383,9 @@ public class DocumentService {
         Pageable pageable = PageRequest.of(page - 1, pageSize);
         Page<DocumentVersion> versionPage = versionRepository.findByDocumentIdOrderByVersionNoDesc(documentId, pageable);
         
+        // 列表只返回版本元信息，内容按需通过版本详情还原
         List<DocumentVersionDTO> items = versionPage.getContent().stream()
-                .map(DocumentVersionDTO::fromEntity)
+                .map(version -> DocumentVersionDTO.fromEntity(version, null))
                 .collect(Collectors.toList());
         
         return PageResponse.<DocumentVersionDTO>builder()
@@ -397,7 +413,7 @@ public class DocumentService {
             throw new BusinessException(ErrorCode.VERSION_NOT_FOUND, "版本不存在");
         }
         
-        return DocumentVersionDTO.fromEntity(version);
+        return DocumentVersionDTO.fromEntity(version, documentVersionStore.getContent(version));
     }
     
     /**
@@ -420,26 +436,24 @@ public class DocumentService {
         }
         
         // 以目标版本内容创建新版本
+        String targetContent = documentVersionStore.getContent(targetVersion);
         CommitDocumentRequest request = new CommitDocumentRequest();
-        request.setContent(targetVersion.getContent());
+        request.setContent(targetContent);
         request.setCommitMessage("回滚到版本 " + targetVersion.getVersionNo());
 
         DocumentVersionDTO result = commitDocument(documentId, userId, request);
 
-        // 刷新协作缓存：清空草稿，确认态回填回滚内容
-        collaborationCacheService.clearAllDrafts(documentId);
-        collaborationCacheService.saveConfirmed(documentId, targetVersion.getContent());
+        // 刷新协作缓存：清空草稿，确认态经 OT 引擎替换为回滚内容
+        draftLogService.clearAllDrafts(documentId);
+        AppliedOperation applied = operationTransformService.submitContent(documentId, userId, targetContent);
 
         // 广播确认内容，让在线用户立即看到回滚结果
-        WebSocketMessage message = WebSocketMessage.builder()
-            .type("SAVE_CONFIRMED")
-            .documentId(documentId)
-            .userId(userId)
-            .nickname(userService.getUserById(userId).getUsername())
-            .data(Map.of("content", targetVersion.getContent()))
-            .timestamp(System.currentTimeMillis())
-            .build();
-        messagingTemplate.convertAndSend("/topic/document/" + documentId, message);
+        broadcastConfirmed(documentId, userId, userService.getUserById(userId).getUsername(), applied, false);
+        if (CrdtCollaborationService.isCrdt(document)) {
+            // CRDT 状态以回滚内容重新播种，客户端收到后重新同步
+            crdtCollaborationService.reset(documentId);
+            broadcastCrdtReset(documentId, userId, CrdtCollaborationService.MODE_CRDT);
+        }
 
         return result;
     }
@@ -468,7 +482,7 @@ public class DocumentService {
         Document clonedDocument = Document.builder()
                 .title(sourceDocument.getTitle() + " (克隆)")
                 .owner(owner)
-                .content(sourceDocument.getContent())
+                .contentBlob(sourceDocument.getContentBlob())
                 .docType(normalizeDocType(sourceDocument.getDocType()))
                 .visibility(STATUS_PRIVATE)
                 .tags(sourceDocument.getTags())
@@ -528,7 +542,7 @@ public class DocumentService {
         Document document = Document.builder()
                 .title(title)
                 .owner(owner)
-                .content(content)
+                .contentBlob(contentBlobService.putBlob(content))
                 .docType(docType)
                 .visibility(STATUS_PRIVATE)
                 .folder(folder)
@@ -567,6 +581,82 @@ public class DocumentService {
     
     // 辅助方法
 
+    /**
+     * 切换协作引擎：切回 OT 时把 CRDT 文本提交为确认态，切到 CRDT 时以当前确认态重新播种
+     */
+    private void switchCollabMode(Document document, Long userId, String mode) {
+        Long documentId = document.getId();
+        String current = CrdtCollaborationService.normalizeMode(document.getCollabMode());
+        if (current.equals(mode)) {
+            return;
+        }
+        if (CrdtCollaborationService.MODE_OT.equals(mode)) {
+            String text = crdtCollaborationService.getText(documentId);
+            operationTransformService.submitContent(documentId, userId, text);
+        } else {
+            draftLogService.clearAllDrafts(documentId);
+        }
+        crdtCollaborationService.reset(documentId);
+        document.setCollabMode(mode);
+        broadcastCrdtReset(documentId, userId, mode);
+    }
+
+    private void broadcastCrdtReset(Long documentId, Long userId, String mode) {
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type("CRDT_RESET")
+                .documentId(documentId)
+                .userId(userId)
+                .data(Map.of("collabMode", mode))
+                .timestamp(System.currentTimeMillis())
+                .build();
+        documentBroadcaster.toDocument(documentId, message);
+    }
+
+    /**
+     * 广播确认：全文只在不带基准修订号的旧版全量保存时附带，其余情况客户端按 ops 应用
+     */
+    private void broadcastConfirmed(Long documentId, Long userId, String username, AppliedOperation applied,
+                                    boolean includeContent) {
+        Map<String, Object> data = new HashMap<>();
+        if (includeContent) {
+            data.put("content", applied.getContent());
+        }
+        data.put("revision", applied.getRevision());
+        data.put("baseRevision", applied.getBaseRevision());
+        data.put("ops", applied.getOps());
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type("SAVE_CONFIRMED")
+                .documentId(documentId)
+                .userId(userId)
+                .nickname(username)
+                .data(data)
+                .timestamp(System.currentTimeMillis())
+                .build();
+        documentBroadcaster.toDocument(documentId, message);
+    }
+
+    /**
+     * 校验编辑权限并返回协作引擎（WebSocket 高频路径，命中缓存时不访问数据库）。
+     */
+    public String checkEditable(Long documentId, Long userId) {
+        return documentAclCache.checkEditable(documentId, userId, () -> {
+            Document document = getEditableDocument(documentId, userId);
+            return CrdtCollaborationService.normalizeMode(document.getCollabMode());
+        });
+    }
+
+    /**
+     * 校验读取权限（与 REST 读取文档相同的判断）并返回协作引擎，WebSocket 下发文档内容前调用。
+     */
+    @Transactional
+    public String checkReadable(Long documentId, Long userId) {
+        Document document = getActiveDocument(documentId);
+        if (!checkDocumentAccess(document, userId)) {
+            throw new BusinessException(ErrorCode.DOCUMENT_ACCESS_DENIED, "无权访问此文档");
+        }
+        return CrdtCollaborationService.normalizeMode(document.getCollabMode());
+    }
+
     /**
      * 校验编辑权限并返回文档实体。
      */
@@ -630,6 +720,9 @@ public class DocumentService {
             DocumentFolder root = legacyRoots.get(0);
             if (root.getStatus() == null) {
                 root.setStatus(STATUS_ACTIVE);
+                // 根目录恢复为有效状态后其下文档的可访问性随之变化，缓存的拒绝结果需要失效
+                documentRepository.findByFolderId(root.getId())
+                        .forEach(document -> documentAclCache.invalidateDocument(document.getId()));
             }
             return folderRepository.save(root);
         }
@@ -645,14 +738,7 @@ public class DocumentService {
     }
 
     private void createInitialVersion(Document document, User user) {
-        DocumentVersion initialVersion = DocumentVersion.builder()
-                .document(document)
-                .versionNo(1)
-                .content(document.getContent() != null ? document.getContent() : "")
-                .commitMessage("初始版本")
-                .createdBy(user)
-                .build();
-        versionRepository.save(initialVersion);
+        documentVersionStore.create(document, document.getContent(), "初始版本", user);
     }
 
     private String sanitizeFileName(String fileName) {
@@ -0,0 +1,176 @@
+package com.example.backend.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.entity.Document;
+import com.example.backend.entity.DocumentVersion;
+import com.example.backend.entity.User;
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+import com.example.backend.repository.DocumentVersionRepository;
+import com.example.backend.util.TextOperation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 文档版本存储
+ * 版本内容以相对上一版本的按行增量保存，距上一个完整快照满 keyframe-interval 个版本（或增量不比全文小）时
+ * 存一个完整快照作为关键帧，还原任一版本最多应用 keyframe-interval - 1 个增量。
+ * 还原结果放入按字符数限制大小的 LRU 缓存（版本不可变，以版本 ID 为键无需失效）；
+ * 还原时从链上最近的已缓存版本开始，连续查看相邻版本只需应用一个增量。
+ * 快照与增量都存入内容寻址存储；提交的内容与本文档某个完整快照版本相同时（如回滚到关键帧）
+ * 直接引用该快照作为关键帧，不再求增量。只认本文档的 FULL 版本：协作自动保存早已把当前内容写成内容块，
+ * 若按内容块是否存在判断，几乎每次提交都会退化为完整快照。
+ */
+@Service
+public class DocumentVersionStore {
+
+    public static final String KIND_FULL = "FULL";
+    public static final String KIND_DELTA = "DELTA";
+
+    private static final TypeReference<List<Object>> WIRE_TYPE = new TypeReference<>() {
+    };
+
+    private final DocumentVersionRepository versionRepository;
+    private final ContentBlobService contentBlobService;
+    private final ObjectMapper objectMapper;
+    private final int keyframeInterval;
+    private final long cacheMaxChars;
+    private final LinkedHashMap<Long, String> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedChars;
+
+    public DocumentVersionStore(DocumentVersionRepository versionRepository,
+                                ContentBlobService contentBlobService,
+                                ObjectMapper objectMapper,
+                                @Value("${app.version.keyframe-interval:20}") int keyframeInterval,
+                                @Value("${app.version.cache-max-chars:16777216}") long cacheMaxChars) {
+        this.versionRepository = versionRepository;
+        this.contentBlobService = contentBlobService;
+        this.objectMapper = objectMapper;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.cacheMaxChars = cacheMaxChars;
+    }
+
+    /**
+     * 创建下一个版本。调用方需处于事务中。
+     */
+    public DocumentVersion create(Document document, String content, String commitMessage, User createdBy) {
+        String text = content == null ? "" : content;
+        Integer latestVersionNo = versionRepository.findMaxVersionNoByDocumentId(document.getId());
+        int versionNo = (latestVersionNo == null ? 0 : latestVersionNo) + 1;
+
+        String stored = text;
+        String kind = KIND_FULL;
+        // 内容已是本文档的完整快照（如回滚）：引用它作为关键帧，只多一个指针
+        String hash = ContentBlobService.hash(text);
+        boolean keyframeExists = hash != null
+                && versionRepository.existsByDocumentIdAndContentHashAndStorageKind(document.getId(), hash, KIND_FULL);
+        if (latestVersionNo != null && !keyframeExists) {
+            Integer keyframe = versionRepository.findKeyframeVersionNo(document.getId(), latestVersionNo);
+            DocumentVersion previous = keyframe == null || versionNo - keyframe >= keyframeInterval
+                    ? null
+                    : versionRepository.findByDocumentIdAndVersionNo(document.getId(), latestVersionNo).orElse(null);
+            if (previous != null) {
+                String delta = encode(TextOperation.diffLines(getContent(previous), text));
+                if (delta.length() < text.length()) {
+                    stored = delta;
+                    kind = KIND_DELTA;
+                }
+            }
+        }
+
+        DocumentVersion version = versionRepository.save(DocumentVersion.builder()
+                .document(document)
+                .versionNo(versionNo)
+                .contentHash(contentBlobService.put(stored))
+                .storageKind(kind)
+                .commitMessage(commitMessage)
+                .createdBy(createdBy)
+                .build());
+        if (KIND_DELTA.equals(kind)) {
+            // 下一次提交以本版本为基准求增量，直接命中缓存
+            cachePut(version.getId(), text);
+        }
+        return version;
+    }
+
+    /**
+     * 还原版本的完整内容
+     */
+    public String getContent(DocumentVersion version) {
+        if (!KIND_DELTA.equals(version.getStorageKind())) {
+            return contentBlobService.get(version.getContentHash());
+        }
+        String cached = cacheGet(version.getId());
+        if (cached != null) {
+            return cached;
+        }
+
+        Long documentId = version.getDocument().getId();
+        Integer keyframe = versionRepository.findKeyframeVersionNo(documentId, version.getVersionNo());
+        if (keyframe == null) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "版本 " + version.getVersionNo() + " 缺少关键帧，无法还原");
+        }
+        List<DocumentVersion> chain = versionRepository.findByDocumentIdAndVersionNoBetweenOrderByVersionNoAsc(
+                documentId, keyframe, version.getVersionNo());
+
+        // 从链上最近的已缓存版本开始，否则从关键帧开始
+        int start = 0;
+        String content = null;
+        for (int i = chain.size() - 1; i > 0 && content == null; i--) {
+            content = cacheGet(chain.get(i).getId());
+            start = i;
+        }
+        if (content == null) {
+            start = 0;
+            content = contentBlobService.get(chain.get(0).getContentHash());
+        }
+        for (int i = start + 1; i < chain.size(); i++) {
+            DocumentVersion step = chain.get(i);
+            String stored = contentBlobService.get(step.getContentHash());
+            content = KIND_DELTA.equals(step.getStorageKind()) ? decode(stored).apply(content) : stored;
+        }
+        cachePut(version.getId(), content);
+        return content;
+    }
+
+    private String encode(TextOperation operation) {
+        try {
+            return objectMapper.writeValueAsString(operation.toWire());
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "版本增量序列化失败");
+        }
+    }
+
+    private TextOperation decode(String delta) {
+        try {
+            return TextOperation.fromWire(objectMapper.readValue(delta, WIRE_TYPE));
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "版本增量解析失败");
+        }
+    }
+
+    private synchronized String cacheGet(Long versionId) {
+        return cache.get(versionId);
+    }
+
+    private synchronized void cachePut(Long versionId, String content) {
+        if (content.length() > cacheMaxChars) {
+            return;
+        }
+        String replaced = cache.put(versionId, content);
+        cachedChars += content.length() - (replaced == null ? 0 : replaced.length());
+        Iterator<Map.Entry<Long, String>> eldest = cache.entrySet().iterator();
+        while (cachedChars > cacheMaxChars && eldest.hasNext()) {
+            cachedChars -= eldest.next().getValue().length();
+            eldest.remove();
+        }
+    }
+}
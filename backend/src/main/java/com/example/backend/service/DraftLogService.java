@@ -0,0 +1,415 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+import com.example.backend.util.TextOperation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 草稿操作流
+ * 每个文档的草稿以 Redis Stream 追加记录（doc:{id}:drafts:log），每条记录只包含一次编辑：
+ * set（全量内容，旧客户端或草稿起点）、op（ot.js 格式增量）、clear（保存后清空）。
+ * 条数或最早记录的时长超过阈值时压缩：把已有记录折叠进快照哈希 doc:{id}:drafts 并裁剪流，
+ * 快照中 @id 字段记录已折叠到的流 ID。读取草稿 = 快照 + 之后该用户的记录。
+ * 客户端加入或重连时携带最后看到的流 ID，可只回放之后的记录。
+ */
+@Slf4j
+@Service
+public class DraftLogService {
+
+    public static final String KIND_SET = "set";
+    public static final String KIND_OP = "op";
+    public static final String KIND_CLEAR = "clear";
+
+    private static final long DRAFT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final String SNAPSHOT_ID_FIELD = "@id";
+    private static final String TIMESTAMP_SUFFIX = ":ts";
+    private static final String FIELD_USER = "u";
+    private static final String FIELD_KIND = "k";
+    private static final String FIELD_VALUE = "v";
+    private static final int MAX_READ_ATTEMPTS = 3;
+    private static final Pattern STREAM_ID = Pattern.compile("\\d{1,19}(-\\d{1,19})?");
+
+    /**
+     * 追加一条记录并续期流与快照，返回 {记录ID, 流长度, 最早记录ID}
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> APPEND_SCRIPT = new DefaultRedisScript<>(
+            "local id = redis.call('xadd', KEYS[1], '*', 'u', ARGV[1], 'k', ARGV[2], 'v', ARGV[3]) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[4]) redis.call('pexpire', KEYS[2], ARGV[4]) "
+                    + "local first = redis.call('xrange', KEYS[1], '-', '+', 'COUNT', 1) "
+                    + "return {id, tostring(redis.call('xlen', KEYS[1])), first[1][1]}",
+            List.class);
+
+    /**
+     * 快照未被其他节点改写时整体替换快照，并裁掉已折叠的记录
+     */
+    private static final RedisScript<Long> COMPACT_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('hget', KEYS[1], '@id') or '') ~= ARGV[1] then return 0 end "
+                    + "redis.call('del', KEYS[1]) redis.call('hset', KEYS[1], unpack(ARGV, 4)) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[3]) "
+                    + "redis.call('xtrim', KEYS[2], 'MINID', ARGV[2]) return 1",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final int compactMaxEntries;
+    private final long compactMaxAgeMillis;
+
+    public DraftLogService(StringRedisTemplate stringRedisTemplate,
+                           ObjectMapper objectMapper,
+                           @Value("${app.collab.draft-log.compact-max-entries:128}") int compactMaxEntries,
+                           @Value("${app.collab.draft-log.compact-max-age-seconds:120}") long compactMaxAgeSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.compactMaxEntries = compactMaxEntries;
+        this.compactMaxAgeMillis = TimeUnit.SECONDS.toMillis(compactMaxAgeSeconds);
+    }
+
+    /**
+     * 记录全量草稿内容，返回流 ID
+     */
+    public String saveDraft(Long documentId, Long userId, String content) {
+        if (documentId == null || userId == null || content == null) {
+            return null;
+        }
+        return append(documentId, userId, KIND_SET, content);
+    }
+
+    /**
+     * 记录一次增量编辑（调用方已按当前草稿校验过），返回流 ID
+     */
+    public String appendDelta(Long documentId, Long userId, TextOperation operation) {
+        if (documentId == null || userId == null || operation == null) {
+            return null;
+        }
+        try {
+            return append(documentId, userId, KIND_OP, objectMapper.writeValueAsString(operation.toWire()));
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "草稿操作序列化失败");
+        }
+    }
+
+    public void clearDraft(Long documentId, Long userId) {
+        if (documentId == null || userId == null) {
+            return;
+        }
+        append(documentId, userId, KIND_CLEAR, "");
+    }
+
+    public void clearAllDrafts(Long documentId) {
+        if (documentId == null) {
+            return;
+        }
+        stringRedisTemplate.delete(List.of(CollaborationCacheService.draftsKey(documentId),
+                CollaborationCacheService.draftLogKey(documentId)));
+    }
+
+    public String getDraft(Long documentId, Long userId) {
+        UserDraft draft = loadUserDraft(documentId, userId);
+        return draft == null ? null : draft.content();
+    }
+
+    public Long getDraftTtlSeconds(Long documentId, Long userId) {
+        UserDraft draft = loadUserDraft(documentId, userId);
+        if (draft == null) {
+            return null;
+        }
+        return TimeUnit.MILLISECONDS.toSeconds(draft.savedAt() + DRAFT_TTL_MILLIS - System.currentTimeMillis());
+    }
+
+    /**
+     * 当前流的最后一个 ID（客户端据此在重连时回放），无记录时返回快照 ID
+     */
+    public String getLastStreamId(Long documentId) {
+        if (documentId == null) {
+            return null;
+        }
+        List<MapRecord<String, Object, Object>> last = stringRedisTemplate.opsForStream()
+                .reverseRange(CollaborationCacheService.draftLogKey(documentId), Range.unbounded(), Limit.limit().count(1));
+        if (last != null && !last.isEmpty()) {
+            return last.get(0).getId().getValue();
+        }
+        Object snapshotId = stringRedisTemplate.opsForHash().get(CollaborationCacheService.draftsKey(documentId), SNAPSHOT_ID_FIELD);
+        return snapshotId == null ? null : snapshotId.toString();
+    }
+
+    /**
+     * 返回 fromId 之后的全部记录（按流顺序）；fromId 已被压缩裁掉或格式非法时返回 null，调用方改发快照
+     */
+    public List<Map<String, Object>> replaySince(Long documentId, String fromId) {
+        if (documentId == null || fromId == null || !isStreamId(fromId)) {
+            return null;
+        }
+        List<MapRecord<String, Object, Object>> records = readAfter(documentId, fromId);
+        // 读取流之后再检查快照：即使期间发生压缩，也能发现所需记录已被裁掉
+        Object snapshotId = stringRedisTemplate.opsForHash().get(CollaborationCacheService.draftsKey(documentId), SNAPSHOT_ID_FIELD);
+        if (snapshotId != null && compareIds(fromId, snapshotId.toString()) < 0) {
+            return null;
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", record.getId().getValue());
+            entry.put("userId", Long.valueOf(record.getValue().get(FIELD_USER).toString()));
+            String kind = record.getValue().get(FIELD_KIND).toString();
+            entry.put("kind", kind);
+            String value = record.getValue().get(FIELD_VALUE).toString();
+            if (KIND_OP.equals(kind)) {
+                entry.put("ops", parseWire(value));
+            } else if (KIND_SET.equals(kind)) {
+                entry.put("content", value);
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * 所有用户的当前草稿（快照 + 全部记录折叠）
+     */
+    public Map<Long, String> getAllDrafts(Long documentId) {
+        if (documentId == null) {
+            return Map.of();
+        }
+        Folded folded = fold(documentId);
+        Map<Long, String> result = new HashMap<>();
+        folded.contents().forEach((userId, content) -> {
+            if (!isExpired(folded.savedAt().get(userId))) {
+                result.put(userId, content);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 把当前所有记录折叠进快照并裁剪流
+     */
+    public void compact(Long documentId) {
+        String draftsKey = CollaborationCacheService.draftsKey(documentId);
+        String lockKey = draftsKey + ":compact:lock";
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, "1", 5, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            Folded folded = fold(documentId);
+            if (folded.lastId() == null) {
+                return;
+            }
+            List<String> args = new ArrayList<>();
+            args.add(folded.snapshotId() == null ? "" : folded.snapshotId());
+            args.add(nextId(folded.lastId()));
+            args.add(String.valueOf(DRAFT_TTL_MILLIS));
+            args.add(SNAPSHOT_ID_FIELD);
+            args.add(folded.lastId());
+            folded.contents().forEach((userId, content) -> {
+                Long savedAt = folded.savedAt().get(userId);
+                if (!isExpired(savedAt)) {
+                    args.add(userId.toString());
+                    args.add(content);
+                    args.add(userId + TIMESTAMP_SUFFIX);
+                    args.add(String.valueOf(savedAt));
+                }
+            });
+            Long replaced = stringRedisTemplate.execute(COMPACT_SCRIPT,
+                    List.of(draftsKey, CollaborationCacheService.draftLogKey(documentId)), args.toArray());
+            if (!Long.valueOf(1L).equals(replaced)) {
+                log.debug("文档 {} 草稿快照已被改写，跳过本次压缩", documentId);
+            }
+        } finally {
+            stringRedisTemplate.delete(lockKey);
+        }
+    }
+
+    private String append(Long documentId, Long userId, String kind, String value) {
+        List<?> result = stringRedisTemplate.execute(APPEND_SCRIPT,
+                List.of(CollaborationCacheService.draftLogKey(documentId), CollaborationCacheService.draftsKey(documentId)),
+                userId.toString(), kind, value, String.valueOf(DRAFT_TTL_MILLIS));
+        if (result == null || result.size() < 3) {
+            return null;
+        }
+        String id = result.get(0).toString();
+        long length = Long.parseLong(result.get(1).toString());
+        long oldest = idMillis(result.get(2).toString());
+        if (length > compactMaxEntries || System.currentTimeMillis() - oldest > compactMaxAgeMillis) {
+            compact(documentId);
+        }
+        return id;
+    }
+
+    private UserDraft loadUserDraft(Long documentId, Long userId) {
+        if (documentId == null || userId == null) {
+            return null;
+        }
+        List<Object> values;
+        List<MapRecord<String, Object, Object>> records;
+        int attempts = 0;
+        do {
+            values = stringRedisTemplate.opsForHash().multiGet(CollaborationCacheService.draftsKey(documentId),
+                    List.of(userId.toString(), userId + TIMESTAMP_SUFFIX, SNAPSHOT_ID_FIELD));
+            records = readAfter(documentId, (String) values.get(2));
+        } while (!snapshotUnchanged(documentId, (String) values.get(2)) && ++attempts < MAX_READ_ATTEMPTS);
+        String content = (String) values.get(0);
+        Long savedAt = values.get(1) == null ? null : Long.valueOf(values.get(1).toString());
+        String user = userId.toString();
+        for (MapRecord<String, Object, Object> record : records) {
+            if (!user.equals(record.getValue().get(FIELD_USER))) {
+                continue;
+            }
+            content = applyEntry(content, record);
+            savedAt = record.getId().getTimestamp();
+        }
+        if (content == null || isExpired(savedAt)) {
+            return null;
+        }
+        return new UserDraft(content, savedAt);
+    }
+
+    private Folded fold(Long documentId) {
+        Map<Object, Object> snapshot;
+        List<MapRecord<String, Object, Object>> records;
+        int attempts = 0;
+        do {
+            snapshot = stringRedisTemplate.opsForHash().entries(CollaborationCacheService.draftsKey(documentId));
+            records = readAfter(documentId, (String) snapshot.get(SNAPSHOT_ID_FIELD));
+        } while (!snapshotUnchanged(documentId, (String) snapshot.get(SNAPSHOT_ID_FIELD)) && ++attempts < MAX_READ_ATTEMPTS);
+        Map<Long, String> contents = new HashMap<>();
+        Map<Long, Long> savedAt = new HashMap<>();
+        String snapshotId = null;
+        for (Map.Entry<Object, Object> field : snapshot.entrySet()) {
+            String name = field.getKey().toString();
+            if (SNAPSHOT_ID_FIELD.equals(name)) {
+                snapshotId = field.getValue().toString();
+            } else if (name.endsWith(TIMESTAMP_SUFFIX)) {
+                savedAt.put(Long.valueOf(name.substring(0, name.length() - TIMESTAMP_SUFFIX.length())),
+                        Long.valueOf(field.getValue().toString()));
+            } else {
+                contents.put(Long.valueOf(name), field.getValue().toString());
+            }
+        }
+        String lastId = null;
+        for (MapRecord<String, Object, Object> record : records) {
+            Long userId = Long.valueOf(record.getValue().get(FIELD_USER).toString());
+            String content = applyEntry(contents.get(userId), record);
+            if (content == null) {
+                contents.remove(userId);
+            } else {
+                contents.put(userId, content);
+            }
+            savedAt.put(userId, record.getId().getTimestamp());
+            lastId = record.getId().getValue();
+        }
+        return new Folded(snapshotId, lastId, contents, savedAt);
+    }
+
+    /**
+     * 快照与流分两次读取，期间若发生压缩则快照 ID 会变化，需要重读
+     */
+    private boolean snapshotUnchanged(Long documentId, String snapshotId) {
+        Object current = stringRedisTemplate.opsForHash().get(CollaborationCacheService.draftsKey(documentId), SNAPSHOT_ID_FIELD);
+        return Objects.equals(current, snapshotId);
+    }
+
+    private String applyEntry(String content, MapRecord<String, Object, Object> record) {
+        String kind = record.getValue().get(FIELD_KIND).toString();
+        String value = record.getValue().get(FIELD_VALUE).toString();
+        if (KIND_SET.equals(kind)) {
+            return value;
+        }
+        if (KIND_CLEAR.equals(kind) || content == null) {
+            return null;
+        }
+        try {
+            return TextOperation.fromWire(parseWire(value)).apply(content);
+        } catch (BusinessException e) {
+            // 记录在写入前已校验，出现不一致时丢弃该用户草稿
+            log.warn("草稿记录 {} 无法应用: {}", record.getId().getValue(), e.getMessage());
+            return null;
+        }
+    }
+
+    private List<MapRecord<String, Object, Object>> readAfter(Long documentId, String fromId) {
+        Range<String> range = fromId == null || fromId.isEmpty()
+                ? Range.unbounded()
+                : Range.of(Range.Bound.exclusive(fromId), Range.Bound.unbounded());
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(CollaborationCacheService.draftLogKey(documentId), range);
+        return records == null ? List.of() : records;
+    }
+
+    private List<Object> parseWire(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<List<Object>>() { });
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "草稿操作解析失败");
+        }
+    }
+
+    private boolean isExpired(Long savedAt) {
+        return savedAt == null || savedAt + DRAFT_TTL_MILLIS <= System.currentTimeMillis();
+    }
+
+    static int compareIds(String left, String right) {
+        int byMillis = Long.compare(idMillis(left), idMillis(right));
+        return byMillis != 0 ? byMillis : Long.compare(idSequence(left), idSequence(right));
+    }
+
+    /**
+     * 是否为合法的流 ID（毫秒数[-序号]），客户端携带的 ID 须先经此校验
+     */
+    static boolean isStreamId(String id) {
+        if (!STREAM_ID.matcher(id).matches()) {
+            return false;
+        }
+        try {
+            idMillis(id);
+            idSequence(id);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String nextId(String id) {
+        return idMillis(id) + "-" + (idSequence(id) + 1);
+    }
+
+    private static long idMillis(String id) {
+        int split = id.indexOf('-');
+        return Long.parseLong(split < 0 ? id : id.substring(0, split));
+    }
+
+    private static long idSequence(String id) {
+        int split = id.indexOf('-');
+        return split < 0 ? 0L : Long.parseLong(id.substring(split + 1));
+    }
+
+    private record UserDraft(String content, long savedAt) {
+    }
+
+    private record Folded(String snapshotId, String lastId, Map<Long, String> contents, Map<Long, Long> savedAt) {
+    }
+}
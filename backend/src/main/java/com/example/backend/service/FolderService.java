@@ -34,6 +34,7 @@ public class FolderService {
     private final DocumentRepository documentRepository;
     private final FileStorageService fileStorageService;
     private final CollaborationCacheService collaborationCacheService;
+    private final DocumentAclCache documentAclCache;
 
     private static final String STATUS_DELETED = "DELETED";
     private static final String STATUS_ACTIVE = "ACTIVE";
@@ -103,6 +104,9 @@ public class FolderService {
             DocumentFolder root = legacyRoots.get(0);
             if (root.getStatus() == null) {
                 root.setStatus(STATUS_ACTIVE);
+                // 根目录恢复为有效状态后其下文档的可访问性随之变化，缓存的拒绝结果需要失效
+                documentRepository.findByFolderId(root.getId())
+                        .forEach(document -> documentAclCache.invalidateDocument(document.getId()));
             }
             return folderRepository.save(root);
         }
@@ -164,6 +168,7 @@ public class FolderService {
             doc.setStatus(STATUS_DELETED);
             doc.setVisibility(STATUS_PRIVATE);
             collaborationCacheService.clearDocumentState(doc.getId());
+            documentAclCache.invalidateDocument(doc.getId());
         });
 
         documentRepository.saveAll(documents);
@@ -179,6 +184,7 @@ public class FolderService {
                     fileStorageService.deleteDocumentStorage(document.getStoragePath());
                 }
                 collaborationCacheService.clearDocumentState(document.getId());
+                documentAclCache.invalidateDocument(document.getId());
                 documentRepository.delete(document);
             }
         }
@@ -11,7 +11,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,7 +28,7 @@ public class FriendMessageService {
     private final FriendMessageRepository messageRepository;
     private final UserFriendRepository friendRepository;
     private final UserService userService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final DocumentBroadcaster documentBroadcaster;
     
     /**
      * 发送消息给好友
@@ -74,7 +73,7 @@ public class FriendMessageService {
         );
         
         // 通过 WebSocket 发送到用户的个人队列
-        messagingTemplate.convertAndSendToUser(
+        documentBroadcaster.toUser(
                 receiver.getEmail(),
                 "/queue/notifications",
                 notification
@@ -0,0 +1,323 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.websocket.AppliedOperation;
+import com.example.backend.dto.websocket.CatchUp;
+import com.example.backend.dto.websocket.DocumentOperation;
+import com.example.backend.entity.Document;
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+import com.example.backend.repository.DocumentRepository;
+import com.example.backend.util.TextOperation;
+import com.example.backend.util.ThreeWayMerge;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 操作变换（OT）引擎
+ * 为每个文档的确认态维护单调递增的修订号，把基于旧修订号提交的操作
+ * 依次与其后已确认的操作做变换后再应用，并发保存不再互相覆盖或被拒绝。
+ * 同一文档的提交经 {@link DocumentSequencer} 串行执行，不再依赖保存锁；
+ * 集群模式下多个节点可能同时处理同一文档，此时在邮箱内再持有 Redis 保存锁。
+ * 每条操作连同逆操作写入日志，按用户记录撤销/重做栈，服务端撤销只需变换逆操作，不必重发全文。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OperationTransformService {
+
+    private static final long CLUSTER_LOCK_WAIT_MILLIS = 5000L;
+    private static final long CLUSTER_LOCK_RETRY_INTERVAL_MILLIS = 10L;
+    private static final int MAX_HISTORY_DEPTH = 100;
+    private static final String UNDO_STACK = "undo:";
+    private static final String REDO_STACK = "redo:";
+
+    /**
+     * 提交的来源，决定写入哪个撤销/重做栈
+     */
+    private enum History { EDIT, UNDO, REDO }
+
+    private final CollaborationCacheService collaborationCacheService;
+    private final DocumentRepository documentRepository;
+    private final ObjectMapper objectMapper;
+    private final DocumentSequencer documentSequencer;
+    private final ClusterMessageBus clusterMessageBus;
+
+    /**
+     * 提交基于 baseRevision 的增量操作（为空时视为基于最新修订号）
+     */
+    public AppliedOperation submit(Long documentId, Long userId, Long baseRevision, DocumentOperation operation) {
+        return documentSequencer.call(documentId, () -> withClusterLock(documentId, () -> {
+            long current = collaborationCacheService.getRevision(documentId);
+            long base = baseRevision == null ? current : baseRevision;
+            if (base > current) {
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, "修订号 " + base + " 超前于服务端 " + current + "，请重新同步");
+            }
+            List<TextOperation> concurrent = getOperationsSince(documentId, base);
+            String confirmed = loadConfirmed(documentId);
+
+            int baseLength = concurrent.isEmpty() ? confirmed.length() : concurrent.get(0).getBaseLength();
+            TextOperation textOperation = TextOperation.fromDocumentOperation(operation, baseLength);
+            for (TextOperation applied : concurrent) {
+                textOperation = TextOperation.transform(textOperation, applied)[0];
+            }
+            return commit(documentId, userId, base, current, confirmed, textOperation, History.EDIT);
+        }));
+    }
+
+    /**
+     * 提交全量内容（旧客户端/REST 保存），转换为相对最新确认态的操作后应用
+     */
+    public AppliedOperation submitContent(Long documentId, Long userId, String content) {
+        return submitContent(documentId, userId, null, content);
+    }
+
+    /**
+     * 提交基于 baseRevision 的全量内容：基准之后已有其他修改时，以基准文本为参照与最新确认态三方合并，
+     * 只有真正重叠的修改作为冲突返回（冲突区域保留确认态内容）。未携带基准修订号时直接覆盖为该内容
+     */
+    public AppliedOperation submitContent(Long documentId, Long userId, Long baseRevision, String content) {
+        return documentSequencer.call(documentId, () -> withClusterLock(documentId, () -> {
+            long current = collaborationCacheService.getRevision(documentId);
+            String confirmed = loadConfirmed(documentId);
+            if (baseRevision == null || baseRevision == current) {
+                return commit(documentId, userId, current, current, confirmed, TextOperation.diff(confirmed, content), History.EDIT);
+            }
+            if (baseRevision > current) {
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, "修订号 " + baseRevision + " 超前于服务端 " + current + "，请重新同步");
+            }
+            String base = reconstruct(documentId, baseRevision, confirmed);
+            ThreeWayMerge.Result merged = ThreeWayMerge.merge(base, content, confirmed);
+            AppliedOperation applied = commit(documentId, userId, baseRevision, current, confirmed,
+                    TextOperation.diff(confirmed, merged.getContent()), History.EDIT);
+            if (!merged.isClean()) {
+                applied.setConflicts(merged.getConflicts());
+            }
+            return applied;
+        }));
+    }
+
+    /**
+     * 撤销该用户最近一次仍可撤销的操作：取其逆操作，与之后其他人的操作依次变换后作为新操作提交，
+     * 不会覆盖协作者在此之后的修改
+     */
+    public AppliedOperation undo(Long documentId, Long userId) {
+        return revert(documentId, userId, History.UNDO);
+    }
+
+    /**
+     * 重做该用户最近一次撤销（撤销之后又有新编辑时重做栈已清空）
+     */
+    public AppliedOperation redo(Long documentId, Long userId) {
+        return revert(documentId, userId, History.REDO);
+    }
+
+    private AppliedOperation revert(Long documentId, Long userId, History kind) {
+        return documentSequencer.call(documentId, () -> withClusterLock(documentId, () -> {
+            String stack = (kind == History.UNDO ? UNDO_STACK : REDO_STACK) + userId;
+            List<Long> history = collaborationCacheService.getHistory(documentId, stack);
+            if (history.isEmpty()) {
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, kind == History.UNDO ? "没有可撤销的操作" : "没有可重做的操作");
+            }
+            long target = history.remove(history.size() - 1);
+            collaborationCacheService.putHistory(documentId, stack, history);
+
+            long current = collaborationCacheService.getRevision(documentId);
+            Map<Long, String> encoded = collaborationCacheService.getOperationsSince(documentId, target - 1);
+            if (encoded == null || encoded.isEmpty()) {
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, "修订号 " + target + " 已超出历史窗口，无法撤销");
+            }
+            List<String> entries = new ArrayList<>(encoded.values());
+            TextOperation inverse = decodeInverse(entries.get(0));
+            if (inverse == null) {
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, "修订号 " + target + " 缺少逆操作，无法撤销");
+            }
+            for (int i = 1; i < entries.size(); i++) {
+                inverse = TextOperation.transform(inverse, decode(entries.get(i)))[0];
+            }
+            return commit(documentId, userId, current, current, loadConfirmed(documentId), inverse, kind);
+        }));
+    }
+
+    /**
+     * 追赶同步：客户端持有 lastRevision 时只返回之后的操作；
+     * 未携带、超前于服务端或已超出保留窗口时返回确认态快照
+     */
+    public CatchUp catchUp(Long documentId, Long lastRevision) {
+        return documentSequencer.call(documentId, () -> {
+            long current = collaborationCacheService.getRevision(documentId);
+            if (lastRevision != null && lastRevision <= current) {
+                Map<Long, String> encoded = collaborationCacheService.getOperationsSince(documentId, lastRevision);
+                if (encoded != null) {
+                    List<AppliedOperation> operations = new ArrayList<>(encoded.size());
+                    encoded.forEach((revision, entry) -> operations.add(AppliedOperation.builder()
+                            .revision(revision)
+                            .baseRevision(revision - 1)
+                            .ops(decode(entry).toWire())
+                            .build()));
+                    return CatchUp.builder()
+                            .mode(CatchUp.MODE_OPS)
+                            .fromRevision(lastRevision)
+                            .revision(current)
+                            .operations(operations)
+                            .build();
+                }
+            }
+            return CatchUp.builder()
+                    .mode(CatchUp.MODE_SNAPSHOT)
+                    .fromRevision(lastRevision)
+                    .revision(current)
+                    .content(loadConfirmed(documentId))
+                    .build();
+        });
+    }
+
+    /**
+     * 返回 fromRevision 之后已确认的操作，超出保留窗口时抛出异常
+     */
+    public List<TextOperation> getOperationsSince(Long documentId, long fromRevision) {
+        Map<Long, String> encoded = collaborationCacheService.getOperationsSince(documentId, fromRevision);
+        if (encoded == null) {
+            throw new BusinessException(ErrorCode.INVALID_OPERATION, "基准修订号 " + fromRevision + " 已过期，请重新同步");
+        }
+        List<TextOperation> operations = new ArrayList<>(encoded.size());
+        encoded.values().forEach(entry -> operations.add(decode(entry)));
+        return operations;
+    }
+
+    /**
+     * 从最新确认态依次应用逆操作，还原 baseRevision 时的文本；超出保留窗口或缺少逆操作时抛出异常
+     */
+    private String reconstruct(Long documentId, long baseRevision, String confirmed) {
+        Map<Long, String> encoded = collaborationCacheService.getOperationsSince(documentId, baseRevision);
+        if (encoded == null) {
+            throw new BusinessException(ErrorCode.INVALID_OPERATION, "基准修订号 " + baseRevision + " 已过期，请重新同步");
+        }
+        List<String> entries = new ArrayList<>(encoded.values());
+        String text = confirmed;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            TextOperation inverse = decodeInverse(entries.get(i));
+            if (inverse == null) {
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, "基准修订号 " + baseRevision + " 无法还原，请重新同步");
+            }
+            text = inverse.apply(text);
+        }
+        return text;
+    }
+
+    private AppliedOperation commit(Long documentId, Long userId, long baseRevision, long currentRevision,
+                                    String confirmed, TextOperation operation, History kind) {
+        String content = operation.apply(confirmed);
+        long revision = currentRevision;
+        if (!operation.isNoop()) {
+            revision = currentRevision + 1;
+            collaborationCacheService.saveConfirmed(documentId, content);
+            collaborationCacheService.appendOperation(documentId, revision,
+                    encode(userId, operation, operation.invert(confirmed)));
+            recordHistory(documentId, userId, revision, kind);
+        }
+        return AppliedOperation.builder()
+                .revision(revision)
+                .baseRevision(baseRevision)
+                .ops(operation.toWire())
+                .content(content)
+                .build();
+    }
+
+    /**
+     * 编辑与重做压入撤销栈（新编辑同时清空重做栈），撤销压入重做栈
+     */
+    private void recordHistory(Long documentId, Long userId, long revision, History kind) {
+        if (userId == null) {
+            return;
+        }
+        long oldest = revision - collaborationCacheService.getOperationLogSize();
+        switch (kind) {
+            case EDIT -> collaborationCacheService.pushHistory(documentId, UNDO_STACK + userId, revision,
+                    REDO_STACK + userId, MAX_HISTORY_DEPTH, oldest);
+            case UNDO -> collaborationCacheService.pushHistory(documentId, REDO_STACK + userId, revision,
+                    null, MAX_HISTORY_DEPTH, oldest);
+            case REDO -> collaborationCacheService.pushHistory(documentId, UNDO_STACK + userId, revision,
+                    null, MAX_HISTORY_DEPTH, oldest);
+        }
+    }
+
+    private String loadConfirmed(Long documentId) {
+        String confirmed = collaborationCacheService.getConfirmed(documentId);
+        if (confirmed != null) {
+            return confirmed;
+        }
+        String content = documentRepository.findById(documentId)
+                .map(Document::getContent)
+                .orElse("");
+        content = content == null ? "" : content;
+        collaborationCacheService.saveConfirmed(documentId, content);
+        return content;
+    }
+
+    private <T> T withClusterLock(Long documentId, Supplier<T> task) {
+        if (!clusterMessageBus.isEnabled()) {
+            return task.get();
+        }
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + CLUSTER_LOCK_WAIT_MILLIS;
+        while (!collaborationCacheService.acquireSaveLock(documentId, token)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new BusinessException(ErrorCode.TOO_MANY_REQUESTS, "文档繁忙，请稍后重试");
+            }
+            try {
+                Thread.sleep(CLUSTER_LOCK_RETRY_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "保存被中断");
+            }
+        }
+        try {
+            return task.get();
+        } finally {
+            collaborationCacheService.releaseSaveLock(documentId, token);
+        }
+    }
+
+    /**
+     * 日志条目格式：userId:操作\n逆操作（逆操作用于还原历史文本，旧条目可能没有）
+     */
+    private String encode(Long userId, TextOperation operation, TextOperation inverse) {
+        try {
+            return userId + ":" + objectMapper.writeValueAsString(operation.toWire())
+                    + "\n" + objectMapper.writeValueAsString(inverse.toWire());
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "操作序列化失败");
+        }
+    }
+
+    private TextOperation decode(String entry) {
+        int start = entry.indexOf(':') + 1;
+        int end = entry.indexOf('\n', start);
+        return parse(end < 0 ? entry.substring(start) : entry.substring(start, end));
+    }
+
+    private TextOperation decodeInverse(String entry) {
+        int separator = entry.indexOf('\n');
+        return separator < 0 ? null : parse(entry.substring(separator + 1));
+    }
+
+    private TextOperation parse(String json) {
+        try {
+            return TextOperation.fromWire(objectMapper.readValue(json, new TypeReference<List<Object>>() { }));
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "操作反序列化失败");
+        }
+    }
+}
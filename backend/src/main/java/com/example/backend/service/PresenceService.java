@@ -0,0 +1,294 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.websocket.WebSocketMessage;
+import com.example.backend.entity.User;
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+import com.example.backend.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 在线状态（心跳）
+ * 在线成员保存在按最后心跳时间打分的有序集合中。本节点的会话收到任意 STOMP 帧（含心跳帧）时
+ * 只在内存中记录活动时间，由定时任务批量写回 Redis；清扫任务移除超时成员并广播 LEAVE，
+ * 节点宕机留下的“幽灵用户”也会在超时后被清理，最后一人超时时同样清空文档协作状态。
+ * 在线用户摘要（名册）随加入/离开增量维护在 Redis 哈希中，加入时无需查询全部在线用户。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PresenceService {
+
+    private final CollaborationCacheService collaborationCacheService;
+    private final CursorAggregator cursorAggregator;
+    private final DocumentBroadcaster documentBroadcaster;
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+
+    // sessionId -> 本节点会话的在线信息
+    private final Map<String, SessionPresence> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 会话加入文档：写入心跳、名册条目与会话成员记录，返回当前在线用户
+     */
+    public Set<Long> join(Long documentId, User user, String sessionId) {
+        collaborationCacheService.addOnlineUser(documentId, user.getId(), toJson(summary(user)), sessionId);
+        return collaborationCacheService.getOnlineUsers(documentId);
+    }
+
+    /**
+     * 在线用户名册：从 Redis 名册读取，缺失的条目（如升级前加入的用户）查库补齐并回写
+     */
+    public List<Map<String, Object>> getRoster(Long documentId, Set<Long> onlineUsers) {
+        if (onlineUsers == null || onlineUsers.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, String> entries = collaborationCacheService.getRosterEntries(documentId, onlineUsers);
+        List<Map<String, Object>> roster = new ArrayList<>(onlineUsers.size());
+        entries.values().forEach(json -> roster.add(fromJson(json)));
+        if (entries.size() < onlineUsers.size()) {
+            Set<Long> missing = new HashSet<>(onlineUsers);
+            missing.removeAll(entries.keySet());
+            Map<Long, String> backfill = new HashMap<>();
+            for (User user : userRepository.findAllById(missing)) {
+                Map<String, Object> summary = summary(user);
+                roster.add(summary);
+                backfill.put(user.getId(), toJson(summary));
+            }
+            collaborationCacheService.putRosterEntries(documentId, backfill);
+        }
+        return roster;
+    }
+
+    /**
+     * 用户资料（用户名、头像）变更后改写其所在文档的名册条目
+     */
+    public void refreshRoster(User user) {
+        if (user != null && user.getId() != null) {
+            collaborationCacheService.updateRosterEntry(user.getId(), toJson(summary(user)));
+        }
+    }
+
+    /**
+     * 名册中的用户摘要
+     */
+    public Map<String, Object> summary(User user) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("id", user.getId());
+        summary.put("username", user.getUsername());
+        summary.put("avatarUrl", user.getAvatarUrl() == null ? "" : user.getAvatarUrl());
+        return summary;
+    }
+
+    /**
+     * 会话加入文档后开始跟踪心跳（同一会话可同时加入多个文档）
+     */
+    public void track(String sessionId, Long documentId, Long userId) {
+        if (sessionId != null && documentId != null && userId != null) {
+            sessions.compute(sessionId, (key, presence) -> {
+                SessionPresence target = presence != null && presence.userId == userId ? presence : new SessionPresence(userId);
+                target.add(documentId);
+                return target;
+            });
+        }
+    }
+
+    /**
+     * 会话离开单个文档，返回该会话此前是否加入了该文档
+     */
+    public boolean untrack(String sessionId, Long documentId) {
+        if (sessionId == null || documentId == null) {
+            return false;
+        }
+        boolean[] removed = {false};
+        sessions.computeIfPresent(sessionId, (key, presence) -> {
+            removed[0] = presence.remove(documentId);
+            return presence.isEmpty() ? null : presence;
+        });
+        return removed[0];
+    }
+
+    /**
+     * 会话断开：停止跟踪并返回其加入的全部文档，未加入任何文档时返回 null
+     */
+    public TrackedSession untrack(String sessionId) {
+        SessionPresence presence = sessionId == null ? null : sessions.remove(sessionId);
+        return presence == null ? null : new TrackedSession(presence.userId, presence.documents());
+    }
+
+    /**
+     * 记录会话活动（入站消息或心跳帧），只更新内存时间戳
+     */
+    public void touch(String sessionId) {
+        SessionPresence presence = sessionId == null ? null : sessions.get(sessionId);
+        if (presence != null) {
+            presence.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 把仍在活动的本地会话心跳批量写回 Redis
+     */
+    @Scheduled(fixedRateString = "${app.collab.presence.refresh-ms:10000}")
+    public void refresh() {
+        long cutoff = System.currentTimeMillis() - collaborationCacheService.getPresenceTtlMillis();
+        Map<Long, Map<Long, Long>> heartbeats = new HashMap<>();
+        sessions.values().forEach(presence -> {
+            long seenAt = presence.lastSeen;
+            if (seenAt >= cutoff) {
+                for (long documentId : presence.documents()) {
+                    heartbeats.computeIfAbsent(documentId, id -> new HashMap<>())
+                            .merge(presence.userId, seenAt, Math::max);
+                }
+            }
+        });
+        collaborationCacheService.touchOnlineUsers(heartbeats);
+    }
+
+    /**
+     * 清扫心跳超时的成员并广播 LEAVE（各节点都会执行，脚本保证每个成员只被移除一次）
+     */
+    @Scheduled(fixedRateString = "${app.collab.presence.sweep-ms:10000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - collaborationCacheService.getPresenceTtlMillis();
+        for (Long documentId : collaborationCacheService.getPresenceDocuments()) {
+            try {
+                Set<Long> stale = collaborationCacheService.removeStaleUsers(documentId, cutoff);
+                if (stale.isEmpty()) {
+                    continue;
+                }
+                Set<Long> remaining = collaborationCacheService.getOnlineUsers(documentId);
+                stale.forEach(userId -> broadcastLeave(documentId, userId, remaining));
+                if (remaining.isEmpty()) {
+                    log.info("文档 {} 在线用户均已超时，已清理缓存", documentId);
+                }
+            } catch (RuntimeException e) {
+                log.warn("清扫文档 {} 在线状态失败: {}", documentId, e.getMessage());
+            }
+        }
+    }
+
+    private void broadcastLeave(Long documentId, Long userId, Set<Long> remaining) {
+        cursorAggregator.remove(documentId, userId);
+        String nickname = userRepository.findById(userId).map(User::getUsername).orElse("Unknown");
+        WebSocketMessage message = WebSocketMessage.builder()
+                .type("LEAVE")
+                .documentId(documentId)
+                .userId(userId)
+                .nickname(nickname)
+                .timestamp(System.currentTimeMillis())
+                .data(Map.of(
+                        "userId", userId,
+                        "onlineUsers", remaining,
+                        "reason", "timeout"
+                ))
+                .build();
+        documentBroadcaster.toDocument(documentId, message);
+        log.info("用户 {} 心跳超时，已从文档 {} 移除", nickname, documentId);
+    }
+
+    private String toJson(Map<String, Object> summary) {
+        try {
+            return objectMapper.writeValueAsString(summary);
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "在线名册序列化失败");
+        }
+    }
+
+    private Map<String, Object> fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<LinkedHashMap<String, Object>>() { });
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "在线名册解析失败");
+        }
+    }
+
+    /**
+     * 已断开会话的用户及其加入过的文档
+     */
+    public static final class TrackedSession {
+        private final long userId;
+        private final long[] documentIds;
+
+        private TrackedSession(long userId, long[] documentIds) {
+            this.userId = userId;
+            this.documentIds = documentIds;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public long[] getDocumentIds() {
+            return documentIds;
+        }
+    }
+
+    /**
+     * 会话的在线信息：加入的文档保存在紧凑的 long 数组中（通常只有一两个，线性查找即可）
+     */
+    private static final class SessionPresence {
+        private final long userId;
+        private long[] documentIds = new long[2];
+        private int size;
+        private volatile long lastSeen = System.currentTimeMillis();
+
+        private SessionPresence(long userId) {
+            this.userId = userId;
+        }
+
+        synchronized void add(long documentId) {
+            if (indexOf(documentId) >= 0) {
+                return;
+            }
+            if (size == documentIds.length) {
+                documentIds = Arrays.copyOf(documentIds, size << 1);
+            }
+            documentIds[size++] = documentId;
+        }
+
+        synchronized boolean remove(long documentId) {
+            int index = indexOf(documentId);
+            if (index < 0) {
+                return false;
+            }
+            documentIds[index] = documentIds[--size];
+            return true;
+        }
+
+        synchronized boolean isEmpty() {
+            return size == 0;
+        }
+
+        synchronized long[] documents() {
+            return Arrays.copyOf(documentIds, size);
+        }
+
+        private int indexOf(long documentId) {
+            for (int i = 0; i < size; i++) {
+                if (documentIds[i] == documentId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.backend.service;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import com.example.backend.entity.User;
+import com.example.backend.repository.UserRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * WebSocket 会话用户缓存
+ * 在 STOMP CONNECT 时解析一次用户，之后同一用户的所有会话消息直接读取缓存，
+ * 不再每条消息查询数据库。资料修改、封禁/解封时刷新（同时改写在线名册条目），最后一个会话断开时移除。
+ * 集群模式下其他节点收到通知后丢弃缓存，下一条消息时重新加载。
+ */
+@Slf4j
+@Service
+public class SessionUserCache {
+
+    private static final String STATUS_ACTIVE = "ACTIVE";
+    private static final String KIND_EVICT = "session-user";
+
+    private final UserRepository userRepository;
+    private final ClusterMessageBus clusterMessageBus;
+    private final PresenceService presenceService;
+
+    // email -> 用户快照
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    // email -> 该用户的 sessionId 集合
+    private final Map<String, Set<String>> userSessions = new ConcurrentHashMap<>();
+
+    // sessionId -> email
+    private final Map<String, String> sessionEmails = new ConcurrentHashMap<>();
+
+    public SessionUserCache(UserRepository userRepository, ClusterMessageBus clusterMessageBus,
+                            PresenceService presenceService) {
+        this.userRepository = userRepository;
+        this.clusterMessageBus = clusterMessageBus;
+        this.presenceService = presenceService;
+        clusterMessageBus.register(KIND_EVICT, users::remove);
+    }
+
+    /**
+     * CONNECT 时注册会话并加载用户
+     */
+    public User register(String sessionId, String email) {
+        if (sessionId == null || email == null) {
+            return null;
+        }
+        sessionEmails.put(sessionId, email);
+        userSessions.compute(email, (key, sessions) -> {
+            Set<String> target = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            target.add(sessionId);
+            return target;
+        });
+        return load(email);
+    }
+
+    /**
+     * 断开时注销会话，用户没有其他会话时移除缓存
+     */
+    public void unregister(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        String email = sessionEmails.remove(sessionId);
+        if (email == null) {
+            return;
+        }
+        userSessions.computeIfPresent(email, (key, sessions) -> {
+            sessions.remove(sessionId);
+            if (sessions.isEmpty()) {
+                users.remove(email);
+                return null;
+            }
+            return sessions;
+        });
+    }
+
+    /**
+     * 解析消息发送者；用户不存在或已被禁用时返回 null
+     */
+    public User resolve(Principal principal) {
+        if (principal == null) {
+            return null;
+        }
+        User user = users.get(principal.getName());
+        if (user == null) {
+            user = load(principal.getName());
+        }
+        return user != null && STATUS_ACTIVE.equals(user.getStatus()) ? user : null;
+    }
+
+    /**
+     * 按会话解析用户（断开事件中 Principal 可能已不可用）
+     */
+    public User resolveSession(String sessionId) {
+        String email = sessionId == null ? null : sessionEmails.get(sessionId);
+        return email == null ? null : users.get(email);
+    }
+
+    /**
+     * 用户资料或状态变更后刷新缓存（仅对在线用户生效），并改写其所在文档的名册条目
+     */
+    public void refresh(User user) {
+        if (user == null || user.getEmail() == null) {
+            return;
+        }
+        users.computeIfPresent(user.getEmail(), (key, cached) -> user);
+        clusterMessageBus.publishToOthers(KIND_EVICT, user.getEmail());
+        presenceService.refreshRoster(user);
+    }
+
+    /**
+     * 用户被删除时移除缓存，后续消息将重新查询并被拒绝
+     */
+    public void evict(String email) {
+        if (email != null) {
+            users.remove(email);
+            clusterMessageBus.publishToOthers(KIND_EVICT, email);
+        }
+    }
+
+    private User load(String email) {
+        User user = userRepository.findByEmail(email).orElse(null);
+        if (user != null && userSessions.containsKey(email)) {
+            users.put(email, user);
+        }
+        return user;
+    }
+}
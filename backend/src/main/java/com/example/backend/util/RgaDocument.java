@@ -0,0 +1,484 @@
+package com.example.backend.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+
+/**
+ * 基于 RGA 的序列 CRDT 副本
+ * 每个字符是一个带唯一 ID（clientId, clock）与 Lamport 时间戳的元素，插入时记录左侧的 origin，
+ * 删除只打墓碑标记。任意顺序、重复地合并同一批更新后各副本收敛到相同文本。
+ * 更新与状态向量均使用紧凑的 varint 二进制编码。
+ */
+public final class RgaDocument {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte OP_INSERT = 0;
+    private static final byte OP_DELETE = 1;
+    /**
+     * 暂存区上限：依赖迟迟不到（如 clock 跳号）的操作永远无法合并，不能无限堆积
+     */
+    static final int MAX_PENDING = 1024;
+
+    /**
+     * 文本元素（链表节点）
+     */
+    private static final class Item {
+        private final int client;
+        private final int clock;
+        private final long lamport;
+        private final char value;
+        private boolean deleted;
+        private Item prev;
+        private Item next;
+
+        private Item(int client, int clock, long lamport, char value) {
+            this.client = client;
+            this.clock = clock;
+            this.lamport = lamport;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 一次更新中的单个操作：插入一段连续文本，或删除若干元素
+     */
+    private static final class Op {
+        private final byte kind;
+        private final int client;
+        private final int clock;
+        private final long lamport;
+        private final int originClient;
+        private final int originClock;
+        private final String text;
+        private final int[] ranges;
+
+        private Op(byte kind, int client, int clock, long lamport, int originClient, int originClock,
+                   String text, int[] ranges) {
+            this.kind = kind;
+            this.client = client;
+            this.clock = clock;
+            this.lamport = lamport;
+            this.originClient = originClient;
+            this.originClock = originClock;
+            this.text = text;
+            this.ranges = ranges;
+        }
+
+        /**
+         * 占用的 clock 数：插入每个字符一个，删除整体一个
+         */
+        private int span() {
+            return kind == OP_INSERT ? text.length() : 1;
+        }
+
+        private boolean hasOrigin() {
+            return originClock >= 0;
+        }
+    }
+
+    private final Item head = new Item(-1, -1, -1, '\0');
+    private final Map<Long, Item> items = new HashMap<>();
+    private final Map<Integer, Integer> stateVector = new HashMap<>();
+    private final Map<Integer, TreeMap<Integer, Op>> log = new HashMap<>();
+    private final List<Op> pending = new ArrayList<>();
+    private long maxLamport;
+    private int length;
+
+    /**
+     * 当前可见文本
+     */
+    public String getText() {
+        StringBuilder builder = new StringBuilder(length);
+        for (Item item = head.next; item != null; item = item.next) {
+            if (!item.deleted) {
+                builder.append(item.value);
+            }
+        }
+        return builder.toString();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 是否存在因依赖缺失而暂未合并的操作
+     */
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * 合并一个二进制更新，重复或乱序到达的操作会被去重或暂存
+     */
+    public void applyUpdate(byte[] update) {
+        for (Op op : decodeUpdate(update)) {
+            if (integrate(op)) {
+                drainPending();
+            } else if (!isKnown(op)) {
+                if (pending.size() >= MAX_PENDING) {
+                    throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 待合并操作过多，请重新同步");
+                }
+                pending.add(op);
+            }
+        }
+    }
+
+    /**
+     * 在可见位置 index 插入文本，返回对应的二进制更新
+     * 按位置线性定位，服务端仅用于初始化种子内容，日常编辑由客户端生成更新。
+     */
+    public byte[] insert(int clientId, int index, String text) {
+        if (index < 0 || index > length) {
+            throw new BusinessException(ErrorCode.INVALID_OPERATION, "插入位置越界: " + index);
+        }
+        if (text == null || text.isEmpty()) {
+            return encodeOps(List.of());
+        }
+        Item origin = index == 0 ? null : visibleItem(index - 1);
+        Op op = new Op(OP_INSERT, clientId, nextClock(clientId), maxLamport + 1,
+                origin == null ? 0 : origin.client, origin == null ? -1 : origin.clock, text, null);
+        integrate(op);
+        return encodeOps(List.of(op));
+    }
+
+    /**
+     * 删除可见位置 [index, index + count) 的文本，返回对应的二进制更新
+     */
+    public byte[] delete(int clientId, int index, int count) {
+        if (index < 0 || count < 0 || index + count > length) {
+            throw new BusinessException(ErrorCode.INVALID_OPERATION, "删除范围越界: " + index + "+" + count);
+        }
+        if (count == 0) {
+            return encodeOps(List.of());
+        }
+        List<Integer> ranges = new ArrayList<>();
+        Item item = visibleItem(index);
+        int remaining = count;
+        while (remaining > 0) {
+            if (!item.deleted) {
+                int size = ranges.size();
+                if (size >= 3 && ranges.get(size - 3) == item.client
+                        && ranges.get(size - 2) + ranges.get(size - 1) == item.clock) {
+                    ranges.set(size - 1, ranges.get(size - 1) + 1);
+                } else {
+                    ranges.add(item.client);
+                    ranges.add(item.clock);
+                    ranges.add(1);
+                }
+                remaining--;
+            }
+            item = item.next;
+        }
+        Op op = new Op(OP_DELETE, clientId, nextClock(clientId), maxLamport + 1, 0, -1, null,
+                ranges.stream().mapToInt(Integer::intValue).toArray());
+        integrate(op);
+        return encodeOps(List.of(op));
+    }
+
+    /**
+     * 编码状态向量：每个客户端已合并的下一个 clock
+     */
+    public byte[] encodeStateVector() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(FORMAT_VERSION);
+        writeVarInt(out, stateVector.size());
+        stateVector.forEach((client, clock) -> {
+            writeVarInt(out, Integer.toUnsignedLong(client));
+            writeVarInt(out, clock);
+        });
+        return out.toByteArray();
+    }
+
+    /**
+     * 计算对端（由其状态向量描述）缺少的全部操作；传 null 或空数组得到完整状态
+     */
+    public byte[] encodeDiff(byte[] remoteStateVector) {
+        Map<Integer, Integer> remote = decodeStateVector(remoteStateVector);
+        List<Op> missing = new ArrayList<>();
+        log.forEach((client, ops) -> {
+            int known = remote.getOrDefault(client, 0);
+            for (Op op : ops.values()) {
+                if (op.clock + op.span() > known) {
+                    missing.add(op);
+                }
+            }
+        });
+        missing.addAll(pending);
+        return encodeOps(missing);
+    }
+
+    /**
+     * 完整状态的二进制编码
+     */
+    public byte[] encodeState() {
+        return encodeDiff(null);
+    }
+
+    public static Map<Integer, Integer> decodeStateVector(byte[] bytes) {
+        Map<Integer, Integer> result = new HashMap<>();
+        if (bytes == null || bytes.length == 0) {
+            return result;
+        }
+        Reader reader = new Reader(bytes);
+        reader.expectVersion();
+        long count = reader.readVarInt();
+        for (long i = 0; i < count; i++) {
+            int client = (int) reader.readVarInt();
+            int clock = (int) reader.readVarInt();
+            result.put(client, clock);
+        }
+        return result;
+    }
+
+    private boolean integrate(Op op) {
+        int expected = stateVector.getOrDefault(op.client, 0);
+        if (op.clock != expected) {
+            return false;
+        }
+        if (op.kind == OP_INSERT) {
+            if (op.hasOrigin() && !items.containsKey(key(op.originClient, op.originClock))) {
+                return false;
+            }
+            Item origin = op.hasOrigin() ? items.get(key(op.originClient, op.originClock)) : head;
+            for (int i = 0; i < op.text.length(); i++) {
+                Item item = new Item(op.client, op.clock + i, op.lamport + i, op.text.charAt(i));
+                insertAfter(origin, item);
+                items.put(key(item.client, item.clock), item);
+                origin = item;
+            }
+            length += op.text.length();
+        } else {
+            for (int i = 0; i < op.ranges.length; i += 3) {
+                for (int c = 0; c < op.ranges[i + 2]; c++) {
+                    if (!items.containsKey(key(op.ranges[i], op.ranges[i + 1] + c))) {
+                        return false;
+                    }
+                }
+            }
+            for (int i = 0; i < op.ranges.length; i += 3) {
+                for (int c = 0; c < op.ranges[i + 2]; c++) {
+                    Item target = items.get(key(op.ranges[i], op.ranges[i + 1] + c));
+                    if (!target.deleted) {
+                        target.deleted = true;
+                        length--;
+                    }
+                }
+            }
+        }
+        stateVector.put(op.client, op.clock + op.span());
+        maxLamport = Math.max(maxLamport, op.lamport + op.span() - 1);
+        log.computeIfAbsent(op.client, k -> new TreeMap<>()).put(op.clock, op);
+        return true;
+    }
+
+    /**
+     * RGA 插入规则：从 origin 向右跳过时间戳更大的元素（并发的兄弟及其后代），插在第一个更小的元素之前
+     */
+    private void insertAfter(Item origin, Item item) {
+        Item left = origin;
+        Item right = origin.next;
+        while (right != null && (right.lamport > item.lamport
+                || (right.lamport == item.lamport && Integer.compareUnsigned(right.client, item.client) > 0))) {
+            left = right;
+            right = right.next;
+        }
+        item.prev = left;
+        item.next = right;
+        left.next = item;
+        if (right != null) {
+            right.prev = item;
+        }
+    }
+
+    private void drainPending() {
+        boolean progressed = true;
+        while (progressed && !pending.isEmpty()) {
+            progressed = false;
+            Iterator<Op> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                Op op = iterator.next();
+                if (isKnown(op)) {
+                    iterator.remove();
+                } else if (integrate(op)) {
+                    iterator.remove();
+                    progressed = true;
+                }
+            }
+        }
+    }
+
+    private boolean isKnown(Op op) {
+        return op.clock < stateVector.getOrDefault(op.client, 0);
+    }
+
+    private int nextClock(int clientId) {
+        return stateVector.getOrDefault(clientId, 0);
+    }
+
+    private Item visibleItem(int index) {
+        int seen = 0;
+        for (Item item = head.next; item != null; item = item.next) {
+            if (!item.deleted) {
+                if (seen == index) {
+                    return item;
+                }
+                seen++;
+            }
+        }
+        throw new BusinessException(ErrorCode.INVALID_OPERATION, "位置越界: " + index);
+    }
+
+    private static long key(int client, int clock) {
+        return ((long) client << 32) | (clock & 0xFFFFFFFFL);
+    }
+
+    // ---------- 二进制编码 ----------
+
+    private static byte[] encodeOps(List<Op> ops) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(FORMAT_VERSION);
+        writeVarInt(out, ops.size());
+        for (Op op : ops) {
+            out.write(op.kind);
+            writeVarInt(out, Integer.toUnsignedLong(op.client));
+            writeVarInt(out, op.clock);
+            writeVarInt(out, op.lamport);
+            if (op.kind == OP_INSERT) {
+                if (op.hasOrigin()) {
+                    writeVarInt(out, 1);
+                    writeVarInt(out, Integer.toUnsignedLong(op.originClient));
+                    writeVarInt(out, op.originClock);
+                } else {
+                    writeVarInt(out, 0);
+                }
+                byte[] text = op.text.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, text.length);
+                out.write(text, 0, text.length);
+            } else {
+                writeVarInt(out, op.ranges.length / 3);
+                for (int range : op.ranges) {
+                    writeVarInt(out, Integer.toUnsignedLong(range));
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Op> decodeUpdate(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return List.of();
+        }
+        Reader reader = new Reader(bytes);
+        reader.expectVersion();
+        // 每个操作至少占若干字节，超过剩余长度的计数必然是伪造的
+        int count = reader.readCount(1);
+        List<Op> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte kind = reader.readByte();
+            int client = (int) reader.readVarInt();
+            int clock = (int) reader.readVarInt();
+            long lamport = reader.readVarInt();
+            if (kind == OP_INSERT) {
+                boolean hasOrigin = reader.readVarInt() == 1;
+                int originClient = hasOrigin ? (int) reader.readVarInt() : 0;
+                int originClock = hasOrigin ? (int) reader.readVarInt() : -1;
+                String text = reader.readString();
+                if (text.isEmpty()) {
+                    throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 更新格式错误：空插入");
+                }
+                ops.add(new Op(kind, client, clock, lamport, originClient, originClock, text, null));
+            } else if (kind == OP_DELETE) {
+                int rangeCount = reader.readCount(3);
+                int[] ranges = new int[rangeCount * 3];
+                for (int r = 0; r < ranges.length; r++) {
+                    ranges[r] = (int) reader.readVarInt();
+                }
+                ops.add(new Op(kind, client, clock, lamport, 0, -1, null, ranges));
+            } else {
+                throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 更新格式错误：未知操作 " + kind);
+            }
+        }
+        return ops;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /**
+     * 二进制读取器，越界即视为格式错误
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        void expectVersion() {
+            if (readByte() != FORMAT_VERSION) {
+                throw new BusinessException(ErrorCode.PARAM_ERROR, "不支持的 CRDT 编码版本");
+            }
+        }
+
+        byte readByte() {
+            if (position >= bytes.length) {
+                throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 数据被截断");
+            }
+            return bytes[position++];
+        }
+
+        long readVarInt() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+                if (shift > 63) {
+                    throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 数据格式错误");
+                }
+            }
+        }
+
+        /**
+         * 读取元素个数，并按每个元素至少 unitBytes 字节校验剩余长度，避免按伪造的计数分配内存
+         */
+        int readCount(int unitBytes) {
+            long count = readVarInt();
+            if (count < 0 || count > (bytes.length - position) / unitBytes) {
+                throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 数据被截断");
+            }
+            return (int) count;
+        }
+
+        String readString() {
+            int size = (int) readVarInt();
+            if (size < 0 || size > bytes.length - position) {
+                throw new BusinessException(ErrorCode.PARAM_ERROR, "CRDT 数据被截断");
+            }
+            String value = new String(bytes, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return value;
+        }
+    }
+}
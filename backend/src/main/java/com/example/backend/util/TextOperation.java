@@ -0,0 +1,462 @@
+package com.example.backend.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.backend.dto.websocket.DocumentOperation;
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+
+/**
+ * 文本增量操作（RETAIN / INSERT / DELETE 序列）
+ * 一个操作完整覆盖基准文本：所有 RETAIN 与 DELETE 长度之和等于基准文本长度。
+ * 线上格式与 ot.js 一致：正整数表示保留，负整数表示删除，字符串表示插入。
+ */
+public final class TextOperation {
+
+    public enum Kind { RETAIN, INSERT, DELETE }
+
+    /**
+     * 操作分量
+     */
+    public static final class Component {
+        private final Kind kind;
+        private final int length;
+        private final String text;
+
+        private Component(Kind kind, int length, String text) {
+            this.kind = kind;
+            this.length = length;
+            this.text = text;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private final List<Component> components = new ArrayList<>();
+    private int baseLength;
+    private int targetLength;
+
+    public TextOperation retain(int n) {
+        if (n <= 0) {
+            return this;
+        }
+        baseLength += n;
+        targetLength += n;
+        Component last = last();
+        if (last != null && last.kind == Kind.RETAIN) {
+            components.set(components.size() - 1, new Component(Kind.RETAIN, last.length + n, null));
+        } else {
+            components.add(new Component(Kind.RETAIN, n, null));
+        }
+        return this;
+    }
+
+    public TextOperation insert(String s) {
+        if (s == null || s.isEmpty()) {
+            return this;
+        }
+        targetLength += s.length();
+        Component last = last();
+        if (last != null && last.kind == Kind.INSERT) {
+            components.set(components.size() - 1, new Component(Kind.INSERT, last.length + s.length(), last.text + s));
+        } else if (last != null && last.kind == Kind.DELETE) {
+            // 统一“先插入后删除”的顺序，保证等价操作的表示唯一
+            Component beforeDelete = components.size() > 1 ? components.get(components.size() - 2) : null;
+            if (beforeDelete != null && beforeDelete.kind == Kind.INSERT) {
+                components.set(components.size() - 2,
+                        new Component(Kind.INSERT, beforeDelete.length + s.length(), beforeDelete.text + s));
+            } else {
+                components.add(components.size() - 1, new Component(Kind.INSERT, s.length(), s));
+            }
+        } else {
+            components.add(new Component(Kind.INSERT, s.length(), s));
+        }
+        return this;
+    }
+
+    public TextOperation delete(int n) {
+        if (n <= 0) {
+            return this;
+        }
+        baseLength += n;
+        Component last = last();
+        if (last != null && last.kind == Kind.DELETE) {
+            components.set(components.size() - 1, new Component(Kind.DELETE, last.length + n, null));
+        } else {
+            components.add(new Component(Kind.DELETE, n, null));
+        }
+        return this;
+    }
+
+    public List<Component> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    public int getBaseLength() {
+        return baseLength;
+    }
+
+    public int getTargetLength() {
+        return targetLength;
+    }
+
+    /**
+     * 是否为空操作（只有保留）
+     */
+    public boolean isNoop() {
+        return components.isEmpty() || (components.size() == 1 && components.get(0).kind == Kind.RETAIN);
+    }
+
+    /**
+     * 将操作应用到文本，长度不匹配时拒绝
+     */
+    public String apply(String document) {
+        String source = document == null ? "" : document;
+        if (source.length() != baseLength) {
+            throw new BusinessException(ErrorCode.INVALID_OPERATION,
+                    "操作基准长度 " + baseLength + " 与文档长度 " + source.length() + " 不一致");
+        }
+        StringBuilder result = new StringBuilder(targetLength);
+        int index = 0;
+        for (Component component : components) {
+            switch (component.kind) {
+                case RETAIN -> {
+                    result.append(source, index, index + component.length);
+                    index += component.length;
+                }
+                case INSERT -> result.append(component.text);
+                case DELETE -> index += component.length;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * 生成逆操作：作用于本操作的结果文本，还原出 document（本操作的基准文本）
+     */
+    public TextOperation invert(String document) {
+        String source = document == null ? "" : document;
+        if (source.length() != baseLength) {
+            throw new BusinessException(ErrorCode.INVALID_OPERATION,
+                    "操作基准长度 " + baseLength + " 与文档长度 " + source.length() + " 不一致");
+        }
+        TextOperation inverse = new TextOperation();
+        int index = 0;
+        for (Component component : components) {
+            switch (component.kind) {
+                case RETAIN -> {
+                    inverse.retain(component.length);
+                    index += component.length;
+                }
+                case INSERT -> inverse.delete(component.length);
+                case DELETE -> {
+                    inverse.insert(source.substring(index, index + component.length));
+                    index += component.length;
+                }
+            }
+        }
+        return inverse;
+    }
+
+    /**
+     * 转换为线上格式
+     */
+    public List<Object> toWire() {
+        List<Object> wire = new ArrayList<>(components.size());
+        for (Component component : components) {
+            switch (component.kind) {
+                case RETAIN -> wire.add(component.length);
+                case INSERT -> wire.add(component.text);
+                case DELETE -> wire.add(-component.length);
+            }
+        }
+        return wire;
+    }
+
+    /**
+     * 从线上格式解析
+     */
+    public static TextOperation fromWire(List<?> wire) {
+        TextOperation operation = new TextOperation();
+        if (wire == null) {
+            return operation;
+        }
+        for (Object item : wire) {
+            if (item instanceof Number number) {
+                int n = number.intValue();
+                if (n > 0) {
+                    operation.retain(n);
+                } else if (n < 0) {
+                    operation.delete(-n);
+                }
+            } else if (item instanceof String text) {
+                operation.insert(text);
+            } else {
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, "无法识别的操作分量: " + item);
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * 是否为增量操作（否则为旧客户端的全量内容模式）
+     */
+    public static boolean isDelta(DocumentOperation operation) {
+        if (operation == null) {
+            return false;
+        }
+        if (operation.getOps() != null && !operation.getOps().isEmpty()) {
+            return true;
+        }
+        String type = operation.getType() == null ? "" : operation.getType().toUpperCase();
+        return switch (type) {
+            case "INSERT", "DELETE", "RETAIN" -> true;
+            case "REPLACE" -> operation.getPosition() != null;
+            default -> false;
+        };
+    }
+
+    /**
+     * 将单步/复合增量操作转换为覆盖整个基准文本的 TextOperation
+     *
+     * @param baseLength 操作所基于的文本长度
+     */
+    public static TextOperation fromDocumentOperation(DocumentOperation operation, int baseLength) {
+        if (operation.getOps() != null && !operation.getOps().isEmpty()) {
+            return fromWire(operation.getOps());
+        }
+        String type = operation.getType() == null ? "" : operation.getType().toUpperCase();
+        int position = operation.getPosition() == null ? 0 : operation.getPosition();
+        int length = operation.getLength() == null ? 0 : operation.getLength();
+        String text = operation.getText() == null ? "" : operation.getText();
+        if ("RETAIN".equals(type)) {
+            return new TextOperation().retain(baseLength);
+        }
+        if ("INSERT".equals(type)) {
+            length = 0;
+        } else if ("DELETE".equals(type)) {
+            text = "";
+        }
+        if (position < 0 || length < 0 || position + length > baseLength) {
+            throw new BusinessException(ErrorCode.INVALID_OPERATION,
+                    "操作越界: position=" + position + ", length=" + length + ", documentLength=" + baseLength);
+        }
+        return new TextOperation()
+                .retain(position)
+                .insert(text)
+                .delete(length)
+                .retain(baseLength - position - length);
+    }
+
+    /**
+     * 以前缀/后缀对齐的方式生成把 oldText 变为 newText 的操作
+     */
+    public static TextOperation diff(String oldText, String newText) {
+        String before = oldText == null ? "" : oldText;
+        String after = newText == null ? "" : newText;
+        int prefix = 0;
+        int max = Math.min(before.length(), after.length());
+        while (prefix < max && before.charAt(prefix) == after.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix)) {
+            suffix++;
+        }
+        return new TextOperation()
+                .retain(prefix)
+                .insert(after.substring(prefix, after.length() - suffix))
+                .delete(before.length() - prefix - suffix)
+                .retain(suffix);
+    }
+
+    /**
+     * 按行做 Myers 差异生成把 oldText 变为 newText 的操作；改动的行段内再去掉首尾相同的字符。
+     * 相距较远的多处修改各自只记录改动部分，适合作为版本之间的增量存储
+     */
+    public static TextOperation diffLines(String oldText, String newText) {
+        String before = oldText == null ? "" : oldText;
+        String after = newText == null ? "" : newText;
+        List<String> beforeLines = ThreeWayMerge.lines(before);
+        List<String> afterLines = ThreeWayMerge.lines(after);
+        Map<String, Integer> symbols = new HashMap<>();
+        int[] match = ThreeWayMerge.match(ThreeWayMerge.intern(beforeLines, symbols),
+                ThreeWayMerge.intern(afterLines, symbols));
+
+        TextOperation operation = new TextOperation();
+        int i = 0;
+        int j = 0;
+        int beforeOffset = 0;
+        int afterOffset = 0;
+        while (i < beforeLines.size() || j < afterLines.size()) {
+            if (i < beforeLines.size() && match[i] == j) {
+                int length = beforeLines.get(i).length();
+                operation.retain(length);
+                beforeOffset += length;
+                afterOffset += length;
+                i++;
+                j++;
+                continue;
+            }
+            // 收集到下一个匹配行为止的改动段
+            int nextI = i;
+            while (nextI < beforeLines.size() && match[nextI] < 0) {
+                nextI++;
+            }
+            int nextJ = nextI < beforeLines.size() ? match[nextI] : afterLines.size();
+            int beforeEnd = beforeOffset + length(beforeLines, i, nextI);
+            int afterEnd = afterOffset + length(afterLines, j, nextJ);
+            diffSegment(operation, before.substring(beforeOffset, beforeEnd), after.substring(afterOffset, afterEnd));
+            i = nextI;
+            j = nextJ;
+            beforeOffset = beforeEnd;
+            afterOffset = afterEnd;
+        }
+        return operation;
+    }
+
+    private static void diffSegment(TextOperation operation, String before, String after) {
+        TextOperation segment = diff(before, after);
+        for (Component component : segment.components) {
+            switch (component.kind) {
+                case RETAIN -> operation.retain(component.length);
+                case INSERT -> operation.insert(component.text);
+                case DELETE -> operation.delete(component.length);
+            }
+        }
+    }
+
+    private static int length(List<String> lines, int from, int to) {
+        int length = 0;
+        for (int k = from; k < to; k++) {
+            length += lines.get(k).length();
+        }
+        return length;
+    }
+
+    /**
+     * 变换两个基于同一文本的并发操作，返回 [a', b']，满足 apply(apply(s, a), b') == apply(apply(s, b), a')。
+     * 同一位置的并发插入中 a 优先。
+     */
+    public static TextOperation[] transform(TextOperation a, TextOperation b) {
+        if (a.baseLength != b.baseLength) {
+            throw new BusinessException(ErrorCode.INVALID_OPERATION,
+                    "并发操作基准长度不一致: " + a.baseLength + " / " + b.baseLength);
+        }
+        TextOperation aPrime = new TextOperation();
+        TextOperation bPrime = new TextOperation();
+        Cursor left = new Cursor(a);
+        Cursor right = new Cursor(b);
+        while (left.hasNext() || right.hasNext()) {
+            if (left.kind() == Kind.INSERT) {
+                aPrime.insert(left.text());
+                bPrime.retain(left.remaining());
+                left.next();
+                continue;
+            }
+            if (right.kind() == Kind.INSERT) {
+                aPrime.retain(right.remaining());
+                bPrime.insert(right.text());
+                right.next();
+                continue;
+            }
+            if (!left.hasNext() || !right.hasNext()) {
+                throw new BusinessException(ErrorCode.INVALID_OPERATION, "操作长度不匹配，无法变换");
+            }
+            int n = Math.min(left.remaining(), right.remaining());
+            if (left.kind() == Kind.RETAIN && right.kind() == Kind.RETAIN) {
+                aPrime.retain(n);
+                bPrime.retain(n);
+            } else if (left.kind() == Kind.DELETE && right.kind() == Kind.RETAIN) {
+                aPrime.delete(n);
+            } else if (left.kind() == Kind.RETAIN && right.kind() == Kind.DELETE) {
+                bPrime.delete(n);
+            }
+            // 双方都删除同一段文本时，变换后双方都无需再删除
+            left.consume(n);
+            right.consume(n);
+        }
+        return new TextOperation[] { aPrime, bPrime };
+    }
+
+    /**
+     * 依次遍历操作分量，支持按长度部分消费
+     */
+    private static final class Cursor {
+        private final List<Component> components;
+        private int index;
+        private int offset;
+
+        private Cursor(TextOperation operation) {
+            this.components = operation.components;
+        }
+
+        boolean hasNext() {
+            return index < components.size();
+        }
+
+        Kind kind() {
+            return hasNext() ? components.get(index).kind : null;
+        }
+
+        int remaining() {
+            return components.get(index).length - offset;
+        }
+
+        String text() {
+            return components.get(index).text.substring(offset);
+        }
+
+        void next() {
+            index++;
+            offset = 0;
+        }
+
+        void consume(int n) {
+            offset += n;
+            if (offset >= components.get(index).length) {
+                next();
+            }
+        }
+    }
+
+    private Component last() {
+        return components.isEmpty() ? null : components.get(components.size() - 1);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof TextOperation operation)) {
+            return false;
+        }
+        return toWire().equals(operation.toWire());
+    }
+
+    @Override
+    public int hashCode() {
+        return toWire().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toWire().toString();
+    }
+}
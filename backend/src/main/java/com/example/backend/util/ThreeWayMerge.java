@@ -0,0 +1,332 @@
+package com.example.backend.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 三方合并（diff3）
+ * 以共同基准为参照，分别计算“我方”（保存者）与“对方”（当前确认态）按行的差异：
+ * 只有一方修改的区域直接采用修改，双方改动相同的区域取其一；双方都改动的行再按字符做一次三方合并，
+ * 字符级仍重叠的才算真正冲突。冲突区域保留对方（确认态）内容，冲突明细返回给调用方。
+ */
+public final class ThreeWayMerge {
+
+    /**
+     * Myers 差异的最大编辑距离，超出时视为整体替换（避免超大改动占用过多内存）
+     */
+    private static final int MAX_EDIT_DISTANCE = 2048;
+
+    /**
+     * 真正重叠的冲突区域
+     */
+    public static final class Conflict {
+        private final int line;
+        private final String base;
+        private final String mine;
+        private final String theirs;
+
+        private Conflict(int line, String base, String mine, String theirs) {
+            this.line = line;
+            this.base = base;
+            this.mine = mine;
+            this.theirs = theirs;
+        }
+
+        /**
+         * 冲突区域在合并结果中的起始行号（从 1 开始）
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public String getBase() {
+            return base;
+        }
+
+        public String getMine() {
+            return mine;
+        }
+
+        public String getTheirs() {
+            return theirs;
+        }
+    }
+
+    /**
+     * 合并结果：冲突区域已按对方内容填入
+     */
+    public static final class Result {
+        private final String content;
+        private final List<Conflict> conflicts;
+
+        private Result(String content, List<Conflict> conflicts) {
+            this.content = content;
+            this.conflicts = Collections.unmodifiableList(conflicts);
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public List<Conflict> getConflicts() {
+            return conflicts;
+        }
+
+        public boolean isClean() {
+            return conflicts.isEmpty();
+        }
+    }
+
+    private ThreeWayMerge() {
+    }
+
+    public static Result merge(String base, String mine, String theirs) {
+        String o = base == null ? "" : base;
+        String a = mine == null ? "" : mine;
+        String b = theirs == null ? "" : theirs;
+        if (a.equals(b) || o.equals(b)) {
+            return new Result(a, new ArrayList<>());
+        }
+        if (o.equals(a)) {
+            return new Result(b, new ArrayList<>());
+        }
+
+        List<String> baseLines = lines(o);
+        List<String> mineLines = lines(a);
+        List<String> theirLines = lines(b);
+        StringBuilder merged = new StringBuilder(Math.max(a.length(), b.length()));
+        List<Conflict> conflicts = new ArrayList<>();
+        int[] line = {1};
+        diff3(baseLines, mineLines, theirLines, new ChunkHandler() {
+            @Override
+            public void stable(List<String> chunk) {
+                append(chunk);
+            }
+
+            @Override
+            public void unstable(List<String> baseChunk, List<String> mineChunk, List<String> theirChunk) {
+                String baseText = String.join("", baseChunk);
+                String mineText = String.join("", mineChunk);
+                String theirText = String.join("", theirChunk);
+                String resolved = mergeCharacters(baseText, mineText, theirText);
+                if (resolved != null) {
+                    merged.append(resolved);
+                    line[0] += countLines(resolved);
+                } else {
+                    conflicts.add(new Conflict(line[0], baseText, mineText, theirText));
+                    append(theirChunk);
+                }
+            }
+
+            private void append(List<String> chunk) {
+                for (String value : chunk) {
+                    merged.append(value);
+                }
+                line[0] += chunk.size();
+            }
+        });
+        return new Result(merged.toString(), conflicts);
+    }
+
+    /**
+     * 行内字符级三方合并，仍有重叠时返回 null
+     */
+    private static String mergeCharacters(String base, String mine, String theirs) {
+        StringBuilder merged = new StringBuilder();
+        boolean[] clean = {true};
+        diff3(characters(base), characters(mine), characters(theirs), new ChunkHandler() {
+            @Override
+            public void stable(List<String> chunk) {
+                chunk.forEach(merged::append);
+            }
+
+            @Override
+            public void unstable(List<String> baseChunk, List<String> mineChunk, List<String> theirChunk) {
+                clean[0] = false;
+            }
+        });
+        return clean[0] ? merged.toString() : null;
+    }
+
+    private interface ChunkHandler {
+        void stable(List<String> chunk);
+
+        /**
+         * 双方都改动且改动不同的区域
+         */
+        void unstable(List<String> baseChunk, List<String> mineChunk, List<String> theirChunk);
+    }
+
+    /**
+     * 按 diff3 把三份序列切分为稳定区域与变动区域；只有一方改动或双方改动相同的区域按稳定区域输出
+     */
+    private static void diff3(List<String> base, List<String> mine, List<String> theirs, ChunkHandler handler) {
+        Map<String, Integer> symbols = new HashMap<>();
+        int[] o = intern(base, symbols);
+        int[] a = intern(mine, symbols);
+        int[] b = intern(theirs, symbols);
+        int[] matchA = match(o, a);
+        int[] matchB = match(o, b);
+
+        int i = 0;
+        int x = 0;
+        int y = 0;
+        while (i < o.length || x < a.length || y < b.length) {
+            int k = 0;
+            while (i + k < o.length && matchA[i + k] == x + k && matchB[i + k] == y + k) {
+                k++;
+            }
+            if (k > 0) {
+                handler.stable(base.subList(i, i + k));
+                i += k;
+                x += k;
+                y += k;
+                continue;
+            }
+            int j = i;
+            while (j < o.length && (matchA[j] < 0 || matchB[j] < 0)) {
+                j++;
+            }
+            int nextX = j < o.length ? matchA[j] : a.length;
+            int nextY = j < o.length ? matchB[j] : b.length;
+            List<String> baseChunk = base.subList(i, j);
+            List<String> mineChunk = mine.subList(x, nextX);
+            List<String> theirChunk = theirs.subList(y, nextY);
+            if (mineChunk.equals(baseChunk) || mineChunk.equals(theirChunk)) {
+                handler.stable(theirChunk);
+            } else if (theirChunk.equals(baseChunk)) {
+                handler.stable(mineChunk);
+            } else {
+                handler.unstable(baseChunk, mineChunk, theirChunk);
+            }
+            i = j;
+            x = nextX;
+            y = nextY;
+        }
+    }
+
+    /**
+     * Myers 差异：返回 base 中每个元素在 other 中对应的下标（最长公共子序列），未匹配为 -1
+     */
+    static int[] match(int[] base, int[] other) {
+        int[] result = new int[base.length];
+        Arrays.fill(result, -1);
+        int prefix = 0;
+        int max = Math.min(base.length, other.length);
+        while (prefix < max && base[prefix] == other[prefix]) {
+            result[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && base[base.length - 1 - suffix] == other[other.length - 1 - suffix]) {
+            result[base.length - 1 - suffix] = other.length - 1 - suffix;
+            suffix++;
+        }
+
+        int n = base.length - prefix - suffix;
+        int m = other.length - prefix - suffix;
+        if (n == 0 || m == 0) {
+            return result;
+        }
+        int limit = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = limit + 1;
+        int[] v = new int[2 * limit + 3];
+        // trace[d] 保存第 d 步结束后 k ∈ [-d, d] 的最远 x
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= limit; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+                        ? v[offset + k + 1]
+                        : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && base[prefix + x] == other[prefix + y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+                    backtrack(trace, base, prefix, n, m, result);
+                    return result;
+                }
+            }
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+        }
+        // 改动过大：中间部分按整体替换处理
+        return result;
+    }
+
+    private static void backtrack(List<int[]> trace, int[] base, int prefix, int n, int m, int[] result) {
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] previous = trace.get(d - 1);
+            int k = x - y;
+            boolean down = k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]);
+            int previousK = down ? k + 1 : k - 1;
+            int previousX = previous[previousK + d - 1];
+            int startX = down ? previousX : previousX + 1;
+            while (x > startX) {
+                x--;
+                y--;
+                result[prefix + x] = prefix + y;
+            }
+            x = previousX;
+            y = previousX - previousK;
+        }
+        while (x > 0 && y > 0) {
+            x--;
+            y--;
+            result[prefix + x] = prefix + y;
+        }
+    }
+
+    static int[] intern(List<String> tokens, Map<String, Integer> symbols) {
+        int[] ids = new int[tokens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = symbols.computeIfAbsent(tokens.get(i), key -> symbols.size());
+        }
+        return ids;
+    }
+
+    /**
+     * 按行切分，保留换行符，拼接后与原文一致
+     */
+    static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    private static List<String> characters(String text) {
+        List<String> characters = new ArrayList<>(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            characters.add(String.valueOf(text.charAt(i)));
+        }
+        return characters;
+    }
+
+    private static int countLines(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,10 @@
+-- =====================================================
+-- 数据库迁移脚本：文档协作引擎选择
+-- 目标: 为 documents 表添加 collab_mode 字段（OT / CRDT）
+-- =====================================================
+
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS collab_mode VARCHAR(20) DEFAULT 'OT';
+
+UPDATE documents SET collab_mode = 'OT' WHERE collab_mode IS NULL;
+
+COMMENT ON COLUMN documents.collab_mode IS '协作引擎: OT / CRDT';
@@ -0,0 +1,81 @@
+-- =====================================================
+-- 数据库迁移脚本：内容寻址存储
+-- 目标: 文档与版本内容迁入 content_blobs，按 SHA-256 去重，
+--       documents / document_versions 改为保存 content_hash，引用计数由触发器维护
+-- =====================================================
+
+CREATE TABLE IF NOT EXISTS content_blobs (
+  hash         VARCHAR(64) PRIMARY KEY,
+  content      TEXT NOT NULL,
+  ref_count    BIGINT NOT NULL DEFAULT 0,
+  touched_at   TIMESTAMP NOT NULL DEFAULT NOW(),
+  created_at   TIMESTAMP DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_content_blobs_unreferenced ON content_blobs(touched_at) WHERE ref_count <= 0;
+
+-- 迁移已有内容（空内容不建内容块）
+INSERT INTO content_blobs (hash, content)
+SELECT encode(sha256(convert_to(content, 'UTF8')), 'hex'), content
+FROM (SELECT content FROM documents WHERE content IS NOT NULL AND content <> ''
+      UNION
+      SELECT content FROM document_versions WHERE content <> '') existing
+ON CONFLICT (hash) DO NOTHING;
+
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64) REFERENCES content_blobs(hash);
+ALTER TABLE document_versions ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64) REFERENCES content_blobs(hash);
+
+UPDATE documents SET content_hash = encode(sha256(convert_to(content, 'UTF8')), 'hex')
+WHERE content IS NOT NULL AND content <> '';
+UPDATE document_versions SET content_hash = encode(sha256(convert_to(content, 'UTF8')), 'hex')
+WHERE content <> '';
+
+UPDATE content_blobs b SET ref_count = refs.total
+FROM (SELECT content_hash, COUNT(*) AS total
+      FROM (SELECT content_hash FROM documents
+            UNION ALL
+            SELECT content_hash FROM document_versions) r
+      WHERE content_hash IS NOT NULL
+      GROUP BY content_hash) refs
+WHERE b.hash = refs.content_hash;
+
+CREATE INDEX IF NOT EXISTS idx_documents_content ON documents(content_hash);
+CREATE INDEX IF NOT EXISTS idx_doc_versions_content ON document_versions(content_hash);
+
+CREATE OR REPLACE FUNCTION content_blob_refs() RETURNS TRIGGER LANGUAGE plpgsql AS '
+BEGIN
+  IF TG_OP IN (''UPDATE'', ''DELETE'') AND OLD.content_hash IS NOT NULL THEN
+    UPDATE content_blobs SET ref_count = ref_count - 1, touched_at = NOW() WHERE hash = OLD.content_hash;
+  END IF;
+  IF TG_OP IN (''INSERT'', ''UPDATE'') AND NEW.content_hash IS NOT NULL THEN
+    UPDATE content_blobs SET ref_count = ref_count + 1 WHERE hash = NEW.content_hash;
+  END IF;
+  RETURN NULL;
+END;
+';
+
+DROP TRIGGER IF EXISTS trg_documents_content_refs ON documents;
+DROP TRIGGER IF EXISTS trg_documents_content_refs_update ON documents;
+DROP TRIGGER IF EXISTS trg_doc_versions_content_refs ON document_versions;
+DROP TRIGGER IF EXISTS trg_doc_versions_content_refs_update ON document_versions;
+CREATE TRIGGER trg_documents_content_refs
+  AFTER INSERT OR DELETE ON documents
+  FOR EACH ROW EXECUTE FUNCTION content_blob_refs();
+CREATE TRIGGER trg_documents_content_refs_update
+  AFTER UPDATE OF content_hash ON documents
+  FOR EACH ROW WHEN (OLD.content_hash IS DISTINCT FROM NEW.content_hash) EXECUTE FUNCTION content_blob_refs();
+CREATE TRIGGER trg_doc_versions_content_refs
+  AFTER INSERT OR DELETE ON document_versions
+  FOR EACH ROW EXECUTE FUNCTION content_blob_refs();
+CREATE TRIGGER trg_doc_versions_content_refs_update
+  AFTER UPDATE OF content_hash ON document_versions
+  FOR EACH ROW WHEN (OLD.content_hash IS DISTINCT FROM NEW.content_hash) EXECUTE FUNCTION content_blob_refs();
+
+ALTER TABLE documents DROP COLUMN IF EXISTS content;
+ALTER TABLE document_versions DROP COLUMN IF EXISTS content;
+
+COMMENT ON TABLE content_blobs IS '内容寻址存储，文档与版本内容按 SHA-256 去重';
+COMMENT ON COLUMN content_blobs.ref_count IS '引用数（documents 与 document_versions），由触发器维护';
+COMMENT ON COLUMN content_blobs.touched_at IS '最近写入或失去引用的时间，无引用的内容块超过宽限期后清理';
+COMMENT ON COLUMN documents.content_hash IS '当前内容的哈希，见 content_blobs';
+COMMENT ON COLUMN document_versions.content_hash IS '版本存储内容的哈希，见 content_blobs';
@@ -0,0 +1,8 @@
+-- =====================================================
+-- 数据库迁移脚本：版本增量存储
+-- 目标: 为 document_versions 表添加 storage_kind 字段，已有版本均为完整快照
+-- =====================================================
+
+ALTER TABLE document_versions ADD COLUMN IF NOT EXISTS storage_kind VARCHAR(10) NOT NULL DEFAULT 'FULL';
+
+COMMENT ON COLUMN document_versions.storage_kind IS '存储方式: FULL-完整快照(关键帧), DELTA-相对上一版本的增量';
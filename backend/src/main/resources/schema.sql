@@ -17,6 +17,8 @@ DROP TABLE IF EXISTS documents CASCADE;
 DROP TABLE IF EXISTS document_folders CASCADE;
 DROP TABLE IF EXISTS users CASCADE;
 DROP TABLE IF EXISTS friend_messages CASCADE;
+DROP TABLE IF EXISTS content_blobs CASCADE;
+DROP FUNCTION IF EXISTS content_blob_refs() CASCADE;
 
 
 
@@ -76,7 +78,7 @@ CREATE TABLE documents (
   id             BIGSERIAL PRIMARY KEY,
   title          VARCHAR(255) NOT NULL,
   owner_id       BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
-  content        TEXT,
+  content_hash   VARCHAR(64),  -- 当前内容，引用 content_blobs，空内容为 NULL
   doc_type       VARCHAR(20) DEFAULT 'markdown',
   visibility     VARCHAR(20) DEFAULT 'PRIVATE',  -- PRIVATE-私有, PUBLIC-公开
   tags           VARCHAR(255),
@@ -84,6 +86,7 @@ CREATE TABLE documents (
   status         VARCHAR(20) DEFAULT 'ACTIVE',
   forked_from_id BIGINT REFERENCES documents(id),
   storage_path   VARCHAR(512),
+  collab_mode    VARCHAR(20) DEFAULT 'OT',   -- OT-操作变换, CRDT-序列 CRDT
   created_at     TIMESTAMP DEFAULT NOW(),
   updated_at     TIMESTAMP DEFAULT NOW(),
   -- 同一所有者同一文件夹下文档名唯一（逻辑删除时 folder_id 为 NULL，不参与约束）
@@ -102,6 +105,8 @@ COMMENT ON COLUMN documents.visibility IS '可见性: PRIVATE-私有, PUBLIC-公
 COMMENT ON COLUMN documents.folder_id IS '所属文件夹ID';
 COMMENT ON COLUMN documents.forked_from_id IS '克隆来源文档ID';
 COMMENT ON COLUMN documents.storage_path IS '物理文件存储相对路径，格式: {ownerId}/{folderId}/';
+COMMENT ON COLUMN documents.collab_mode IS '协作引擎: OT / CRDT';
+COMMENT ON COLUMN documents.content_hash IS '当前内容的哈希，见 content_blobs';
 
 -- =====================================================
 -- 4. 文档版本表 (document_versions)
@@ -110,7 +115,8 @@ CREATE TABLE document_versions (
   id             BIGSERIAL PRIMARY KEY,
   document_id    BIGINT NOT NULL REFERENCES documents(id) ON DELETE CASCADE,
   version_no     INTEGER NOT NULL,
-  content        TEXT   NOT NULL,
+  content_hash   VARCHAR(64),  -- 快照或增量，引用 content_blobs，空快照为 NULL
+  storage_kind   VARCHAR(10) NOT NULL DEFAULT 'FULL',  -- FULL-完整快照, DELTA-相对上一版本的增量
   commit_message VARCHAR(255),
   created_by     BIGINT REFERENCES users(id),
   created_at     TIMESTAMP DEFAULT NOW(),
@@ -122,6 +128,8 @@ CREATE INDEX idx_doc_versions_created_by ON document_versions(created_by);
 
 COMMENT ON TABLE document_versions IS '文档版本表，类似Git提交历史';
 COMMENT ON COLUMN document_versions.version_no IS '文档内部递增版本号';
+COMMENT ON COLUMN document_versions.content_hash IS '版本存储内容的哈希，见 content_blobs';
+COMMENT ON COLUMN document_versions.storage_kind IS '存储方式: FULL-完整快照(关键帧), DELTA-相对上一版本的增量';
 COMMENT ON COLUMN document_versions.commit_message IS '提交说明';
 
 -- =====================================================
@@ -291,6 +299,56 @@ CREATE INDEX IF NOT EXISTS idx_friend_messages_created ON friend_messages(create
 
 COMMENT ON TABLE friend_messages IS '好友私聊消息表';
 
+-- =====================================================
+-- 13. 内容块表 (content_blobs)
+-- =====================================================
+CREATE TABLE content_blobs (
+  hash         VARCHAR(64) PRIMARY KEY,  -- 内容 UTF-8 编码的 SHA-256（小写十六进制）
+  content      TEXT NOT NULL,
+  ref_count    BIGINT NOT NULL DEFAULT 0,
+  touched_at   TIMESTAMP NOT NULL DEFAULT NOW(),
+  created_at   TIMESTAMP DEFAULT NOW()
+);
+
+CREATE INDEX idx_content_blobs_unreferenced ON content_blobs(touched_at) WHERE ref_count <= 0;
+
+ALTER TABLE documents ADD CONSTRAINT fk_documents_content
+  FOREIGN KEY (content_hash) REFERENCES content_blobs(hash);
+ALTER TABLE document_versions ADD CONSTRAINT fk_doc_versions_content
+  FOREIGN KEY (content_hash) REFERENCES content_blobs(hash);
+CREATE INDEX idx_documents_content ON documents(content_hash);
+CREATE INDEX idx_doc_versions_content ON document_versions(content_hash);
+
+-- 引用计数随 documents / document_versions 的增删改维护（含级联删除）
+CREATE OR REPLACE FUNCTION content_blob_refs() RETURNS TRIGGER LANGUAGE plpgsql AS '
+BEGIN
+  IF TG_OP IN (''UPDATE'', ''DELETE'') AND OLD.content_hash IS NOT NULL THEN
+    UPDATE content_blobs SET ref_count = ref_count - 1, touched_at = NOW() WHERE hash = OLD.content_hash;
+  END IF;
+  IF TG_OP IN (''INSERT'', ''UPDATE'') AND NEW.content_hash IS NOT NULL THEN
+    UPDATE content_blobs SET ref_count = ref_count + 1 WHERE hash = NEW.content_hash;
+  END IF;
+  RETURN NULL;
+END;
+';
+
+CREATE TRIGGER trg_documents_content_refs
+  AFTER INSERT OR DELETE ON documents
+  FOR EACH ROW EXECUTE FUNCTION content_blob_refs();
+CREATE TRIGGER trg_documents_content_refs_update
+  AFTER UPDATE OF content_hash ON documents
+  FOR EACH ROW WHEN (OLD.content_hash IS DISTINCT FROM NEW.content_hash) EXECUTE FUNCTION content_blob_refs();
+CREATE TRIGGER trg_doc_versions_content_refs
+  AFTER INSERT OR DELETE ON document_versions
+  FOR EACH ROW EXECUTE FUNCTION content_blob_refs();
+CREATE TRIGGER trg_doc_versions_content_refs_update
+  AFTER UPDATE OF content_hash ON document_versions
+  FOR EACH ROW WHEN (OLD.content_hash IS DISTINCT FROM NEW.content_hash) EXECUTE FUNCTION content_blob_refs();
+
+COMMENT ON TABLE content_blobs IS '内容寻址存储，文档与版本内容按 SHA-256 去重';
+COMMENT ON COLUMN content_blobs.ref_count IS '引用数（documents 与 document_versions），由触发器维护';
+COMMENT ON COLUMN content_blobs.touched_at IS '最近写入或失去引用的时间，无引用的内容块超过宽限期后清理';
+
 -- =====================================================
 -- 建表完成
 -- =====================================================
@@ -0,0 +1,165 @@
+package com.example.backend.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.AbstractMessageChannel;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import com.example.backend.dto.websocket.WebSocketMessage;
+import com.example.backend.service.ClusterMessageBus;
+import com.example.backend.service.DocumentBroadcaster;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class CborFrameCodecTests {
+
+	private static final String TOPIC = "/topic/document/1";
+
+	private final CborFrameCodec codec = new CborFrameCodec(new ObjectMapper());
+	private final List<Message<?>> delivered = new ArrayList<>();
+	private SimpleBrokerMessageHandler broker;
+	private DocumentBroadcaster broadcaster;
+	private ClusterMessageBus clusterBus;
+
+	/**
+	 * 与运行时相同的链路：简单代理构造 MESSAGE 帧，经带编码拦截器的出站通道投递
+	 */
+	@BeforeEach
+	void startBroker() {
+		ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+		outbound.addInterceptor(codec);
+		outbound.subscribe(message -> {
+			if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+				delivered.add(message);
+			}
+		});
+		broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(), outbound,
+				new ExecutorSubscribableChannel(), List.of("/topic"));
+		broker.start();
+
+		AbstractMessageChannel brokerChannel = new AbstractMessageChannel() {
+			@Override
+			protected boolean sendInternal(Message<?> message, long timeout) {
+				broker.handleMessage(message);
+				return true;
+			}
+		};
+		// 与运行时代理模板相同的转换器链，JSON 帧以字节负载投递
+		SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+		template.setMessageConverter(new CompositeMessageConverter(List.of(new StringMessageConverter(),
+				new ByteArrayMessageConverter(), new MappingJackson2MessageConverter())));
+		broadcaster = new DocumentBroadcaster(template, new ClusterMessageBus(null, false), new ObjectMapper(), codec);
+		// 模拟其他节点经集群总线转发来的 JSON 广播
+		clusterBus = new ClusterMessageBus(null, true);
+		new DocumentBroadcaster(template, clusterBus, new ObjectMapper(), codec);
+	}
+
+	@AfterEach
+	void stopBroker() {
+		broker.stop();
+	}
+
+	@Test
+	void negotiatedSessionReceivesTaggedCbor() throws Exception {
+		connect("s1", true);
+		connect("s2", true);
+
+		broadcaster.toDocument(1L, new WebSocketMessage("CURSORS", 1L, 7L, "alice", List.of(), 1L));
+
+		assertEquals(2, delivered.size());
+		Message<?> first = delivered.get(0);
+		StompHeaderAccessor accessor = StompHeaderAccessor.wrap(first);
+		assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, accessor.getContentType());
+		assertEquals("cbor", accessor.getFirstNativeHeader(CborFrameCodec.CODEC_HEADER));
+		assertEquals(TOPIC, accessor.getDestination());
+		JsonNode decoded = new CborMessageConverter().getCborMapper().readTree((byte[]) first.getPayload());
+		assertEquals(5, decoded.get("type").asInt());
+		assertEquals(7, decoded.get("userId").asInt());
+		assertTrue(decoded.get("data").isArray());
+		// 同一份广播负载只编码一次
+		assertSame(first.getPayload(), delivered.get(1).getPayload());
+	}
+
+	@Test
+	void clusterDeliveredJsonIsTranscodedOncePerNode() throws Exception {
+		connect("s5", true);
+		connect("s6", true);
+
+		clusterBus.onMessage("topic|other|1\n{\"type\":\"CURSOR\",\"documentId\":1}");
+
+		assertEquals(2, delivered.size());
+		JsonNode decoded = new CborMessageConverter().getCborMapper().readTree((byte[]) delivered.get(0).getPayload());
+		assertEquals(4, decoded.get("type").asInt());
+		assertSame(delivered.get(0).getPayload(), delivered.get(1).getPayload());
+	}
+
+	@Test
+	void untaggedAndSockJsFramesStayJson() {
+		connect("s3", false);
+		broadcaster.toDocument(1L, new WebSocketMessage("CURSORS", 1L, 7L, "alice", List.of(), 1L));
+		assertJson(delivered.get(0), "CURSORS");
+
+		delivered.clear();
+		connect("s4", true);
+		broadcaster.toDocument(1L, new WebSocketMessage("JOIN", 1L, 7L, "alice", null, 1L));
+		assertEquals(2, delivered.size());
+		delivered.forEach(message -> assertJson(message, "JOIN"));
+	}
+
+	private void assertJson(Message<?> message, String type) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+		assertNull(accessor.getFirstNativeHeader(CborFrameCodec.CODEC_HEADER));
+		String json = new String((byte[]) message.getPayload(), StandardCharsets.UTF_8);
+		assertTrue(json.contains("\"type\":\"" + type + "\""), json);
+	}
+
+	/**
+	 * 协商编码并订阅文档主题
+	 */
+	private void connect(String sessionId, boolean binaryEndpoint) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+		accessor.setSessionId(sessionId);
+		accessor.setNativeHeader(CborFrameCodec.CODEC_HEADER, CborFrameCodec.CODEC_CBOR);
+		Map<String, Object> attributes = new HashMap<>();
+		if (binaryEndpoint) {
+			attributes.put(CborFrameCodec.BINARY_ATTRIBUTE, Boolean.TRUE);
+		}
+		accessor.setSessionAttributes(attributes);
+		accessor.setLeaveMutable(true);
+		codec.inbound().preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+
+		SimpMessageHeaderAccessor session = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+		session.setSessionId(sessionId);
+		broker.handleMessage(MessageBuilder.createMessage(new byte[0], session.getMessageHeaders()));
+		SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		subscribe.setSessionId(sessionId);
+		subscribe.setSubscriptionId("sub-" + sessionId);
+		subscribe.setDestination(TOPIC);
+		broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+	}
+}
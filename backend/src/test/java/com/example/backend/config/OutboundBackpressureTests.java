@@ -0,0 +1,113 @@
+package com.example.backend.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OutboundBackpressureTests {
+
+	private static final String CURSORS_FRAME = "MESSAGE\ndestination:/topic/document/42\nsubscription:sub-0\n"
+			+ "message-id:1\ncontent-type:application/json\ncontent-length:30\n\n"
+			+ "{\"type\":\"CURSORS\",\"cursors\":[]}\0";
+
+	@Test
+	void classifiesJsonAndCborFrames() {
+		TextMessage text = new TextMessage(CURSORS_FRAME);
+		assertEquals("CURSORS", OutboundBackpressure.frameType(text));
+		assertEquals("42", OutboundBackpressure.documentId(text));
+
+		byte[] header = "MESSAGE\ndestination:/topic/document/7\n\n".getBytes(StandardCharsets.US_ASCII);
+		byte[] cbor = {(byte) 0xa1, 0x64, 't', 'y', 'p', 'e', 0x02};
+		byte[] frame = new byte[header.length + cbor.length];
+		System.arraycopy(header, 0, frame, 0, header.length);
+		System.arraycopy(cbor, 0, frame, header.length, cbor.length);
+		assertEquals("DRAFT_DELTA", OutboundBackpressure.frameType(new BinaryMessage(frame)));
+	}
+
+	@Test
+	void escalatesWithBufferAndSendTime() {
+		OutboundBackpressure policy = new OutboundBackpressure(new SimpleMeterRegistry(), 10_000, 1_000);
+		assertEquals(0, policy.pressureLevel(100, 0));
+		assertEquals(1, policy.pressureLevel(300, 0));
+		assertEquals(2, policy.pressureLevel(600, 0));
+		assertEquals(2, policy.pressureLevel(0, 6_000));
+	}
+
+	@Test
+	void noticeReusesSubscriptionOfDroppedFrame() {
+		String notice = OutboundBackpressure.droppedNotice(new TextMessage(CURSORS_FRAME), "42").getPayload();
+		assertTrue(notice.contains("subscription:sub-0\n"));
+		assertTrue(notice.contains("\"type\":\"FRAMES_DROPPED\""));
+		String body = notice.substring(notice.indexOf("\n\n") + 2, notice.length() - 1);
+		assertTrue(notice.contains("content-length:" + body.getBytes(StandardCharsets.UTF_8).length + "\n"));
+	}
+
+	@Test
+	void dropsCursorsThenDraftsWhileSessionIsBlocked() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		OutboundBackpressure policy = new OutboundBackpressure(registry, 10_000, 1_000);
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> sent = new CopyOnWriteArrayList<>();
+		WebSocketSession slow = (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+					case "sendMessage" -> {
+						sending.countDown();
+						release.await(5, TimeUnit.SECONDS);
+						sent.add(OutboundBackpressure.frameType((WebSocketMessage<?>) args[0]));
+						yield null;
+					}
+					case "isOpen" -> true;
+					case "getId", "toString" -> "slow";
+					case "hashCode" -> System.identityHashCode(proxy);
+					case "equals" -> proxy == args[0];
+					default -> null;
+				});
+		WebSocketSession session = policy.decorateSession(slow);
+
+		// 第一帧卡在网络写入上，之后的帧只能进入发送缓冲
+		Thread writer = new Thread(() -> send(session, frame("SAVE_CONFIRMED", 0)));
+		writer.start();
+		assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+		send(session, frame("SAVE_CONFIRMED", 150));
+		send(session, frame("CURSORS", 0));
+		send(session, frame("SAVE_CONFIRMED", 150));
+		send(session, frame("DRAFT_DELTA", 0));
+		send(session, frame("DRAFT_DELTA", 0));
+
+		release.countDown();
+		writer.join(5_000);
+		assertEquals(1, policy.droppedCount("cursor"));
+		assertEquals(2, policy.droppedCount("draft"));
+		assertEquals(List.of("SAVE_CONFIRMED", "SAVE_CONFIRMED", "SAVE_CONFIRMED", "FRAMES_DROPPED"), sent);
+	}
+
+	private static TextMessage frame(String type, int padding) {
+		String body = "{\"type\":\"" + type + "\",\"data\":\"" + "x".repeat(padding) + "\"}";
+		return new TextMessage("MESSAGE\ndestination:/topic/document/42\nsubscription:sub-0\n"
+				+ "content-type:application/json\ncontent-length:" + body.length() + "\n\n" + body + "\0");
+	}
+
+	private static void send(WebSocketSession session, WebSocketMessage<?> message) {
+		try {
+			session.sendMessage(message);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.example.backend.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.example.backend.config.WebSocketEventListener;
+import com.example.backend.dto.websocket.AppliedOperation;
+import com.example.backend.dto.websocket.CrdtMessage;
+import com.example.backend.dto.websocket.DocumentOperation;
+import com.example.backend.dto.websocket.JoinRequest;
+import com.example.backend.dto.websocket.WebSocketMessage;
+import com.example.backend.entity.User;
+import com.example.backend.exception.BusinessException;
+import com.example.backend.exception.ErrorCode;
+import com.example.backend.repository.UserRepository;
+import com.example.backend.service.ChatService;
+import com.example.backend.service.CollaborationCacheService;
+import com.example.backend.service.CrdtCollaborationService;
+import com.example.backend.service.CursorAggregator;
+import com.example.backend.service.DocumentBroadcaster;
+import com.example.backend.service.DocumentSequencer;
+import com.example.backend.service.DocumentService;
+import com.example.backend.service.DraftLogService;
+import com.example.backend.service.OperationTransformService;
+import com.example.backend.service.PresenceService;
+import com.example.backend.service.SessionUserCache;
+
+class WebSocketControllerTests {
+
+	private static final Long DOCUMENT_ID = 1L;
+
+	private final DocumentBroadcaster documentBroadcaster = mock(DocumentBroadcaster.class);
+	private final DocumentService documentService = mock(DocumentService.class);
+	private final CollaborationCacheService collaborationCacheService = mock(CollaborationCacheService.class);
+	private final DraftLogService draftLogService = mock(DraftLogService.class);
+	private final OperationTransformService operationTransformService = mock(OperationTransformService.class);
+	private final CrdtCollaborationService crdtCollaborationService = mock(CrdtCollaborationService.class);
+	private final SessionUserCache sessionUserCache = mock(SessionUserCache.class);
+	private final PresenceService presenceService = mock(PresenceService.class);
+	private final WebSocketEventListener webSocketEventListener = mock(WebSocketEventListener.class);
+	private final DocumentSequencer documentSequencer = mock(DocumentSequencer.class);
+	private final Principal principal = () -> "outsider@example.com";
+
+	private WebSocketController controller;
+
+	@BeforeEach
+	void setUp() {
+		controller = new WebSocketController(documentBroadcaster, mock(ChatService.class), mock(UserRepository.class),
+				documentService, collaborationCacheService, draftLogService, operationTransformService,
+				crdtCollaborationService, documentSequencer, mock(CursorAggregator.class),
+				sessionUserCache, presenceService, webSocketEventListener);
+		User outsider = User.builder().id(99L).email("outsider@example.com").username("outsider").build();
+		when(sessionUserCache.resolve(any())).thenReturn(outsider);
+		when(documentService.checkReadable(DOCUMENT_ID, 99L))
+				.thenThrow(new BusinessException(ErrorCode.DOCUMENT_ACCESS_DENIED, "无权访问此文档"));
+		doAnswer(invocation -> {
+			invocation.<Runnable>getArgument(1).run();
+			return null;
+		}).when(documentSequencer).execute(any(), any());
+	}
+
+	@Test
+	void nonCollaboratorJoinReceivesNothing() {
+		JoinRequest join = JoinRequest.builder().lastRevision(0L).draftStreamId("0-0").build();
+		controller.joinDocument(DOCUMENT_ID, "session-1", join, principal);
+
+		verifyNoInteractions(documentBroadcaster, collaborationCacheService, operationTransformService,
+				crdtCollaborationService, draftLogService, presenceService, webSocketEventListener);
+	}
+
+	@Test
+	void nonCollaboratorCrdtSyncReceivesNothing() {
+		controller.handleCrdtSync(DOCUMENT_ID, CrdtMessage.builder().build(), principal);
+
+		verifyNoInteractions(documentBroadcaster, crdtCollaborationService);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void deltaSaveConfirmationCarriesOpsWithoutFullContent() {
+		when(documentService.checkEditable(DOCUMENT_ID, 99L)).thenReturn(CrdtCollaborationService.MODE_OT);
+		DocumentOperation delta = DocumentOperation.builder().ops(List.of(5, "!")).version(3L).build();
+		when(operationTransformService.submit(DOCUMENT_ID, 99L, 3L, delta)).thenReturn(AppliedOperation.builder()
+				.revision(4L).baseRevision(3L).ops(List.of(5, "!")).content("hello!").build());
+
+		controller.handleSave(DOCUMENT_ID, delta, principal);
+
+		ArgumentCaptor<WebSocketMessage> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+		verify(documentBroadcaster).toDocument(eq(DOCUMENT_ID), sent.capture());
+		Map<String, Object> data = (Map<String, Object>) sent.getValue().getData();
+		assertFalse(data.containsKey("content"));
+		assertEquals(List.of(5, "!"), data.get("ops"));
+		assertEquals(4L, data.get("revision"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void joinBroadcastCarriesOnlyTheJoiner() {
+		when(documentService.checkReadable(2L, 99L)).thenReturn(CrdtCollaborationService.MODE_OT);
+		when(collaborationCacheService.getConfirmed(2L)).thenReturn("");
+		when(presenceService.join(eq(2L), any(), eq("session-1"))).thenReturn(Set.of(7L, 99L));
+		Map<String, Object> joiner = Map.of("id", 99L, "username", "outsider");
+		when(presenceService.summary(any())).thenReturn(joiner);
+
+		controller.joinDocument(2L, "session-1", null, principal);
+
+		ArgumentCaptor<WebSocketMessage> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+		verify(documentBroadcaster).toDocument(eq(2L), sent.capture());
+		assertEquals("JOIN", sent.getValue().getType());
+		assertEquals(Map.of("user", joiner), sent.getValue().getData());
+		// 完整名册只发给加入者
+		verify(documentBroadcaster).toUser(eq("outsider@example.com"), eq("/queue/online-users"), any());
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.AbstractMessageChannel;
+
+import com.example.backend.config.CborFrameCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ClusterBroadcastTests {
+
+	@RegisterExtension
+	static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+	@Test
+	void deliversDocumentBroadcastsToEveryNodeInPublishOrder() throws Exception {
+		Node first = new Node();
+		Node second = new Node();
+		try {
+			for (int i = 0; i < 20; i++) {
+				first.broadcaster.toDocument(7L, Map.of("seq", i));
+			}
+			long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+			while ((first.received.size() < 20 || second.received.size() < 20) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertEquals(20, second.received.size());
+			assertEquals(first.received, second.received);
+			assertTrue(second.received.get(0).contains("\"seq\":0"));
+			assertTrue(second.received.get(19).contains("\"seq\":19"));
+		} finally {
+			first.close();
+			second.close();
+		}
+	}
+
+	/**
+	 * 一个后端节点：独立的消息总线、订阅容器与本地 broker 通道
+	 */
+	private static final class Node {
+		private final List<String> received = new CopyOnWriteArrayList<>();
+		private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		private final DocumentBroadcaster broadcaster;
+
+		private Node() throws Exception {
+			StringRedisTemplate redisTemplate = new StringRedisTemplate(redis.getConnectionFactory());
+			ClusterMessageBus bus = new ClusterMessageBus(redisTemplate, true);
+			AbstractMessageChannel brokerChannel = new AbstractMessageChannel() {
+				@Override
+				protected boolean sendInternal(Message<?> message, long timeout) {
+					received.add(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8));
+					return true;
+				}
+			};
+			broadcaster = new DocumentBroadcaster(new SimpMessagingTemplate(brokerChannel), bus, new ObjectMapper(),
+					new CborFrameCodec(new ObjectMapper()));
+
+			container.setConnectionFactory(redis.getConnectionFactory());
+			container.setTaskExecutor(new SyncTaskExecutor());
+			container.addMessageListener(
+					(message, pattern) -> bus.onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+					new ChannelTopic(ClusterMessageBus.CHANNEL));
+			container.afterPropertiesSet();
+			container.start();
+		}
+
+		private void close() throws Exception {
+			container.stop();
+			container.destroy();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class CollaborationCacheServiceTests {
+
+	@RegisterExtension
+	static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+	private StringRedisTemplate redisTemplate;
+	private CollaborationCacheService cacheService;
+	private DraftLogService draftLogService;
+
+	@BeforeEach
+	void setUp() {
+		redisTemplate = redis.flushedTemplate();
+		cacheService = new CollaborationCacheService(redisTemplate);
+		draftLogService = new DraftLogService(redisTemplate, new ObjectMapper(), 128, 120);
+	}
+
+	@Test
+	void releasesSaveLockOnlyForItsOwner() {
+		assertTrue(cacheService.acquireSaveLock(1L, "a"));
+		cacheService.releaseSaveLock(1L, "b");
+		assertFalse(cacheService.acquireSaveLock(1L, "b"));
+		cacheService.releaseSaveLock(1L, "a");
+		assertTrue(cacheService.acquireSaveLock(1L, "b"));
+	}
+
+	@Test
+	void lastLeaverClearsDocumentState() {
+		cacheService.addOnlineUser(1L, 10L, "{\"id\":10}", "session-10");
+		cacheService.addOnlineUser(1L, 11L, "{\"id\":11}", "session-11");
+		cacheService.saveConfirmed(1L, "text");
+		draftLogService.saveDraft(1L, 10L, "draft");
+
+		assertEquals(Set.of(11L), cacheService.leaveDocument(1L, 10L, "session-10"));
+		assertEquals("text", cacheService.getConfirmed(1L));
+		assertEquals(Map.of(11L, "{\"id\":11}"), cacheService.getRosterEntries(1L, List.of(10L, 11L)));
+
+		assertTrue(cacheService.leaveDocument(1L, 11L, "session-11").isEmpty());
+		assertNull(cacheService.getConfirmed(1L));
+		assertNull(draftLogService.getDraft(1L, 10L));
+	}
+
+	@Test
+	void userStaysOnlineWhileAnotherSessionOnAnyNodeIsJoined() {
+		// 同一用户的两个会话可能连在不同节点上，成员记录只存在于 Redis
+		cacheService.addOnlineUser(1L, 10L, "{\"id\":10}", "node-a-session");
+		cacheService.addOnlineUser(1L, 10L, "{\"id\":10}", "node-b-session");
+		cacheService.saveConfirmed(1L, "text");
+
+		assertNull(cacheService.leaveDocument(1L, 10L, "node-a-session"));
+		assertEquals(Set.of(10L), cacheService.getOnlineUsers(1L));
+		assertEquals("text", cacheService.getConfirmed(1L));
+
+		assertTrue(cacheService.leaveDocument(1L, 10L, "node-b-session").isEmpty());
+		assertNull(cacheService.getConfirmed(1L));
+	}
+
+	@Test
+	void sweepForgetsSessionsOfStaleUsers() {
+		long now = System.currentTimeMillis();
+		cacheService.addOnlineUser(1L, 10L, null, "crashed-node-session");
+		cacheService.addOnlineUser(1L, 11L, null, "live-session");
+		cacheService.touchOnlineUsers(Map.of(1L, Map.of(10L, now - 60_000L, 11L, now + 1_000L)));
+		assertEquals(Set.of(10L), cacheService.removeStaleUsers(1L, now + 500L));
+
+		// 宕机节点留下的会话记录已随超时清除，用户重新加入后单个会话离开即可下线
+		cacheService.addOnlineUser(1L, 10L, null, "new-session");
+		assertEquals(Set.of(11L), cacheService.leaveDocument(1L, 10L, "new-session"));
+	}
+
+	@Test
+	void sweepsUsersWithStaleHeartbeats() {
+		long now = System.currentTimeMillis();
+		cacheService.addOnlineUser(1L, 10L, null, "session-10");
+		cacheService.addOnlineUser(1L, 11L, null, "session-11");
+		cacheService.saveConfirmed(1L, "text");
+		cacheService.touchOnlineUsers(Map.of(1L, Map.of(10L, now - 60_000L, 11L, now + 1_000L)));
+
+		// GT：较旧的心跳不会覆盖较新的
+		assertEquals(Set.of(10L, 11L), cacheService.getOnlineUsers(1L));
+		assertTrue(cacheService.removeStaleUsers(1L, now + 500L).contains(10L));
+		assertEquals(Set.of(11L), cacheService.getOnlineUsers(1L));
+		assertEquals(Set.of(1L), cacheService.getPresenceDocuments());
+
+		assertEquals(Set.of(11L), cacheService.removeStaleUsers(1L, now + 5_000L));
+		assertNull(cacheService.getConfirmed(1L));
+		assertTrue(cacheService.getPresenceDocuments().isEmpty());
+	}
+
+	@Test
+	void dirtyDocumentsAreClaimedOnceAndKeepNewerEdits() {
+		long now = System.currentTimeMillis();
+		cacheService.appendOperation(1L, 1L, "op");
+		cacheService.appendOperation(2L, 1L, "op");
+
+		List<Long> claimed = cacheService.claimDirtyDocuments(now + 1_000L, now + 60_000L, 10);
+		assertEquals(Set.of(1L, 2L), Set.copyOf(claimed));
+		assertTrue(cacheService.claimDirtyDocuments(now + 1_000L, now + 60_000L, 10).isEmpty());
+
+		// 认领之后的新修改把分数拉回当前时间，写回完成不会把它移出
+		cacheService.appendOperation(2L, 2L, "op");
+		cacheService.completeDirty(1L, now + 60_000L);
+		cacheService.completeDirty(2L, now + 60_000L);
+		assertEquals(List.of(2L), cacheService.claimDirtyDocuments(now + 1_000L, now + 120_000L, 10));
+	}
+
+	@Test
+	void lastLeaverKeepsContentUntilAutosaved() {
+		cacheService.addOnlineUser(1L, 10L, null, "session-10");
+		cacheService.saveConfirmed(1L, "text");
+		cacheService.appendOperation(1L, 1L, "op");
+
+		assertTrue(cacheService.leaveDocument(1L, 10L, "session-10").isEmpty());
+		assertEquals("text", cacheService.getConfirmed(1L));
+		assertTrue(cacheService.getPresenceDocuments().isEmpty());
+
+		cacheService.clearContentCaches(1L);
+		assertEquals(0L, cacheService.countDirtyDocuments());
+	}
+
+	@Test
+	void operationsSinceReadsOnlyTheTailOfTheLog() {
+		for (long revision = 1; revision <= 510; revision++) {
+			cacheService.appendOperation(1L, revision, "op" + revision);
+		}
+
+		assertEquals(Map.of(509L, "op509", 510L, "op510"), cacheService.getOperationsSince(1L, 508L));
+		assertEquals(500, cacheService.getOperationsSince(1L, 10L).size());
+		assertNull(cacheService.getOperationsSince(1L, 9L));
+		assertTrue(cacheService.getOperationsSince(1L, 510L).isEmpty());
+	}
+
+	@Test
+	void rosterEntryIsRewrittenOnlyWhereUserIsJoined() {
+		cacheService.addOnlineUser(1L, 10L, "{\"id\":10,\"username\":\"old\"}", "s1");
+		cacheService.addOnlineUser(2L, 11L, "{\"id\":11}", "s2");
+
+		cacheService.updateRosterEntry(10L, "{\"id\":10,\"username\":\"new\"}");
+
+		assertEquals(Map.of(10L, "{\"id\":10,\"username\":\"new\"}"), cacheService.getRosterEntries(1L, List.of(10L)));
+		assertEquals(Map.of(), cacheService.getRosterEntries(2L, List.of(10L)));
+	}
+}
@@ -0,0 +1,78 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.Base64;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.example.backend.repository.DocumentRepository;
+import com.example.backend.util.RgaDocument;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CrdtCollaborationServiceTests {
+
+	@RegisterExtension
+	static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+	private CollaborationCacheService cacheService;
+
+	@BeforeEach
+	void setUp() {
+		StringRedisTemplate redisTemplate = redis.flushedTemplate();
+		cacheService = new CollaborationCacheService(redisTemplate);
+	}
+
+	@Test
+	void nodesFollowUpdatesAndResetsMadeOnAnotherNode() {
+		// 两个节点共享 Redis；集群总线关闭，只靠代数与更新条数发现其他节点的变化
+		CrdtCollaborationService first = node();
+		CrdtCollaborationService second = node();
+		cacheService.saveConfirmed(1L, "hello");
+		assertEquals("hello", first.getText(1L));
+		assertEquals("hello", second.getText(1L));
+
+		RgaDocument client = new RgaDocument();
+		client.applyUpdate(Base64.getDecoder().decode(first.sync(1L, null, null).getUpdate()));
+		byte[] edit = client.insert(5, 5, "!");
+		first.applyUpdate(1L, Base64.getEncoder().encodeToString(edit));
+		assertEquals("hello!", second.getText(1L));
+
+		// 重置后以相同的种子客户端ID重新播种，旧副本必须整体丢弃而不是与新种子合并
+		cacheService.saveConfirmed(1L, "reset");
+		first.reset(1L);
+		assertEquals("reset", second.getText(1L));
+		assertEquals("reset", first.getText(1L));
+	}
+
+	@Test
+	void rejectsAppendsFromAnOlderEpoch() {
+		CrdtCollaborationService service = node();
+		cacheService.saveConfirmed(1L, "text");
+		long epoch = service.sync(1L, null, null).getEpoch();
+		byte[] update = new RgaDocument().insert(7, 0, "x");
+
+		service.reset(1L);
+		assertEquals(-1L, cacheService.appendCrdtUpdate(1L, update, epoch));
+		assertEquals(0L, cacheService.getCrdtUpdateCount(1L));
+	}
+
+	private CrdtCollaborationService node() {
+		DocumentRepository documents = (DocumentRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {DocumentRepository.class}, (proxy, method, args) -> {
+					if (method.getName().equals("findById")) {
+						return Optional.empty();
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+		DocumentSequencer sequencer = new DocumentSequencer(new SyncTaskExecutor(), new SimpleMeterRegistry(), 100, 1_000);
+		return new CrdtCollaborationService(cacheService, documents, sequencer, new ClusterMessageBus(null, false));
+	}
+}
@@ -0,0 +1,68 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import com.example.backend.dto.websocket.CursorPosition;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CursorAggregatorTests {
+
+	@Test
+	void concurrentUpdatesAndLeavesOnDifferentDocumentsKeepCountsConsistent() throws Exception {
+		CursorAggregator aggregator = new CursorAggregator(mock(DocumentBroadcaster.class), new SimpleMeterRegistry(),
+				10_000, 200, 300_000, 25);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (long document = 1; document <= 8; document++) {
+			long documentId = document;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				for (int round = 0; round < 500; round++) {
+					for (long userId = 1; userId <= 5; userId++) {
+						aggregator.update(documentId, CursorPosition.builder().userId(userId).position(round).build());
+					}
+					// 最后一个用户离开会移除文档，下一轮写入需要重新创建
+					for (long userId = 1; userId <= 5; userId++) {
+						aggregator.remove(documentId, userId);
+					}
+				}
+				aggregator.update(documentId, CursorPosition.builder().userId(1L).position(0).build());
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		aggregator.flush();
+
+		assertEquals(8, aggregator.getDocumentCount());
+		assertEquals(8, aggregator.getCursorCount());
+		assertEquals(1, aggregator.getCursors(3L).size());
+	}
+
+	@Test
+	void clampsFlushRateInsteadOfDividingByZero() {
+		CursorAggregator aggregator = new CursorAggregator(mock(DocumentBroadcaster.class), new SimpleMeterRegistry(),
+				10_000, 200, 300_000, 0);
+		ScheduledTaskRegistrar registrar = new ScheduledTaskRegistrar();
+		aggregator.configureTasks(registrar);
+		assertEquals(Duration.ofSeconds(1), registrar.getFixedRateTaskList().get(0).getIntervalDuration());
+	}
+}
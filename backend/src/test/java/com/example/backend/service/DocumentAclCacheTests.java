@@ -0,0 +1,40 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class DocumentAclCacheTests {
+
+	@Test
+	void invalidationInsideTransactionWaitsForCommit() {
+		DocumentAclCache cache = new DocumentAclCache(new ClusterMessageBus(null, false), 30);
+		AtomicInteger loads = new AtomicInteger();
+		cache.checkEditable(1L, 2L, () -> "OT" + loads.incrementAndGet());
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			cache.invalidateDocument(1L);
+			// 提交前其他请求仍命中旧判断，不会把未提交前的状态重新装入缓存
+			assertEquals("OT1", cache.checkEditable(1L, 2L, () -> "OT" + loads.incrementAndGet()));
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		assertEquals("OT2", cache.checkEditable(1L, 2L, () -> "OT" + loads.incrementAndGet()));
+	}
+
+	@Test
+	void invalidationOutsideTransactionIsImmediate() {
+		DocumentAclCache cache = new DocumentAclCache(new ClusterMessageBus(null, false), 30);
+		AtomicInteger loads = new AtomicInteger();
+		cache.checkEditable(1L, 2L, () -> "OT" + loads.incrementAndGet());
+		cache.invalidate(1L, 2L);
+		assertEquals("OT2", cache.checkEditable(1L, 2L, () -> "OT" + loads.incrementAndGet()));
+	}
+}
@@ -0,0 +1,69 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.example.backend.exception.BusinessException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DocumentSequencerTests {
+
+	@Test
+	void runsTasksOfOneDocumentInOrder() throws InterruptedException {
+		DocumentSequencer sequencer = new DocumentSequencer(executor(4), new SimpleMeterRegistry(), 10_000, 1_000);
+		List<Integer> seen = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(1000);
+		for (int i = 0; i < 1000; i++) {
+			int value = i;
+			sequencer.execute(1L, () -> {
+				seen.add(value);
+				done.countDown();
+			});
+		}
+		done.await(5, TimeUnit.SECONDS);
+		assertEquals(IntStream.range(0, 1000).boxed().toList(), seen);
+		assertEquals(42, sequencer.call(1L, () -> sequencer.call(1L, () -> 42)));
+	}
+
+	@Test
+	void rejectsWhenMailboxIsFull() throws InterruptedException {
+		DocumentSequencer sequencer = new DocumentSequencer(executor(1), new SimpleMeterRegistry(), 1, 1_000);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		sequencer.execute(1L, () -> {
+			started.countDown();
+			awaitQuietly(release);
+		});
+		started.await(5, TimeUnit.SECONDS);
+		sequencer.execute(1L, () -> { });
+		assertThrows(BusinessException.class, () -> sequencer.execute(1L, () -> { }));
+		assertEquals(1, sequencer.getQueueDepth(1L));
+		release.countDown();
+	}
+
+	private ThreadPoolTaskExecutor executor(int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.initialize();
+		return executor;
+	}
+
+	private void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.backend.entity.ContentBlob;
+import com.example.backend.entity.Document;
+import com.example.backend.entity.DocumentVersion;
+import com.example.backend.repository.ContentBlobRepository;
+import com.example.backend.repository.DocumentVersionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class DocumentVersionStoreTests {
+
+	private final List<DocumentVersion> rows = new ArrayList<>();
+	private final Map<String, String> blobs = new HashMap<>();
+	private final ContentBlobService blobService = new ContentBlobService(blobRepository(), 60);
+	private final Document document = Document.builder().id(1L).build();
+
+	@Test
+	void storesDeltasBetweenKeyframesAndRebuildsEveryVersion() {
+		DocumentVersionStore store = new DocumentVersionStore(repository(), blobService, new ObjectMapper(), 4, 1 << 20);
+		List<String> contents = new ArrayList<>();
+		String content = "line\n".repeat(200);
+		for (int i = 0; i < 10; i++) {
+			content = content.replaceFirst("line", "edit" + i);
+			contents.add(content);
+			store.create(document, content, "v" + (i + 1), null);
+		}
+
+		assertEquals(List.of("FULL", "DELTA", "DELTA", "DELTA", "FULL", "DELTA", "DELTA", "DELTA", "FULL", "DELTA"),
+				rows.stream().map(DocumentVersion::getStorageKind).toList());
+		assertTrue(blobs.get(rows.get(1).getContentHash()).length() < 100);
+
+		// 冷缓存还原：从关键帧开始应用增量
+		DocumentVersionStore cold = new DocumentVersionStore(repository(), blobService, new ObjectMapper(), 4, 1 << 20);
+		for (int i = rows.size() - 1; i >= 0; i--) {
+			assertEquals(contents.get(i), cold.getContent(rows.get(i)));
+		}
+	}
+
+	@Test
+	void keepsFullSnapshotWhenDeltaIsNotSmaller() {
+		DocumentVersionStore store = new DocumentVersionStore(repository(), blobService, new ObjectMapper(), 20, 0);
+		store.create(document, "short", null, null);
+		store.create(document, "different", null, null);
+		assertEquals("FULL", rows.get(1).getStorageKind());
+		assertEquals("different", store.getContent(rows.get(1)));
+	}
+
+	@Test
+	void referencesExistingSnapshotInsteadOfStoringAgain() {
+		DocumentVersionStore store = new DocumentVersionStore(repository(), blobService, new ObjectMapper(), 20, 1 << 20);
+		String original = "line\n".repeat(100);
+		store.create(document, original, "v1", null);
+		store.create(document, original + "more\n", "v2", null);
+		// 无改动提交只存一个保留长度的增量，回滚到 v1 直接引用已有快照
+		store.create(document, original + "more\n", "v3", null);
+		store.create(document, original, "v4", null);
+
+		assertEquals(List.of("FULL", "DELTA", "DELTA", "FULL"),
+				rows.stream().map(DocumentVersion::getStorageKind).toList());
+		assertEquals("[" + (original.length() + 5) + "]", blobs.get(rows.get(2).getContentHash()));
+		assertEquals(rows.get(0).getContentHash(), rows.get(3).getContentHash());
+		assertEquals(3, blobs.size());
+		assertEquals(original + "more\n", store.getContent(rows.get(2)));
+		assertEquals(original, store.getContent(rows.get(3)));
+	}
+
+	@Test
+	void autosavedContentIsStillCommittedAsDelta() {
+		DocumentVersionStore store = new DocumentVersionStore(repository(), blobService, new ObjectMapper(), 20, 1 << 20);
+		String original = "line\n".repeat(100);
+		store.create(document, original, "v1", null);
+		// 协作自动保存先把当前内容写成内容块
+		String edited = original + "more\n";
+		blobService.putBlob(edited);
+		store.create(document, edited, "v2", null);
+
+		assertEquals("DELTA", rows.get(1).getStorageKind());
+		assertEquals(edited, store.getContent(rows.get(1)));
+	}
+
+	/**
+	 * 以内存表实现内容块读写
+	 */
+	private ContentBlobRepository blobRepository() {
+		return (ContentBlobRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {ContentBlobRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+					case "touch" -> blobs.containsKey(args[0]) ? 1 : 0;
+					case "insert" -> {
+						blobs.putIfAbsent((String) args[0], (String) args[1]);
+						yield 1;
+					}
+					case "findContentByHash" -> Optional.ofNullable(blobs.get(args[0]));
+					case "getReferenceById" -> ContentBlob.builder().hash((String) args[0]).build();
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	/**
+	 * 以内存列表实现版本存储用到的查询
+	 */
+	private DocumentVersionRepository repository() {
+		AtomicLong ids = new AtomicLong(rows.size());
+		return (DocumentVersionRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {DocumentVersionRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+					case "findMaxVersionNoByDocumentId" -> rows.stream()
+							.map(DocumentVersion::getVersionNo).max(Integer::compare).orElse(null);
+					case "findKeyframeVersionNo" -> rows.stream()
+							.filter(row -> "FULL".equals(row.getStorageKind()) && row.getVersionNo() <= (Integer) args[1])
+							.map(DocumentVersion::getVersionNo).max(Integer::compare).orElse(null);
+					case "findByDocumentIdAndVersionNo" -> rows.stream()
+							.filter(row -> Objects.equals(row.getVersionNo(), args[1])).findFirst();
+					case "existsByDocumentIdAndContentHashAndStorageKind" -> rows.stream()
+							.anyMatch(row -> Objects.equals(row.getContentHash(), args[1]) && row.getStorageKind().equals(args[2]));
+					case "findByDocumentIdAndVersionNoBetweenOrderByVersionNoAsc" -> rows.stream()
+							.filter(row -> row.getVersionNo() >= (Integer) args[1] && row.getVersionNo() <= (Integer) args[2])
+							.sorted(Comparator.comparing(DocumentVersion::getVersionNo)).toList();
+					case "save" -> {
+						DocumentVersion version = (DocumentVersion) args[0];
+						version.setId(ids.incrementAndGet());
+						rows.add(version);
+						yield version;
+					}
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+	}
+}
@@ -0,0 +1,71 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.example.backend.util.TextOperation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class DraftLogServiceTests {
+
+	@RegisterExtension
+	static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+	private StringRedisTemplate redisTemplate;
+
+	@BeforeEach
+	void setUp() {
+		redisTemplate = redis.flushedTemplate();
+	}
+
+	@Test
+	void replaysDeltasOnTopOfDraftStart() {
+		DraftLogService service = new DraftLogService(redisTemplate, new ObjectMapper(), 128, 120);
+		service.saveDraft(1L, 10L, "hello");
+		service.saveDraft(1L, 11L, "world");
+		service.appendDelta(1L, 10L, new TextOperation().retain(5).insert("!"));
+
+		assertEquals("hello!", service.getDraft(1L, 10L));
+		assertEquals("world", service.getDraft(1L, 11L));
+		assertTrue(service.getDraftTtlSeconds(1L, 10L) > 0);
+
+		service.clearDraft(1L, 10L);
+		assertNull(service.getDraft(1L, 10L));
+		assertEquals(Map.of(11L, "world"), service.getAllDrafts(1L));
+
+		service.clearAllDrafts(1L);
+		assertNull(service.getDraft(1L, 11L));
+	}
+
+	@Test
+	void compactsIntoSnapshotAndFallsBackForTrimmedIds() {
+		DraftLogService service = new DraftLogService(redisTemplate, new ObjectMapper(), 4, 120);
+		String first = service.saveDraft(1L, 10L, "a");
+		for (int i = 1; i <= 5; i++) {
+			service.appendDelta(1L, 10L, new TextOperation().retain(i).insert("b"));
+		}
+
+		assertEquals("abbbbb", service.getDraft(1L, 10L));
+		assertTrue(redisTemplate.opsForStream().size(CollaborationCacheService.draftLogKey(1L)) <= 4);
+		assertNull(service.replaySince(1L, first));
+		// 客户端携带的非法 ID 同样回退到快照
+		assertNull(service.replaySince(1L, "not-an-id"));
+		assertNull(service.replaySince(1L, "99999999999999999999-0"));
+
+		String last = service.getLastStreamId(1L);
+		service.appendDelta(1L, 10L, new TextOperation().retain(6).insert("c"));
+		List<Map<String, Object>> entries = service.replaySince(1L, last);
+		assertEquals(1, entries.size());
+		assertEquals("op", entries.get(0).get("kind"));
+		assertEquals("abbbbbc", service.getDraft(1L, 10L));
+	}
+}
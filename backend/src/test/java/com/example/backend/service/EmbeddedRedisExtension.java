@@ -0,0 +1,67 @@
+package com.example.backend.service;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.embedded.RedisServer;
+
+/**
+ * 测试用嵌入式 Redis：每个测试类在空闲端口上启动一个实例，结束后关闭。
+ * 用法：{@code @RegisterExtension static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();}
+ */
+class EmbeddedRedisExtension implements BeforeAllCallback, AfterAllCallback {
+
+	private RedisServer redisServer;
+	private LettuceConnectionFactory connectionFactory;
+
+	@Override
+	public void beforeAll(ExtensionContext context) throws Exception {
+		int port = freePort();
+		redisServer = new RedisServer(port);
+		redisServer.start();
+		connectionFactory = new LettuceConnectionFactory("localhost", port);
+		connectionFactory.afterPropertiesSet();
+		connectionFactory.start();
+	}
+
+	@Override
+	public void afterAll(ExtensionContext context) throws Exception {
+		if (connectionFactory != null) {
+			connectionFactory.destroy();
+		}
+		if (redisServer != null) {
+			redisServer.stop();
+		}
+	}
+
+	LettuceConnectionFactory getConnectionFactory() {
+		return connectionFactory;
+	}
+
+	/**
+	 * 清空数据并返回新的模板，供每个用例开始时调用
+	 */
+	StringRedisTemplate flushedTemplate() {
+		StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+		redisTemplate.afterPropertiesSet();
+		redisTemplate.execute((RedisCallback<Object>) connection -> {
+			connection.serverCommands().flushAll();
+			return null;
+		});
+		return redisTemplate;
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			socket.setReuseAddress(true);
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.example.backend.dto.websocket.AppliedOperation;
+import com.example.backend.dto.websocket.DocumentOperation;
+import com.example.backend.exception.BusinessException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OperationTransformServiceTests {
+
+	@RegisterExtension
+	static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+	private CollaborationCacheService cacheService;
+	private OperationTransformService service;
+
+	@BeforeEach
+	void setUp() {
+		StringRedisTemplate redisTemplate = redis.flushedTemplate();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(2);
+		executor.initialize();
+		cacheService = new CollaborationCacheService(redisTemplate);
+		service = new OperationTransformService(cacheService, null, new ObjectMapper(),
+				new DocumentSequencer(executor, new SimpleMeterRegistry(), 100, 5_000),
+				new ClusterMessageBus(redisTemplate, false));
+		cacheService.saveConfirmed(1L, "hello world");
+	}
+
+	@Test
+	void undoKeepsLaterEditsOfOthers() {
+		service.submit(1L, 10L, 0L, delta(List.of(5, " big", 6)));
+		service.submit(1L, 11L, 1L, delta(List.of(15, "!")));
+
+		AppliedOperation undone = service.undo(1L, 10L);
+		assertEquals("hello world!", undone.getContent());
+		assertEquals(3L, undone.getRevision());
+
+		assertEquals("hello big world!", service.redo(1L, 10L).getContent());
+		assertEquals("hello world!", service.undo(1L, 10L).getContent());
+	}
+
+	@Test
+	void newEditClearsRedo() {
+		service.submit(1L, 10L, 0L, delta(List.of(11, "?")));
+		service.undo(1L, 10L);
+		service.submit(1L, 10L, 2L, delta(List.of(0, "> ", 11)));
+
+		assertThrows(BusinessException.class, () -> service.redo(1L, 10L));
+		assertEquals("hello world", service.undo(1L, 10L).getContent());
+		assertThrows(BusinessException.class, () -> service.undo(1L, 11L));
+	}
+
+	@Test
+	void mergesStaleFullContentSave() {
+		service.submit(1L, 11L, 0L, delta(List.of("# ", 11)));
+
+		AppliedOperation saved = service.submitContent(1L, 10L, 0L, "hello world, again");
+		assertEquals("# hello world, again", saved.getContent());
+		assertNull(saved.getConflicts());
+	}
+
+	private DocumentOperation delta(List<Object> ops) {
+		return DocumentOperation.builder().ops(ops).build();
+	}
+}
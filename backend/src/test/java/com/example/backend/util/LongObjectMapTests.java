@@ -0,0 +1,50 @@
+package com.example.backend.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LongObjectMapTests {
+
+	@Test
+	void behavesLikeHashMapUnderRandomOperations() {
+		LongObjectMap<String> map = new LongObjectMap<>();
+		Map<Long, String> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 20_000; i++) {
+			long key = random.nextInt(512) - 64;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				String value = "v" + i;
+				assertEquals(expected.put(key, value), map.put(key, value));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key = -64; key < 448; key++) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+	}
+
+	@Test
+	void removeIfKeepsRemainingEntriesReachable() {
+		LongObjectMap<Long> map = new LongObjectMap<>();
+		for (long key = 0; key < 1000; key++) {
+			map.put(key, key);
+		}
+		assertEquals(500, map.removeIf((key, value) -> key % 2 == 0));
+		assertEquals(500, map.size());
+		for (long key = 0; key < 1000; key++) {
+			if (key % 2 == 0) {
+				assertNull(map.get(key));
+			} else {
+				assertEquals(key, map.get(key));
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.example.backend.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.backend.exception.BusinessException;
+
+class RgaDocumentTests {
+
+	@Test
+	void convergesRegardlessOfDeliveryOrder() {
+		Random random = new Random(7);
+		for (int round = 0; round < 100; round++) {
+			RgaDocument seed = new RgaDocument();
+			seed.insert(0, 0, "hello world");
+			byte[] state = seed.encodeState();
+
+			RgaDocument left = new RgaDocument();
+			RgaDocument right = new RgaDocument();
+			left.applyUpdate(state);
+			right.applyUpdate(state);
+
+			List<byte[]> updates = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				updates.add(randomEdit(left, 1, random));
+				updates.add(randomEdit(right, 2, random));
+			}
+
+			RgaDocument merged = new RgaDocument();
+			Collections.shuffle(updates, random);
+			merged.applyUpdate(state);
+			updates.forEach(merged::applyUpdate);
+			// 重复合并应当幂等
+			updates.forEach(merged::applyUpdate);
+
+			left.applyUpdate(right.encodeDiff(left.encodeStateVector()));
+			right.applyUpdate(left.encodeDiff(right.encodeStateVector()));
+
+			assertEquals(left.getText(), right.getText());
+			assertEquals(left.getText(), merged.getText());
+			assertFalse(merged.hasPending());
+		}
+	}
+
+	@Test
+	void stateVectorDiffOnlyCarriesMissingUpdates() {
+		RgaDocument server = new RgaDocument();
+		server.insert(1, 0, "abc");
+		RgaDocument client = new RgaDocument();
+		client.applyUpdate(server.encodeState());
+
+		server.insert(1, 3, "def");
+		byte[] diff = server.encodeDiff(client.encodeStateVector());
+		client.applyUpdate(diff);
+
+		assertEquals("abcdef", client.getText());
+		assertEquals(6, RgaDocument.decodeStateVector(server.encodeStateVector()).get(1));
+	}
+
+	@Test
+	void rejectsForgedCountsInsteadOfAllocating() {
+		RgaDocument document = new RgaDocument();
+		// 版本 1、1 个删除操作，范围数声明为 Integer.MAX_VALUE 但后面没有数据
+		byte[] forgedRanges = {1, 1, 1, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+		assertThrows(BusinessException.class, () -> document.applyUpdate(forgedRanges));
+		byte[] forgedOps = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+		assertThrows(BusinessException.class, () -> document.applyUpdate(forgedOps));
+	}
+
+	@Test
+	void capsOperationsWaitingForMissingClocks() {
+		RgaDocument document = new RgaDocument();
+		// clock 从 1 开始，clock 0 永远不会到达
+		for (int i = 1; i <= RgaDocument.MAX_PENDING; i++) {
+			document.applyUpdate(insertAt(9, i, "x"));
+		}
+		assertTrue(document.hasPending());
+		assertThrows(BusinessException.class, () -> document.applyUpdate(insertAt(9, RgaDocument.MAX_PENDING + 1, "x")));
+		assertEquals("", document.getText());
+	}
+
+	private byte[] insertAt(int clientId, int clock, String text) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(1);
+		writeVarInt(out, 1);
+		out.write(0);
+		writeVarInt(out, clientId);
+		writeVarInt(out, clock);
+		writeVarInt(out, clock);
+		writeVarInt(out, 0);
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+		return out.toByteArray();
+	}
+
+	private void writeVarInt(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private byte[] randomEdit(RgaDocument document, int clientId, Random random) {
+		if (document.length() > 0 && random.nextBoolean()) {
+			int index = random.nextInt(document.length());
+			return document.delete(clientId, index, 1 + random.nextInt(Math.min(3, document.length() - index)));
+		}
+		return document.insert(clientId, random.nextInt(document.length() + 1), "x" + clientId);
+	}
+}
@@ -0,0 +1,112 @@
+package com.example.backend.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.backend.dto.websocket.DocumentOperation;
+import com.example.backend.exception.BusinessException;
+
+class TextOperationTests {
+
+	private static final String ALPHABET = "abcdefghij\n";
+
+	@Test
+	void appliesSingleStepOperations() {
+		DocumentOperation insert = DocumentOperation.builder().type("INSERT").position(5).text(", world").build();
+		assertEquals("hello, world", TextOperation.fromDocumentOperation(insert, 5).apply("hello"));
+
+		DocumentOperation delete = DocumentOperation.builder().type("DELETE").position(0).length(7).build();
+		assertEquals("world", TextOperation.fromDocumentOperation(delete, 12).apply("hello, world"));
+	}
+
+	@Test
+	void rejectsOutOfRangeOperations() {
+		DocumentOperation delete = DocumentOperation.builder().type("DELETE").position(3).length(5).build();
+		assertThrows(BusinessException.class, () -> TextOperation.fromDocumentOperation(delete, 4));
+		assertThrows(BusinessException.class, () -> TextOperation.fromWire(List.of(3, "x")).apply("ab"));
+	}
+
+	@Test
+	void roundTripsWireFormat() {
+		TextOperation operation = new TextOperation().retain(2).insert("xy").delete(3).retain(1);
+		assertEquals(List.of(2, "xy", -3, 1), operation.toWire());
+		assertEquals(operation, TextOperation.fromWire(operation.toWire()));
+	}
+
+	@Test
+	void diffProducesEquivalentOperation() {
+		Random random = new Random(7);
+		for (int i = 0; i < 200; i++) {
+			String before = randomString(random, 20);
+			String after = randomString(random, 20);
+			assertEquals(after, TextOperation.diff(before, after).apply(before));
+		}
+	}
+
+	@Test
+	void lineDiffOnlyRecordsChangedRegions() {
+		Random random = new Random(11);
+		for (int i = 0; i < 200; i++) {
+			String before = randomString(random, 60);
+			String after = randomString(random, 60);
+			assertEquals(after, TextOperation.diffLines(before, after).apply(before));
+		}
+		String before = "first line\n" + "unchanged\n".repeat(50) + "last line\n";
+		String after = "first LINE\n" + "unchanged\n".repeat(50) + "last line!\n";
+		assertEquals(List.of(6, "LINE", -4, 510, "!", 1), TextOperation.diffLines(before, after).toWire());
+	}
+
+	@Test
+	void transformConverges() {
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			String document = randomString(random, 30);
+			TextOperation a = randomOperation(random, document);
+			TextOperation b = randomOperation(random, document);
+			TextOperation[] primes = TextOperation.transform(a, b);
+			assertEquals(primes[1].apply(a.apply(document)), primes[0].apply(b.apply(document)));
+		}
+	}
+
+	private static TextOperation randomOperation(Random random, String document) {
+		TextOperation operation = new TextOperation();
+		int index = 0;
+		while (index < document.length()) {
+			int n = 1 + random.nextInt(document.length() - index);
+			switch (random.nextInt(3)) {
+				case 0 -> operation.retain(n);
+				case 1 -> operation.delete(n);
+				default -> {
+					operation.insert(randomString(random, 4));
+					continue;
+				}
+			}
+			index += n;
+		}
+		if (random.nextBoolean()) {
+			operation.insert(randomString(random, 4));
+		}
+		return operation;
+	}
+
+	private static String randomString(Random random, int maxLength) {
+		int length = random.nextInt(maxLength + 1);
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return builder.toString();
+	}
+
+	@Test
+	void invertRestoresTheBaseText() {
+		TextOperation operation = new TextOperation().retain(2).insert("xy").delete(3).retain(1);
+		String result = operation.apply("abcdef");
+		assertEquals("abcdef", operation.invert("abcdef").apply(result));
+	}
+}
@@ -0,0 +1,84 @@
+package com.example.backend.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ThreeWayMergeTests {
+
+	@Test
+	void mergesChangesOnDifferentLines() {
+		ThreeWayMerge.Result result = ThreeWayMerge.merge("a\nb\nc\nd\n", "a\nB\nc\nd\n", "a\nb\nc\nD\ne\n");
+		assertTrue(result.isClean());
+		assertEquals("a\nB\nc\nD\ne\n", result.getContent());
+	}
+
+	@Test
+	void mergesChangesWithinTheSameLineByCharacter() {
+		ThreeWayMerge.Result result = ThreeWayMerge.merge("the quick fox\n", "the slow fox\n", "the quick fox jumps\n");
+		assertTrue(result.isClean());
+		assertEquals("the slow fox jumps\n", result.getContent());
+	}
+
+	@Test
+	void reportsOverlappingEditsAndKeepsTheirs() {
+		ThreeWayMerge.Result result = ThreeWayMerge.merge("a\nvalue\nz\n", "a\nmine\nz\n", "a\ntheirs\nz\n");
+		assertFalse(result.isClean());
+		assertEquals("a\ntheirs\nz\n", result.getContent());
+		ThreeWayMerge.Conflict conflict = result.getConflicts().get(0);
+		assertEquals(2, conflict.getLine());
+		assertEquals("value\n", conflict.getBase());
+		assertEquals("mine\n", conflict.getMine());
+		assertEquals("theirs\n", conflict.getTheirs());
+	}
+
+	@Test
+	void takesIdenticalChangesOnce() {
+		ThreeWayMerge.Result result = ThreeWayMerge.merge("a\nb\n", "a\nx\nb\n", "a\nx\nb\n");
+		assertTrue(result.isClean());
+		assertEquals("a\nx\nb\n", result.getContent());
+	}
+
+	@Test
+	void matchesLongestCommonSubsequence() {
+		Random random = new Random(7);
+		for (int round = 0; round < 200; round++) {
+			int[] base = random.ints(random.nextInt(30), 0, 4).toArray();
+			int[] other = random.ints(random.nextInt(30), 0, 4).toArray();
+			int[] match = ThreeWayMerge.match(base, other);
+			int matched = 0;
+			int last = -1;
+			for (int index : match) {
+				if (index >= 0) {
+					assertTrue(index > last);
+					last = index;
+					matched++;
+				}
+			}
+			for (int i = 0; i < match.length; i++) {
+				if (match[i] >= 0) {
+					assertEquals(base[i], other[match[i]]);
+				}
+			}
+			assertEquals(lcs(base, other), matched);
+		}
+		assertArrayEquals(new int[] {-1, 0, 1}, ThreeWayMerge.match(new int[] {9, 1, 2}, new int[] {1, 2}));
+	}
+
+	private int lcs(int[] a, int[] b) {
+		int[][] table = new int[a.length + 1][b.length + 1];
+		for (int i = 1; i <= a.length; i++) {
+			for (int j = 1; j <= b.length; j++) {
+				table[i][j] = a[i - 1] == b[j - 1]
+						? table[i - 1][j - 1] + 1
+						: Math.max(table[i - 1][j], table[i][j - 1]);
+			}
+		}
+		return table[a.length][b.length];
+	}
+}
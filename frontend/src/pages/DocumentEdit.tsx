@@ -172,6 +172,7 @@ const DocumentEdit: React.FC = () => {
         wsService.offMessage('SAVE_CONFIRMED');
         wsService.offMessage('SAVE_REJECTED');
         wsService.offMessage('CURSOR');
+        wsService.offMessage('CURSORS');
         wsService.offMessage('CHAT');
       };
     }
@@ -256,6 +257,11 @@ const DocumentEdit: React.FC = () => {
     });
     
     wsService.onMessage('SAVE_CONFIRMED', (msg) => {
+      // 增量保存与撤销/重做的确认只携带 ops，本页面不跟踪修订号，改为拉取最新确认态
+      if (msg.data && msg.data.content === undefined && msg.data.ops) {
+        fetchDocumentCache();
+        return;
+      }
       if (msg.data?.content) {
         applyRemoteContent(msg.data.content, false);
         setIsDirty(false);
@@ -292,6 +298,27 @@ const DocumentEdit: React.FC = () => {
         });
       }
     });
+
+    // 服务端按固定频率合并后的光标批量帧
+    wsService.onMessage('CURSORS', (msg) => {
+      const cursors: CursorPosition[] = msg.data?.cursors || [];
+      const remote = cursors.filter((cursor) => cursor.userId && cursor.userId !== user?.id);
+      if (remote.length === 0) return;
+      remote.forEach((cursor) => updateCursor(cursor.userId, cursor));
+      setRemoteCursors(prev => {
+        const newMap = new Map(prev);
+        remote.forEach((cursor) => {
+          newMap.set(cursor.userId, {
+            userId: cursor.userId,
+            nickname: cursor.nickname,
+            line: cursor.line,
+            column: cursor.column,
+            color: getUserColor(cursor.userId),
+          });
+        });
+        return newMap;
+      });
+    });
     
     wsService.onMessage('CHAT', (msg) => {
       // WebSocket返回的数据结构是 { userId, nickname, avatarUrl, content, id }